@@ -1,6 +1,11 @@
 package org.checkerframework.checker.regex;
 
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
 import java.util.List;
+import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -23,6 +28,7 @@ import org.checkerframework.framework.type.QualifierHierarchy;
 import org.checkerframework.framework.type.TreeAnnotator;
 import org.checkerframework.framework.util.AnnotationBuilder;
 import org.checkerframework.framework.util.GraphQualifierHierarchy;
+import org.checkerframework.framework.util.LRUCache;
 import org.checkerframework.framework.util.MultiGraphQualifierHierarchy.MultiGraphFactory;
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.Pair;
@@ -106,6 +112,47 @@ public class RegexAnnotatedTypeFactory extends GenericAnnotatedTypeFactory<CFVal
     protected final AnnotationMirror REGEX, REGEXBOTTOM, PARTIALREGEX;
     protected final ExecutableElement regexValueElement;
 
+    /**
+     * The result of compiling a String as a regular expression: whether it
+     * is a valid regular expression, and its group count.
+     */
+    /*package-scope*/ static final class RegexInfo {
+        final boolean isRegex;
+        final int groupCount;
+
+        private RegexInfo(boolean isRegex, int groupCount) {
+            this.isRegex = isRegex;
+            this.groupCount = groupCount;
+        }
+
+        /*package-scope*/ static RegexInfo compile(String s) {
+            try {
+                return new RegexInfo(true, Pattern.compile(s).matcher("").groupCount());
+            } catch (PatternSyntaxException e) {
+                return new RegexInfo(false, 0);
+            }
+        }
+    }
+
+    /**
+     * Memo table from the Strings that were typed as literals or
+     * concatenations to the results of compiling them, because the same
+     * Strings are typed repeatedly.
+     */
+    private final Map<String, RegexInfo> regexCache;
+
+    /**
+     * Weighs a memoized regular expression by its length, so that the memo
+     * table does not keep many long partial regular expressions.
+     */
+    private static final LRUCache.Weigher<String, RegexInfo> REGEX_WEIGHER =
+            new LRUCache.Weigher<String, RegexInfo>() {
+        @Override
+        public int weigh(String regex, RegexInfo info) {
+            return 1 + regex.length() / 64;
+        }
+    };
+
     // TODO use? private TypeMirror[] legalReferenceTypes;
 
     public RegexAnnotatedTypeFactory(BaseTypeChecker checker) {
@@ -118,6 +165,7 @@ public class RegexAnnotatedTypeFactory extends GenericAnnotatedTypeFactory<CFVal
         REGEXBOTTOM = AnnotationUtils.fromClass(elements, RegexBottom.class);
         PARTIALREGEX = AnnotationUtils.fromClass(elements, PartialRegex.class);
         regexValueElement = TreeUtils.getMethod("org.checkerframework.checker.regex.qual.Regex", "value", 0, processingEnv);
+        regexCache = createCache("regexCache", REGEX_WEIGHER);
 
         /*
         legalReferenceTypes = new TypeMirror[] {
@@ -223,19 +271,20 @@ public class RegexAnnotatedTypeFactory extends GenericAnnotatedTypeFactory<CFVal
         return Pattern.compile(regex).matcher("").groupCount();
     }
 
-    /** This method is a copy of RegexUtil.isRegex.
-     * We cannot directly use RegexUtil, because it uses type annotations
-     * which cannot be used in IDEs (yet).
+    /**
+     * Returns whether the given String is a valid regular expression, and
+     * its group count or the error message, compiling it only if it is not
+     * in the memo table.
+     * This is like RegexUtil.isRegex, but we cannot directly use RegexUtil,
+     * because it uses type annotations which cannot be used in IDEs (yet).
      */
-    /*@SuppressWarnings("purity")*/ // the checker cannot prove that the method is pure, but it is
-    /*@org.checkerframework.dataflow.qual.Pure*/
-    private static boolean isRegex(String s) {
-        try {
-            Pattern.compile(s);
-        } catch (PatternSyntaxException e) {
-            return false;
+    /*package-scope*/ RegexInfo getRegexInfo(String s) {
+        RegexInfo info = regexCache.get(s);
+        if (info == null) {
+            info = RegexInfo.compile(s);
+            regexCache.put(s, info);
         }
-        return true;
+        return info;
     }
 
     private class RegexTreeAnnotator extends TreeAnnotator {
@@ -259,9 +308,9 @@ public class RegexAnnotatedTypeFactory extends GenericAnnotatedTypeFactory<CFVal
                     regex = Character.toString((Character) tree.getValue());
                 }
                 if (regex != null) {
-                    if (isRegex(regex)) {
-                        int groupCount = getGroupCount(regex);
-                        type.addAnnotation(createRegexAnnotation(groupCount));
+                    RegexInfo info = getRegexInfo(regex);
+                    if (info.isRegex) {
+                        type.addAnnotation(createRegexAnnotation(info.groupCount));
                     } else {
                         type.addAnnotation(createPartialRegexAnnotation(regex));
                     }
@@ -303,9 +352,9 @@ public class RegexAnnotatedTypeFactory extends GenericAnnotatedTypeFactory<CFVal
                     String lRegex = getPartialRegexValue(lExpr);
                     String rRegex = getPartialRegexValue(rExpr);
                     String concat = lRegex + rRegex;
-                    if (isRegex(concat)) {
-                        int groupCount = getGroupCount(concat);
-                        type.addAnnotation(createRegexAnnotation(groupCount));
+                    RegexInfo info = getRegexInfo(concat);
+                    if (info.isRegex) {
+                        type.addAnnotation(createRegexAnnotation(info.groupCount));
                     } else {
                         type.addAnnotation(createPartialRegexAnnotation(concat));
                     }
@@ -22,11 +22,11 @@ import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.Pair;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 import java.util.PriorityQueue;
 import java.util.Set;
@@ -73,37 +73,44 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
     protected final Types types;
 
     /**
-     * Then stores before every basic block (assumed to be 'no information' if
-     * not present).
+     * Then stores before every basic block, indexed by the dense id of the
+     * block (assumed to be 'no information' if not present).
      */
-    protected IdentityHashMap<Block, S> thenStores;
+    protected S[] thenStores;
 
     /**
-     * Else stores before every basic block (assumed to be 'no information' if
-     * not present).
+     * Else stores before every basic block, indexed by the dense id of the
+     * block (assumed to be 'no information' if not present).
      */
-    protected IdentityHashMap<Block, S> elseStores;
+    protected S[] elseStores;
 
     /**
-     * The transfer inputs before every basic block (assumed to be 'no information' if
-     * not present).
+     * The transfer inputs before every basic block, indexed by the dense id
+     * of the block (assumed to be 'no information' if not present).
      */
-    protected IdentityHashMap<Block, TransferInput<A, S>> inputs;
+    protected TransferInput<A, S>[] inputs;
 
     /**
-     * The stores after every return statement.
+     * The stores after every return statement, indexed by the dense id of
+     * the {@link ReturnNode}.
      */
-    protected IdentityHashMap<ReturnNode, TransferResult<A, S>> storesAtReturnStatements;
+    protected TransferResult<A, S>[] storesAtReturnStatements;
 
     /** The worklist used for the fix-point iteration. */
     protected Worklist worklist;
 
-    /** Abstract values of nodes. */
-    protected IdentityHashMap<Node, A> nodeValues;
+    /** Abstract values of nodes, indexed by the dense id of the node. */
+    protected A[] nodeValues;
 
     /** Map from (effectively final) local variable elements to their abstract value. */
     public HashMap<Element, A> finalLocalValues;
 
+    /**
+     * The result of the last analysis, built by the first call to
+     * {@link #getResult()} after the analysis finished.
+     */
+    protected /*@Nullable*/ AnalysisResult<A, S> result;
+
     /**
      * The node that is currently handled in the analysis (if it is running).
      * The following invariant holds:
@@ -338,8 +345,13 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
      * further).
      */
     protected boolean updateNodeValues(Node n, A val) {
-        A oldVal = nodeValues.get(n);
-        nodeValues.put(n, val);
+        int id = cfg.getDenseId(n);
+        if (id < 0) {
+            // The node is not part of the CFG, so its value cannot be queried.
+            return false;
+        }
+        A oldVal = nodeValues[id];
+        nodeValues[id] = val;
         boolean result = ((oldVal == null || val == null) && val != oldVal)
                 || (!oldVal.equals(val));
         return result;
@@ -367,7 +379,10 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
         if (node instanceof ReturnNode) {
             // save a copy of the store to later check if some property held at
             // a given return statement
-            storesAtReturnStatements.put((ReturnNode) node, transferResult);
+            int id = cfg.getDenseId(node);
+            if (id >= 0) {
+                storesAtReturnStatements[id] = transferResult;
+            }
         }
         if (node instanceof AssignmentNode) {
             // store the flow-refined value for effectively final local variables
@@ -385,15 +400,22 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
     }
 
     /** Initialize the analysis with a new control flow graph. */
+    // Arrays of a generic type cannot be created directly.  The arrays are
+    // only ever filled with values of type S, A, TransferInput<A, S> and
+    // TransferResult<A, S>, so the casts are safe.
+    @SuppressWarnings("unchecked")
     protected void init(ControlFlowGraph cfg) {
         this.cfg = cfg;
-        thenStores = new IdentityHashMap<>();
-        elseStores = new IdentityHashMap<>();
-        inputs = new IdentityHashMap<>();
-        storesAtReturnStatements = new IdentityHashMap<>();
-        worklist = new Worklist(cfg);
-        nodeValues = new IdentityHashMap<>();
+        int numberOfBlocks = cfg.getNumberOfBlocks();
+        int numberOfNodes = cfg.getNumberOfNodes();
+        thenStores = (S[]) new Store<?>[numberOfBlocks];
+        elseStores = (S[]) new Store<?>[numberOfBlocks];
+        inputs = (TransferInput<A, S>[]) new TransferInput<?, ?>[numberOfBlocks];
+        storesAtReturnStatements = (TransferResult<A, S>[]) new TransferResult<?, ?>[numberOfNodes];
+        worklist = createWorklist(cfg);
+        nodeValues = (A[]) new AbstractValue<?>[numberOfNodes];
         finalLocalValues = new HashMap<>();
+        result = null;
         worklist.add(cfg.getEntryBlock());
 
         List<LocalVariableNode> parameters = null;
@@ -411,10 +433,10 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
             // nothing to do
         }
         S initialStore = transferFunction.initialStore(underlyingAST, parameters);
-        Block entry = cfg.getEntryBlock();
-        thenStores.put(entry, initialStore);
-        elseStores.put(entry, initialStore);
-        inputs.put(entry, new TransferInput<>(null, this, initialStore));
+        int entry = cfg.getEntryBlock().getDenseId();
+        thenStores[entry] = initialStore;
+        elseStores[entry] = initialStore;
+        inputs[entry] = new TransferInput<>(null, this, initialStore);
     }
 
     /**
@@ -422,7 +444,6 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
      * the method does nothing.
      */
     protected void addToWorklist(Block b) {
-        // TODO: use a more efficient way to check if b is already present
         if (!worklist.contains(b)) {
             worklist.add(b);
         }
@@ -434,6 +455,10 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
      */
     protected void addStoreBefore(Block b, Node node, S s, Store.Kind kind,
             boolean addBlockToWorklist) {
+        int id = b.getDenseId();
+        // Successors of reachable blocks are reachable, and only reachable
+        // blocks have an id.
+        assert id >= 0 : "Block without dense id: " + b;
         S thenStore = getStoreBefore(b, Store.Kind.THEN);
         S elseStore = getStoreBefore(b, Store.Kind.ELSE);
 
@@ -443,9 +468,9 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
             S newThenStore = (thenStore != null) ?
                 thenStore.leastUpperBound(s) : s;
             if (!newThenStore.equals(thenStore)) {
-                thenStores.put(b, newThenStore);
+                thenStores[id] = newThenStore;
                 if (elseStore != null) {
-                    inputs.put(b, new TransferInput<>(node, this, newThenStore, elseStore));
+                    inputs[id] = new TransferInput<>(node, this, newThenStore, elseStore);
                     addBlockToWorklist = true;
                 }
             }
@@ -456,9 +481,9 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
             S newElseStore = (elseStore != null) ?
                 elseStore.leastUpperBound(s) : s;
             if (!newElseStore.equals(elseStore)) {
-                elseStores.put(b, newElseStore);
+                elseStores[id] = newElseStore;
                 if (thenStore != null) {
-                    inputs.put(b, new TransferInput<>(node, this, thenStore, newElseStore));
+                    inputs[id] = new TransferInput<>(node, this, thenStore, newElseStore);
                     addBlockToWorklist = true;
                 }
             }
@@ -470,9 +495,9 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
                 S newStore = (thenStore != null) ?
                     thenStore.leastUpperBound(s) : s;
                 if (!newStore.equals(thenStore)) {
-                    thenStores.put(b, newStore);
-                    elseStores.put(b, newStore);
-                    inputs.put(b, new TransferInput<>(node, this, newStore));
+                    thenStores[id] = newStore;
+                    elseStores[id] = newStore;
+                    inputs[id] = new TransferInput<>(node, this, newStore);
                     addBlockToWorklist = true;
                 }
             } else {
@@ -481,19 +506,19 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
                 S newThenStore = (thenStore != null) ?
                     thenStore.leastUpperBound(s) : s;
                 if (!newThenStore.equals(thenStore)) {
-                    thenStores.put(b, newThenStore);
+                    thenStores[id] = newThenStore;
                     storeChanged = true;
                 }
 
                 S newElseStore = (elseStore != null) ?
                     elseStore.leastUpperBound(s) : s;
                 if (!newElseStore.equals(elseStore)) {
-                    elseStores.put(b, newElseStore);
+                    elseStores[id] = newElseStore;
                     storeChanged = true;
                 }
 
                 if (storeChanged) {
-                    inputs.put(b, new TransferInput<>(node, this, newThenStore, newElseStore));
+                    inputs[id] = new TransferInput<>(node, this, newThenStore, newElseStore);
                     addBlockToWorklist = true;
                 }
             }
@@ -507,47 +532,69 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
     /**
      * A worklist is a priority queue of blocks in which the order is given
      * by depth-first ordering to place non-loop predecessors ahead of successors.
+     * The dense ids of the blocks of a CFG are assigned in depth-first order,
+     * so they are used as priorities.
      */
-    protected static class Worklist {
+    protected static abstract class Worklist {
+
+        /** The control flow graph whose blocks are added to this worklist. */
+        protected final ControlFlowGraph cfg;
+
+        public Worklist(ControlFlowGraph cfg) {
+            this.cfg = cfg;
+        }
 
-        /** Map all blocks in the CFG to their depth-first order. */
-        protected IdentityHashMap<Block, Integer> depthFirstOrder;
+        public abstract boolean isEmpty();
+
+        public abstract boolean contains(Block block);
+
+        public abstract void add(Block block);
+
+        /**
+         * Remove and return the block with the smallest depth-first order.
+         */
+        public abstract Block poll();
+    }
+
+    /**
+     * A worklist backed by a {@link PriorityQueue}.
+     * {@link #contains} is linear in the size of the worklist.
+     */
+    protected static class PriorityQueueWorklist extends Worklist {
 
         /** Comparator to allow priority queue to order blocks by their depth-first
             order. */
-        public class DFOComparator implements Comparator<Block> {
+        public static class DFOComparator implements Comparator<Block> {
             @Override
             public int compare(Block b1, Block b2) {
-                return depthFirstOrder.get(b1) - depthFirstOrder.get(b2);
+                return b1.getDenseId() - b2.getDenseId();
             }
         }
 
         /** The backing priority queue. */
         protected PriorityQueue<Block> queue;
 
-
-        public Worklist(ControlFlowGraph cfg) {
-            depthFirstOrder = new IdentityHashMap<>();
-            int count = 1;
-            for (Block b : cfg.getDepthFirstOrderedBlocks()) {
-                depthFirstOrder.put(b, count++);
-            }
-
+        public PriorityQueueWorklist(ControlFlowGraph cfg) {
+            super(cfg);
             queue = new PriorityQueue<Block>(11, new DFOComparator());
         }
 
+        @Override
         public boolean isEmpty() {
             return queue.isEmpty();
         }
 
+        @Override
         public boolean contains(Block block) {
             return queue.contains(block);
         }
 
+        @Override
         public void add(Block block) {
             queue.add(block);
         }
 
+        @Override
         public Block poll() {
             return queue.poll();
         }
@@ -558,6 +605,68 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
         }
     }
 
+    /**
+     * A worklist that is a bit set indexed by the dense ids of the blocks.
+     * {@link #contains} and {@link #add} take constant time, and
+     * {@link #poll} finds the next block by scanning the bit set,
+     * which is fast even for methods with thousands of blocks.
+     * Blocks are returned in the same order as by
+     * {@link PriorityQueueWorklist}.
+     */
+    protected static class BitSetWorklist extends Worklist {
+
+        /** The dense ids of the blocks in the worklist. */
+        protected BitSet members;
+
+        public BitSetWorklist(ControlFlowGraph cfg) {
+            super(cfg);
+            members = new BitSet(cfg.getNumberOfBlocks());
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return members.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Block block) {
+            return members.get(block.getDenseId());
+        }
+
+        @Override
+        public void add(Block block) {
+            members.set(block.getDenseId());
+        }
+
+        @Override
+        public Block poll() {
+            int id = members.nextSetBit(0);
+            if (id < 0) {
+                return null;
+            }
+            members.clear(id);
+            return cfg.getBlock(id);
+        }
+
+        @Override
+        public String toString() {
+            List<Block> queue = new ArrayList<>();
+            for (int i = members.nextSetBit(0); i >= 0; i = members.nextSetBit(i + 1)) {
+                queue.add(cfg.getBlock(i));
+            }
+            return "Worklist(" + queue + ")";
+        }
+    }
+
+    /**
+     * Create the worklist used for the fix-point iteration over {@code cfg}.
+     * Subclasses can override this method to use another worklist
+     * implementation, e.g. {@link PriorityQueueWorklist}.
+     */
+    protected Worklist createWorklist(ControlFlowGraph cfg) {
+        return new BitSetWorklist(cfg);
+    }
+
     /**
      * Read the {@link TransferInput} for a particular basic block (or {@code null} if
      * none exists yet).
@@ -571,7 +680,9 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
      *         block <code>b</code>.
      */
     protected /*@Nullable*/ TransferInput<A, S> getInputBefore(Block b) {
-        return inputs.get(b);
+        int id = b.getDenseId();
+        // Unreachable blocks, such as an unreachable exit block, have no id.
+        return (id < 0) ? null : inputs[id];
     }
 
     /**
@@ -591,12 +702,14 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
     }
 
     /**
-     * Read the {@link Store} for a particular basic block from a map of stores
-     * (or {@code null} if none exists yet).
+     * Read the {@link Store} for a particular basic block from an array of
+     * stores indexed by dense block id (or {@code null} if none exists yet).
      */
-    protected static <S> /*@Nullable*/ S readFromStore(Map<Block, S> stores,
+    protected static <S> /*@Nullable*/ S readFromStore(S[] stores,
             Block b) {
-        return stores.get(b);
+        int id = b.getDenseId();
+        // Unreachable blocks have no id.
+        return (id < 0) ? null : stores[id];
     }
 
     /** Is the analysis currently running? */
@@ -625,9 +738,9 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
                     .getTransitiveOperands().contains(n)))) {
                 return null;
             }
-            return nodeValues.get(n);
         }
-        return nodeValues.get(n);
+        int id = cfg.getDenseId(n);
+        return (id < 0) ? null : nodeValues[id];
     }
 
     /**
@@ -674,17 +787,37 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
     public List<Pair<ReturnNode, TransferResult<A, S>>> getReturnStatementStores() {
         List<Pair<ReturnNode, TransferResult<A, S>>> result = new ArrayList<>();
         for (ReturnNode returnNode : cfg.getReturnNodes()) {
-            TransferResult<A, S> store = storesAtReturnStatements
-                    .get(returnNode);
+            int id = cfg.getDenseId(returnNode);
+            TransferResult<A, S> store = (id < 0) ? null : storesAtReturnStatements[id];
             result.add(Pair.of(returnNode, store));
         }
         return result;
     }
 
+    /**
+     * @return The result of the analysis.  The result is built once after the
+     *         analysis finished and shared by later calls.
+     */
     public AnalysisResult<A, S> getResult() {
         assert !isRunning;
+        if (result != null) {
+            return result;
+        }
         IdentityHashMap<Tree, Node> treeLookup = cfg.getTreeLookup();
-        return new AnalysisResult<>(nodeValues, inputs, treeLookup, finalLocalValues);
+        IdentityHashMap<Node, A> nodeValueMap = new IdentityHashMap<>();
+        for (int i = 0; i < nodeValues.length; i++) {
+            if (nodeValues[i] != null) {
+                nodeValueMap.put(cfg.getNode(i), nodeValues[i]);
+            }
+        }
+        IdentityHashMap<Block, TransferInput<A, S>> inputMap = new IdentityHashMap<>();
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i] != null) {
+                inputMap.put(cfg.getBlock(i), inputs[i]);
+            }
+        }
+        result = new AnalysisResult<>(nodeValueMap, inputMap, treeLookup, finalLocalValues);
+        return result;
     }
 
     /**
@@ -693,17 +826,16 @@ public class Analysis<A extends AbstractValue<A>, S extends Store<S>, T extends
      *         block).
      */
     public /*@Nullable*/ S getRegularExitStore() {
-        SpecialBlock regularExitBlock = cfg.getRegularExitBlock();
-        if (inputs.containsKey(regularExitBlock)) {
-            S regularExitStore = inputs.get(regularExitBlock).getRegularStore();
-            return regularExitStore;
+        TransferInput<A, S> input = getInputBefore(cfg.getRegularExitBlock());
+        if (input != null) {
+            return input.getRegularStore();
         } else {
             return null;
         }
     }
 
     public S getExceptionalExitStore() {
-        S exceptionalExitStore = inputs.get(cfg.getExceptionalExitBlock())
+        S exceptionalExitStore = getInputBefore(cfg.getExceptionalExitBlock())
                 .getRegularStore();
         return exceptionalExitStore;
     }
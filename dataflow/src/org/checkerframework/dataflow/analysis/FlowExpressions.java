@@ -586,6 +586,18 @@ public class FlowExpressions {
             this.method = method;
         }
 
+        public Receiver getReceiver() {
+            return receiver;
+        }
+
+        public List<Receiver> getParameters() {
+            return parameters;
+        }
+
+        public Element getElement() {
+            return method;
+        }
+
         @Override
         public boolean containsOfClass(Class<? extends FlowExpressions.Receiver> clazz) {
             if (getClass().equals(clazz)) {
@@ -11,7 +11,9 @@ import org.checkerframework.dataflow.cfg.block.Block;
 import org.checkerframework.dataflow.cfg.block.Block.BlockType;
 import org.checkerframework.dataflow.cfg.block.BlockImpl;
 import org.checkerframework.dataflow.cfg.block.ConditionalBlockImpl;
+import org.checkerframework.dataflow.cfg.block.ExceptionBlock;
 import org.checkerframework.dataflow.cfg.block.ExceptionBlockImpl;
+import org.checkerframework.dataflow.cfg.block.RegularBlock;
 import org.checkerframework.dataflow.cfg.block.RegularBlockImpl;
 import org.checkerframework.dataflow.cfg.block.SingleSuccessorBlockImpl;
 import org.checkerframework.dataflow.cfg.block.SpecialBlock.SpecialBlockType;
@@ -101,6 +103,7 @@ import java.util.HashSet;
 import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -746,6 +749,11 @@ public class CFGBuilder {
      *
      * Eliminating the second type of degenerate cases might introduce cases of
      * the third problem. These are also removed.
+     *
+     * <p>
+     *
+     * Finally, all basic blocks and the nodes they contain are assigned dense
+     * ids, which allow analyses to store information about them in arrays.
      */
     public static class CFGTranslationPhaseThree {
 
@@ -848,9 +856,54 @@ public class CFGBuilder {
                 }
             }
 
+            assignDenseIds(cfg);
             return cfg;
         }
 
+        /**
+         * Assign dense ids to all basic blocks of {@code cfg} and to the nodes
+         * they contain.  Blocks are numbered in depth-first order, such that
+         * their ids can be used directly as worklist priorities.
+         */
+        protected static void assignDenseIds(ControlFlowGraph cfg) {
+            // A block can occur more than once in the depth-first ordering;
+            // its last occurrence determines its position.
+            List<Block> dfsOrder = cfg.getDepthFirstOrderedBlocks();
+            Set<Block> seen = Collections.newSetFromMap(new IdentityHashMap<Block, Boolean>());
+            LinkedList<Block> ordered = new LinkedList<>();
+            for (ListIterator<Block> it = dfsOrder.listIterator(dfsOrder.size()); it.hasPrevious(); ) {
+                Block b = it.previous();
+                if (seen.add(b)) {
+                    ordered.addFirst(b);
+                }
+            }
+
+            Block[] blocks = new Block[ordered.size()];
+            List<Node> nodes = new ArrayList<>();
+            int id = 0;
+            for (Block b : ordered) {
+                ((BlockImpl) b).setDenseId(id);
+                blocks[id++] = b;
+                switch (b.getType()) {
+                case REGULAR_BLOCK:
+                    for (Node n : ((RegularBlock) b).getContents()) {
+                        n.setDenseId(nodes.size());
+                        nodes.add(n);
+                    }
+                    break;
+                case EXCEPTION_BLOCK: {
+                    Node n = ((ExceptionBlock) b).getNode();
+                    n.setDenseId(nodes.size());
+                    nodes.add(n);
+                    break;
+                }
+                default:
+                    break;
+                }
+            }
+            cfg.setDenseIds(blocks, nodes.toArray(new Node[nodes.size()]));
+        }
+
         /**
          * Compute the set of empty regular basic blocks {@code empty}, starting
          * at {@code start} and going both forward and backwards. Furthermore,
@@ -0,0 +1,125 @@
+package org.checkerframework.dataflow.cfg;
+
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.Element;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.Tree;
+
+/**
+ * A cache of control flow graphs, which lets several analyses of the same
+ * code in one compilation, e.g. by the checkers of an aggregate checker,
+ * share one graph instead of building it again.
+ *
+ * <p>
+ *
+ * Graphs are cached per top-level class: a graph of code in a class is only
+ * cached while the class is {@linkplain #open open}, and all graphs of the
+ * class are evicted when the class is {@linkplain #close closed}, i.e. when
+ * all analyses of the class are finished.
+ *
+ * <p>
+ *
+ * A graph is looked up by the code of its {@link UnderlyingAST} and by a
+ * configuration of the builder, such as whether assertions are assumed to
+ * be enabled.  Only graphs that do not otherwise depend on the client that
+ * built them may be cached, and cached graphs must not be modified.  The
+ * cache may be used by several threads.
+ */
+public class CFGCache {
+
+    /** A cached control flow graph, with other results of building it. */
+    public static class Entry {
+        /** The control flow graph. */
+        public final ControlFlowGraph cfg;
+
+        /** The classes declared in the code; see {@link CFGBuilder#getDeclaredClasses}. */
+        public final List<ClassTree> declaredClasses;
+
+        /**
+         * The trees that the builder created for the graph, with the method
+         * or class that encloses each of them.
+         */
+        public final Map<Tree, Element> artificialTrees;
+
+        public Entry(ControlFlowGraph cfg, List<ClassTree> declaredClasses,
+                Map<Tree, Element> artificialTrees) {
+            this.cfg = cfg;
+            this.declaredClasses = Collections.unmodifiableList(
+                    new ArrayList<>(declaredClasses));
+            this.artificialTrees = Collections.unmodifiableMap(
+                    new IdentityHashMap<>(artificialTrees));
+        }
+    }
+
+    /**
+     * The graphs of the open classes, by class and by the code and the
+     * configuration of each graph.
+     */
+    private static final Map<ClassTree, Map<List<Object>, Entry>> openClasses =
+            new IdentityHashMap<>();
+
+    /**
+     * Start caching the graphs of code in {@code classTree}.
+     */
+    public static synchronized void open(ClassTree classTree) {
+        if (!openClasses.containsKey(classTree)) {
+            openClasses.put(classTree, new HashMap<List<Object>, Entry>());
+        }
+    }
+
+    /**
+     * Evict the graphs of code in {@code classTree} and stop caching them.
+     */
+    public static synchronized void close(ClassTree classTree) {
+        openClasses.remove(classTree);
+    }
+
+    /**
+     * @return the cached graph of {@code ast} in the top-level class
+     *         {@code classTree}, built with {@code configuration}, or null
+     */
+    public static synchronized /*@Nullable*/ Entry get(ClassTree classTree,
+            UnderlyingAST ast, Object configuration) {
+        Map<List<Object>, Entry> graphs = openClasses.get(classTree);
+        if (graphs == null) {
+            return null;
+        }
+        return graphs.get(key(ast, configuration));
+    }
+
+    /**
+     * Cache the graph of {@code ast} in the top-level class
+     * {@code classTree}, built with {@code configuration}, unless the class
+     * is not open or a graph of {@code ast} has been cached already.
+     */
+    public static synchronized void put(ClassTree classTree,
+            UnderlyingAST ast, Object configuration, Entry entry) {
+        Map<List<Object>, Entry> graphs = openClasses.get(classTree);
+        if (graphs == null) {
+            return;
+        }
+        List<Object> key = key(ast, configuration);
+        if (!graphs.containsKey(key)) {
+            graphs.put(key, entry);
+        }
+    }
+
+    /**
+     * @return the key of a graph; trees are compared by identity
+     */
+    private static List<Object> key(UnderlyingAST ast, Object configuration) {
+        return Arrays.<Object>asList(ast.getKind(), ast.getCode(), configuration);
+    }
+}
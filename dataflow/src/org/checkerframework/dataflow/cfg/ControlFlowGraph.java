@@ -66,6 +66,18 @@ public class ControlFlowGraph {
      */
     protected final List<ReturnNode> returnNodes;
 
+    /**
+     * The blocks of this control flow graph, indexed by their dense id (see
+     * {@link Block#getDenseId}).  Blocks are numbered in depth-first order.
+     */
+    protected Block[] blocks;
+
+    /**
+     * The nodes of this control flow graph, indexed by their dense id (see
+     * {@link Node#getDenseId}).
+     */
+    protected Node[] nodes;
+
     public ControlFlowGraph(SpecialBlock entryBlock, SpecialBlockImpl regularExitBlock, SpecialBlockImpl exceptionalExitBlock, UnderlyingAST underlyingAST,
             IdentityHashMap<Tree, Node> treeLookup,
             IdentityHashMap<Tree, Node> convertedTreeLookup,
@@ -92,6 +104,47 @@ public class ControlFlowGraph {
         }
     }
 
+    /**
+     * Set the blocks and nodes of this control flow graph, indexed by their
+     * dense ids.  Called by the {@link CFGBuilder} once the graph is final.
+     */
+    /*package-private*/ void setDenseIds(Block[] blocks, Node[] nodes) {
+        this.blocks = blocks;
+        this.nodes = nodes;
+    }
+
+    /** @return The number of basic blocks in this control flow graph. */
+    public int getNumberOfBlocks() {
+        return blocks.length;
+    }
+
+    /** @return The number of nodes in the basic blocks of this control flow graph. */
+    public int getNumberOfNodes() {
+        return nodes.length;
+    }
+
+    /** @return The basic block with dense id {@code id}. */
+    public Block getBlock(int id) {
+        return blocks[id];
+    }
+
+    /** @return The node with dense id {@code id}. */
+    public Node getNode(int id) {
+        return nodes[id];
+    }
+
+    /**
+     * @return The dense id of {@link Node} {@code n}, or -1 if {@code n} is
+     *         not contained in a basic block of this control flow graph.
+     */
+    public int getDenseId(Node n) {
+        int id = n.getDenseId();
+        if (id >= 0 && id < nodes.length && nodes[id] == n) {
+            return id;
+        }
+        return -1;
+    }
+
     /** @return The entry block of the control flow graph. */
     public SpecialBlock getEntryBlock() {
         return entryBlock;
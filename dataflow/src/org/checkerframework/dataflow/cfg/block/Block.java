@@ -34,4 +34,10 @@ public interface Block {
      */
     long getId();
 
+    /**
+     * @return The dense identifier of this block, which is in the range
+     *         [0, number of blocks) of its control flow graph.
+     */
+    int getDenseId();
+
 }
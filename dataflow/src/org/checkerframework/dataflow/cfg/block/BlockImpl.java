@@ -15,6 +15,9 @@ public abstract class BlockImpl implements Block {
     /** A unique ID for this node. */
     protected long id = BlockImpl.uniqueID();
 
+    /** The dense ID of this block within its control flow graph. */
+    protected int denseId = -1;
+
     /** The last ID that has already been used. */
     protected static long lastId = 0;
 
@@ -40,6 +43,16 @@ public abstract class BlockImpl implements Block {
         return id;
     }
 
+    @Override
+    public int getDenseId() {
+        return denseId;
+    }
+
+    /** Set the dense ID of this block within its control flow graph. */
+    public void setDenseId(int denseId) {
+        this.denseId = denseId;
+    }
+
     @Override
     public BlockType getType() {
         return type;
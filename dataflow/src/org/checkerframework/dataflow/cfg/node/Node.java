@@ -45,6 +45,12 @@ public abstract class Node {
      */
     protected /*@Nullable*/ Block block;
 
+    /**
+     * The dense ID of this node within its control flow graph, or -1 if it
+     * is not contained in a basic block.
+     */
+    protected int denseId = -1;
+
     /**
      * Is this node an l-value?
      */
@@ -86,6 +92,21 @@ public abstract class Node {
         block = b;
     }
 
+    /**
+     * @return The dense ID of this node, which is in the range [0, number of
+     *         nodes) of its control flow graph, or -1 if this node is not
+     *         contained in a basic block.
+     * @see org.checkerframework.dataflow.cfg.ControlFlowGraph#getDenseId(Node)
+     */
+    public int getDenseId() {
+        return denseId;
+    }
+
+    /** Set the dense ID of this node within its control flow graph. */
+    public void setDenseId(int denseId) {
+        this.denseId = denseId;
+    }
+
     /**
      * Returns the {@link Tree} in the abstract syntax tree, or
      * <code>null</code> if no corresponding tree exists. For instance, this is
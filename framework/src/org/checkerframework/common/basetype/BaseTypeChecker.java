@@ -122,6 +122,23 @@ public abstract class BaseTypeChecker extends SourceChecker {
     }
 
 
+    /**
+     * Outputs the statistics for the last compilation unit, if the
+     * "stats" option is provided.
+     * The statistics for all other compilation units are output when
+     * the type factory moves on to the next compilation unit.
+     *
+     * @see org.checkerframework.framework.type.AnnotatedTypeFactory#printStats()
+     */
+    @Override
+    public void typeProcessingOver() {
+        if (hasOption("stats") && visitor != null) {
+            ((BaseTypeVisitor<?>) visitor).getTypeFactory().printStats();
+        }
+        super.typeProcessingOver();
+    }
+
+
     // **********************************************************************
     // Misc. methods
     // **********************************************************************
@@ -2,12 +2,14 @@ package org.checkerframework.common.value;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.lang.model.element.AnnotationMirror;
@@ -50,6 +52,7 @@ import org.checkerframework.framework.util.MultiGraphQualifierHierarchy.MultiGra
 import org.checkerframework.framework.util.QualifierDefaults;
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.ElementUtils;
+import org.checkerframework.javacutil.ErrorReporter;
 import org.checkerframework.javacutil.TreeUtils;
 import org.checkerframework.javacutil.TypesUtils;
 
@@ -89,9 +92,21 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
 
     private long t = 0;
 
-    protected static final int MAX_VALUES = 10; // The maximum number of values
-                                                // allowed in an annotation's
-                                                // array
+    protected static final int MAX_VALUES = 10; // The default bound on the
+                                                // number of values allowed in
+                                                // an annotation's array
+
+    /**
+     * Annotations have fewer values than this bound; otherwise UnknownVal is
+     * used.  Can be changed with the "maxValues" option.
+     */
+    protected final int maxValues;
+
+    /** Evaluates operators, methods, and constructors. */
+    private final ValueEvaluator evaluator = new ValueEvaluator();
+
+    /** The methods of invocations that were resolved, see getMethodObject. */
+    private final Map<ExecutableElement, Method> methodObjects = new HashMap<ExecutableElement, Method>();
     protected final List<AnnotationMirror> constantAnnotations;
     protected final List<AnnotationMirror> orderedNumberAnnotations;
     protected Set<String> coveredClassStrings;
@@ -104,6 +119,7 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
      */
     public ValueAnnotatedTypeFactory(BaseTypeChecker checker) {
         super(checker);
+        maxValues = getMaxValues();
         PUBLIC_STATIC_FINAL_SET.add(Modifier.PUBLIC);
         PUBLIC_STATIC_FINAL_SET.add(Modifier.FINAL);
         PUBLIC_STATIC_FINAL_SET.add(Modifier.STATIC);
@@ -169,8 +185,30 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
         }
     }
 
+    /**
+     * Returns the bound on the number of values of an annotation given by the
+     * "maxValues" option, or {@link #MAX_VALUES}.
+     */
+    private int getMaxValues() {
+        String option = checker.getOption("maxValues");
+        if (option == null) {
+            return MAX_VALUES;
+        }
+        try {
+            int max = Integer.parseInt(option.trim());
+            if (max > 1) {
+                return max;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        ErrorReporter.errorAbort("ValueAnnotatedTypeFactory: invalid maxValues option \"" + option +
+                "\"; expected a number greater than 1");
+        return MAX_VALUES; // dead code
+    }
+
     public AnnotationMirror createAnnotation(String name, Set<?> values) {
-        if (values.size() > 0 && values.size() < MAX_VALUES) {
+        if (values.size() > 0 && values.size() < maxValues) {
             AnnotationBuilder builder = new AnnotationBuilder(processingEnv,
                     name);
             List<Object> valuesList = new ArrayList<Object>(values);
@@ -723,24 +761,24 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
                 AnnotationMirror argAnno, String operation, Class<?> argClass,
                 UnaryTree tree) {
             try {
-                Class<?>[] argClasses = new Class<?>[] { argClass };
-                Method m = Operators.class.getMethod(operation, argClasses);
+                ValueEvaluator.Invoker operator = evaluator.getOperator(operation, argClass);
 
                 List<?> annoValues = AnnotationUtils.getElementValueArray(
                         argAnno, "value", argClass, true);
                 ArrayList<Object> results = new ArrayList<Object>(
                         annoValues.size());
 
-                for (Object val : annoValues) {
-                    results.add(m.invoke(null, new Object[] { val }));
+                if (evaluator.evaluate(operator, null,
+                        Collections.singletonList(annoValues), results) == null) {
+                    return resultAnnotationHandler(operator.returnType, results);
                 }
-                return resultAnnotationHandler(m.getReturnType(), results);
             } catch (ReflectiveOperationException e) {
-                checker.report(Result
-                        .warning("operator.unary.evaluation.failed", operation,
-                                argClass), tree);
-                return null;
+                // reported below
             }
+            checker.report(Result
+                    .warning("operator.unary.evaluation.failed", operation,
+                            argClass), tree);
+            return null;
         }
 
         @Override
@@ -827,8 +865,7 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
 
         /**
          * This method resolves a binary operator by converting it to a
-         * reflective call to one of the operators defined in
-         * BinaryOperators.java. This method's arguments need to be correct
+         * call to one of the operators defined in Operators.java. This method's arguments need to be correct
          * (such as annotations not being UnknownVal or being of different value
          * annotation types) so be careful you are going to call this.
          *
@@ -839,8 +876,8 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
          * @param operation
          *            the String name of the operation
          * @param argClass
-         *            the Class of the operations arguments (used for reflective
-         *            code)
+         *            the Class of the operations arguments (used to resolve
+         *            the operator)
          *
          * @return
          */
@@ -848,8 +885,7 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
                 AnnotationMirror lhsAnno, AnnotationMirror rhsAnno,
                 String operation, Class<?> argClass, BinaryTree tree) {
             try {
-                Class<?>[] argClasses = new Class<?>[] { argClass, argClass };
-                Method m = Operators.class.getMethod(operation, argClasses);
+                ValueEvaluator.Invoker operator = evaluator.getOperator(operation, argClass, argClass);
 
                 List<?> lhsAnnoValues = AnnotationUtils.getElementValueArray(
                         lhsAnno, "value", argClass, true);
@@ -858,18 +894,17 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
                 ArrayList<Object> results = new ArrayList<Object>(
                         lhsAnnoValues.size() * rhsAnnoValues.size());
 
-                for (Object lhsO : lhsAnnoValues) {
-                    for (Object rhsO : rhsAnnoValues) {
-                        results.add(m.invoke(null, new Object[] { lhsO, rhsO }));
-                    }
+                if (evaluator.evaluate(operator, null,
+                        Arrays.asList(lhsAnnoValues, rhsAnnoValues), results) == null) {
+                    return resultAnnotationHandler(operator.returnType, results);
                 }
-                return resultAnnotationHandler(m.getReturnType(), results);
             } catch (ReflectiveOperationException e) {
-                checker.report(Result.warning(
-                        "operator.binary.evaluation.failed", operation,
-                        argClass), tree);
-                return null;
+                // reported below
             }
+            checker.report(Result.warning(
+                    "operator.binary.evaluation.failed", operation,
+                    argClass), tree);
+            return null;
         }
 
         /**
@@ -966,9 +1001,11 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
         }
 
         private Method getMethodObject(MethodInvocationTree tree) throws ClassNotFoundException, NoSuchMethodException {
-            Method method;
             ExecutableElement ele = TreeUtils.elementFromUse(tree);
-            ele.getEnclosingElement();
+            Method method = methodObjects.get(ele);
+            if (method != null) {
+                return method;
+            }
             Name clazz = TypesUtils.getQualifiedName((DeclaredType) ele.getEnclosingElement().asType());
             List<? extends VariableElement> paramEles = ele.getParameters();
             List<Class<?>> paramClzz = new ArrayList<>();
@@ -994,6 +1031,7 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
             }
             Class<?> clzz = Class.forName(clazz.toString());
             method = clzz.getMethod(ele.getSimpleName().toString(), paramClzz.toArray(new Class<?>[0]));
+            methodObjects.put(ele, method);
             return method;
         }
 
@@ -1027,119 +1065,24 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
             }
 
             // Get the values for all the arguments
-            ArrayDeque<List<Object>> allArgValues = getAllArgumentAnnotationValues(
+            List<List<Object>> allArgValues = getAllArgumentAnnotationValues(
                     argTypes, tree);
-            // Evaluate the method by recursively navigating through all the
-            // argument value lists, adding all results to the results list.
-            ArrayDeque<Object> specificArgValues = new ArrayDeque<Object>();
+            // Evaluate the method for all combinations of receiver and
+            // argument values, adding all results to the results list.
             ArrayList<Object> results = new ArrayList<Object>();
-
-            evaluateMethodHelper(allArgValues, specificArgValues, recValues,
-                    method, results, tree);
-            return resultAnnotationHandler(retType, results, tree);
-        }
-
-        /**
-         * Recursive helper function for evaluateMethod. Recurses through each
-         * List of Object representing possible argument values. At each
-         * recursion, all possible values for an argument are incremented
-         * through and the method is invoked on each one and the result is added
-         * to the results list.
-         *
-         * @param argArrayDeque
-         *            ArrayDeque of Lists of Objects representing possible
-         *            values for each argument
-         * @param values
-         *            ArrayDeque of Objects containing the argument values for a
-         *            specific invocation of method. This is the structure that
-         *            is modified at each recursion to add a different argument
-         *            value.
-         * @param receiverValues
-         *            a List of Object representing all the possible values of
-         *            the receiver
-         * @param method
-         *            the method to invoke
-         * @param results
-         *            a List of all values returned. Once all calls are finished
-         *            this will contain the results for all possible
-         *            combinations of argument and receiver values invoking the
-         *            method
-         */
-        private void evaluateMethodHelper(
-                ArrayDeque<List<Object>> argArrayDeque,
-                ArrayDeque<Object> values, List<Object> receiverValues,
-                Method method, List<Object> results, MethodInvocationTree tree) {
-            // If we have descended through all the argument value lists
-            if (argArrayDeque.size() == 0) {
-                try {
-                    // If the receiver has values (the method is not static)
-                    if (receiverValues != null) {
-
-                        // Iterate through all the receiver's values
-                        for (Object o : receiverValues) {
-
-                            // If there were argument values, invoke with them
-                            if (values.size() > 0) {
-                                results.add(method.invoke(o, values.toArray()));
-                            }
-                            // Otherwise, invoke without them (the method took
-                            // no arguments)
-                            else {
-                                results.add(method.invoke(o));
-                            }
-                        }
-                    }
-                    // If this is a static method, the receiver values do not
-                    // exist/do not matter
-                    else {
-                        // If there were arguments, invoke with them
-                        if (values.size() > 0) {
-                            results.add(method.invoke(null, values.toArray()));
-                        }
-                        // Otherwise, invoke without them
-                        else {
-                            results.add(method.invoke(null));
-                        }
-                    }
-                } catch (InvocationTargetException e) {
+            try {
+                Throwable failure = evaluator.evaluate(evaluator.getMethod(method),
+                        recValues, allArgValues, results);
+                if (failure != null) {
                     checker.report(Result.warning("method.evaluation.exception",
-                            method, e.getTargetException().toString()), tree);
-                    results = new ArrayList<Object>();
-                } catch (ReflectiveOperationException e) {
-                    checker.report(
-                            Result.warning("method.evaluation.failed", method),
-                            tree);
-                    results = new ArrayList<Object>(); // fail by setting the
-                    // results list to
-                    // empty. Since we
-                    // failed on the invoke,
-                    // all calls of this
-                    // method will fail, so
-                    // the final results
-                    // list will be an empty
-                    // list. That will cause
-                    // an UnknownVal
-                    // annotation to be
-                    // created, which seems
-                    // appropriate here
-                }
-            }
-
-            // If there are still lists of argument values left in the deque
-            else {
-
-                // Pop an argument off and iterate through all its values
-                List<Object> argValues = argArrayDeque.pop();
-                for (Object o : argValues) {
-
-                    // Push one of the arg's values on and evaluate, then pop
-                    // and do the next
-                    values.push(o);
-                    evaluateMethodHelper(argArrayDeque, values, receiverValues,
-                            method, results, tree);
-                    values.pop();
+                            method, failure.toString()), tree);
                 }
+            } catch (IllegalAccessException e) {
+                checker.report(
+                        Result.warning("method.evaluation.failed", method),
+                        tree);
             }
+            return resultAnnotationHandler(retType, results, tree);
         }
 
         @Override
@@ -1210,87 +1153,25 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
         private AnnotationMirror evaluateNewClass(Constructor<?> constructor,
                 List<AnnotatedTypeMirror> argTypes,
                 AnnotatedTypeMirror retType, NewClassTree tree) {
-            ArrayDeque<List<Object>> allArgValues = getAllArgumentAnnotationValues(
+            List<List<Object>> allArgValues = getAllArgumentAnnotationValues(
                     argTypes, tree);
 
-            ArrayDeque<Object> specificArgValues = new ArrayDeque<Object>();
             ArrayList<Object> results = new ArrayList<Object>();
-            evaluateNewClassHelper(allArgValues, specificArgValues,
-                    constructor, results, tree);
-
-            return resultAnnotationHandler(retType, results, tree);
-        }
-
-        /**
-         * Recurses through all the possible argument values and invokes the
-         * constructor on each one, adding the result to the results list
-         *
-         * @param argArrayDeque
-         *            ArrayDeque of List of Object containing all the argument
-         *            values
-         * @param values
-         *            ArrayDeque of Objects containing the argument values for a
-         *            specific invocation of method. This is the structure that
-         *            is modified at each recursion to add a different argument
-         *            value.
-         * @param constructor
-         *            the constructor to invoke
-         * @param results
-         *            a List of all values returned. Once all calls are finished
-         *            this will contain the results for all possible
-         *            combinations of argument values invoking the constructor
-         */
-        private void evaluateNewClassHelper(
-                ArrayDeque<List<Object>> argArrayDeque,
-                ArrayDeque<Object> values, Constructor<?> constructor,
-                List<Object> results, NewClassTree tree) {
-            // If we have descended through all argument value lists
-            if (argArrayDeque.size() == 0) {
-                try {
-                    // If there are argument values (not an empty constructor)
-                    if (values.size() > 0) {
-                        results.add(constructor.newInstance(values.toArray()));
-                    }
-                    // If there are no argument values (empty constructor)
-                    else {
-                        results.add(constructor.newInstance());
-                    }
-                } catch (ReflectiveOperationException e) {
+            try {
+                Throwable failure = evaluator.evaluate(evaluator.getConstructor(constructor),
+                        null, allArgValues, results);
+                if (failure != null) {
                     checker.report(
                             Result.warning("constructor.invocation.failed"),
                             tree);
-                    results = new ArrayList<Object>();// fail by setting the
-                    // results list to
-                    // empty. Since we
-                    // failed on the
-                    // newInstance, all
-                    // calls of this
-                    // constructor will
-                    // fail, so the final
-                    // results list will be
-                    // an empty list. That
-                    // will cause an
-                    // UnknownVal annotation
-                    // to be created, which
-                    // seems appropriate
-                    // here
                 }
+            } catch (IllegalAccessException e) {
+                checker.report(
+                        Result.warning("constructor.invocation.failed"),
+                        tree);
             }
-            // If there are still lists of argument values left in the deque
-            else {
 
-                // Pop an argument off and iterate through all its values
-                List<Object> argValues = argArrayDeque.pop();
-                for (Object o : argValues) {
-
-                    // Push one of the arg's values on and evaluate, then pop
-                    // and do the next
-                    values.push(o);
-                    evaluateNewClassHelper(argArrayDeque, values, constructor,
-                            results, tree);
-                    values.pop();
-                }
-            }
+            return resultAnnotationHandler(retType, results, tree);
         }
 
         @Override
@@ -1609,27 +1490,21 @@ public class ValueAnnotatedTypeFactory extends BaseAnnotatedTypeFactory {
 
         /**
          * Extracts and correctly casts all the values of a List of
-         * AnnotatedTypeMirror elements and stores them in an ArrayDeque. The
-         * order in the ArrayDeque is the reverse of the order of the List
-         * (List[0] -> ArrayDeque[size -1]). This ordering may not be intuitive
-         * but this method is used in conjunction with the recursive descent to
-         * evaluate method and constructor invocations, which will pop argument
-         * values off and push them onto another deque, so the order actually
-         * gets reversed twice and the original order is maintained.
+         * AnnotatedTypeMirror elements.
          *
          * @param argTypes
          *            a List of AnnotatedTypeMirror elements
          *
-         * @return an ArrayDeque containing List of Object where each list
+         * @return a List containing List of Object where each list
          *         corresponds to the annotation values of an
-         *         AnnotatedTypeMirror passed in.
+         *         AnnotatedTypeMirror passed in, in the same order.
          */
-        private ArrayDeque<List<Object>> getAllArgumentAnnotationValues(
+        private List<List<Object>> getAllArgumentAnnotationValues(
                 List<AnnotatedTypeMirror> argTypes, Tree tree) {
-            ArrayDeque<List<Object>> allArgValues = new ArrayDeque<List<Object>>();
+            List<List<Object>> allArgValues = new ArrayList<List<Object>>(argTypes.size());
 
             for (AnnotatedTypeMirror a : argTypes) {
-                allArgValues.push(getCastedValues(a, tree));
+                allArgValues.add(getCastedValues(a, tree));
             }
             return allArgValues;
         }
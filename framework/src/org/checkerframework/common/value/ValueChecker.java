@@ -1,12 +1,17 @@
 package org.checkerframework.common.value;
 
+import javax.annotation.processing.SupportedOptions;
+
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.common.basetype.BaseTypeVisitor;
 
 /**
  * @author plvines
- * 
+ *
+ * The "maxValues" option sets the bound on the number of values of an
+ * annotation; see {@link ValueAnnotatedTypeFactory#maxValues}.
  */
+@SupportedOptions( { "maxValues" } )
 public class ValueChecker extends BaseTypeChecker {
 
     @Override
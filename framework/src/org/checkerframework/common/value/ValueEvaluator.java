@@ -0,0 +1,171 @@
+package org.checkerframework.common.value;
+
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates operators, methods, and constructors on all combinations of the
+ * possible values of their receivers and arguments, for the
+ * {@link ValueAnnotatedTypeFactory}.
+ *
+ * <p>
+ *
+ * Each operator, method, and constructor is resolved only once, into an
+ * {@link Invoker}: a method handle that takes the receiver and the arguments
+ * as one array of Objects and returns an Object.  A set of combinations is
+ * evaluated in bulk, by refilling a single array for each combination,
+ * instead of a reflective call with new argument arrays per combination.
+ */
+class ValueEvaluator {
+
+    /** A resolved operator, method, or constructor. */
+    static class Invoker {
+        /** Takes the receiver, if any, and the arguments as an Object[]. */
+        private final MethodHandle handle;
+
+        /** The number of elements of the array passed to the handle. */
+        private final int arity;
+
+        /** Does the handle take a receiver? */
+        private final boolean hasReceiver;
+
+        /** The result type of the operator, method, or constructor. */
+        final Class<?> returnType;
+
+        private Invoker(MethodHandle handle, boolean hasReceiver, Class<?> returnType) {
+            this.arity = handle.type().parameterCount();
+            this.handle = handle.asType(MethodType.genericMethodType(arity))
+                    .asSpreader(Object[].class, arity);
+            this.hasReceiver = hasReceiver;
+            this.returnType = returnType;
+        }
+    }
+
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    /** The operators of {@link Operators}, by name and argument classes. */
+    private final Map<List<Object>, Invoker> operators = new HashMap<List<Object>, Invoker>();
+
+    /** The invokers of methods and constructors. */
+    private final Map<Member, Invoker> members = new HashMap<Member, Invoker>();
+
+    /**
+     * @return the invoker of the method of {@link Operators} with the given
+     *         name and argument classes
+     * @throws NoSuchMethodException if there is no such method
+     */
+    Invoker getOperator(String operation, Class<?>... argClasses)
+            throws NoSuchMethodException, IllegalAccessException {
+        List<Object> key = Arrays.<Object>asList(operation, Arrays.asList(argClasses));
+        Invoker invoker = operators.get(key);
+        if (invoker == null) {
+            Method m = Operators.class.getMethod(operation, argClasses);
+            invoker = new Invoker(lookup.unreflect(m), false, m.getReturnType());
+            operators.put(key, invoker);
+        }
+        return invoker;
+    }
+
+    /**
+     * @return the invoker of {@code method}, which must be accessible
+     */
+    Invoker getMethod(Method method) throws IllegalAccessException {
+        Invoker invoker = members.get(method);
+        if (invoker == null) {
+            invoker = new Invoker(lookup.unreflect(method),
+                    !Modifier.isStatic(method.getModifiers()), method.getReturnType());
+            members.put(method, invoker);
+        }
+        return invoker;
+    }
+
+    /**
+     * @return the invoker of {@code constructor}, which must be accessible
+     */
+    Invoker getConstructor(Constructor<?> constructor) throws IllegalAccessException {
+        Invoker invoker = members.get(constructor);
+        if (invoker == null) {
+            invoker = new Invoker(lookup.unreflectConstructor(constructor),
+                    false, constructor.getDeclaringClass());
+            members.put(constructor, invoker);
+        }
+        return invoker;
+    }
+
+    /**
+     * Invokes {@code invoker} on every combination of the given receiver and
+     * argument values and adds the results to {@code results}.  A
+     * combination for which the evaluated code throws an exception is
+     * skipped.
+     *
+     * @param receiverValues the possible values of the receiver, or null if
+     *        the invoker does not take a receiver
+     * @param argValues the possible values of each argument
+     * @param results the list to which the results are added
+     * @return the first exception thrown by the evaluated code, or null if
+     *         every combination was evaluated
+     */
+    /*@Nullable*/ Throwable evaluate(Invoker invoker, /*@Nullable*/ List<?> receiverValues,
+            List<? extends List<?>> argValues, List<Object> results) {
+        int offset = invoker.hasReceiver ? 1 : 0;
+        assert invoker.arity == offset + argValues.size();
+
+        // A combination of values is an index into each list of values,
+        // which is incremented like the digits of a number.
+        int lists = invoker.arity;
+        List<?>[] values = new List<?>[lists];
+        if (invoker.hasReceiver) {
+            values[0] = receiverValues;
+        }
+        for (int i = 0; i < argValues.size(); i++) {
+            values[offset + i] = argValues.get(i);
+        }
+        for (List<?> list : values) {
+            if (list.isEmpty()) {
+                return null;
+            }
+        }
+
+        int[] indices = new int[lists];
+        Object[] combination = new Object[lists];
+        for (int i = 0; i < lists; i++) {
+            combination[i] = values[i].get(0);
+        }
+        Throwable failure = null;
+        while (true) {
+            try {
+                results.add((Object) invoker.handle.invokeExact(combination));
+            } catch (Throwable t) {
+                if (failure == null) {
+                    failure = t;
+                }
+            }
+
+            // Advance to the next combination; the last list varies fastest.
+            int i = lists - 1;
+            while (i >= 0 && indices[i] == values[i].size() - 1) {
+                indices[i] = 0;
+                combination[i] = values[i].get(0);
+                i--;
+            }
+            if (i < 0) {
+                return failure;
+            }
+            indices[i]++;
+            combination[i] = values[i].get(indices[i]);
+        }
+    }
+}
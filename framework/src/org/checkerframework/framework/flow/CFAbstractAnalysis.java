@@ -14,6 +14,7 @@ import javax.lang.model.type.TypeMirror;
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.dataflow.analysis.Analysis;
 import org.checkerframework.dataflow.cfg.CFGDOTVisualizer;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
 import org.checkerframework.framework.source.SourceChecker;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.type.AnnotatedTypeMirror;
@@ -96,6 +97,24 @@ public abstract class CFAbstractAnalysis<V extends CFAbstractValue<V>,
         return fieldValues;
     }
 
+    /**
+     * Uses the worklist implementation selected by the "flowWorklist"
+     * option: "bitset" (the default) or "priorityqueue".
+     */
+    @Override
+    protected Worklist createWorklist(ControlFlowGraph cfg) {
+        String kind = checker.getOption("flowWorklist", "bitset");
+        if (kind.equals("priorityqueue")) {
+            return new PriorityQueueWorklist(cfg);
+        } else if (kind.equals("bitset")) {
+            return new BitSetWorklist(cfg);
+        } else {
+            ErrorReporter.errorAbort("CFAbstractAnalysis: unknown flowWorklist \"" + kind +
+                    "\"; expected \"bitset\" or \"priorityqueue\"");
+            return null; // dead code
+        }
+    }
+
     /**
      * @return The transfer function to be used by the analysis.
      */
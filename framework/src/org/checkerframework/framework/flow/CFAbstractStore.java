@@ -4,6 +4,7 @@ package org.checkerframework.framework.flow;
 import org.checkerframework.checker.nullness.qual.Nullable;
 */
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,7 @@ import org.checkerframework.dataflow.qual.SideEffectFree;
 import org.checkerframework.dataflow.util.PurityUtils;
 import org.checkerframework.framework.qual.MonotonicQualifier;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
+import org.checkerframework.framework.util.CopyOnWriteMap;
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.Pair;
 
@@ -40,6 +42,12 @@ import org.checkerframework.javacutil.Pair;
  * A store for the checker framework analysis tracks the annotations of memory
  * locations such as local variables and fields.
  *
+ * <p>
+ *
+ * The information is kept in {@link CopyOnWriteMap}s, so copying a store
+ * takes constant time, and stores that still share (some of) their maps can
+ * be compared and merged quickly.
+ *
  * @author Charlie Garrett
  * @author Stefan Heule
  */
@@ -57,25 +65,25 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
      * Information collected about local variables, which are identified by the
      * corresponding element.
      */
-    protected final Map<Element, V> localVariableValues;
+    protected final CopyOnWriteMap<Element, V> localVariableValues;
 
     /**
      * Information collected about fields, using the internal representation
      * {@link FieldAccess}.
      */
-    protected Map<FlowExpressions.FieldAccess, V> fieldValues;
+    protected final CopyOnWriteMap<FlowExpressions.FieldAccess, V> fieldValues;
 
     /**
      * Information collected about arrays, using the internal representation
      * {@link ArrayAccess}.
      */
-    protected Map<FlowExpressions.ArrayAccess, V> arrayValues;
+    protected final CopyOnWriteMap<FlowExpressions.ArrayAccess, V> arrayValues;
 
     /**
      * Information collected about pure method calls, using the internal
      * representation {@link PureMethodCall}.
      */
-    protected Map<FlowExpressions.PureMethodCall, V> methodValues;
+    protected final CopyOnWriteMap<FlowExpressions.PureMethodCall, V> methodValues;
 
     /**
      * Should the analysis use sequential Java semantics (i.e., assume that only
@@ -90,20 +98,23 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
     public CFAbstractStore(CFAbstractAnalysis<V, S, ?> analysis,
             boolean sequentialSemantics) {
         this.analysis = analysis;
-        localVariableValues = new HashMap<>();
-        fieldValues = new HashMap<>();
-        methodValues = new HashMap<>();
-        arrayValues = new HashMap<>();
+        localVariableValues = new CopyOnWriteMap<>();
+        fieldValues = new CopyOnWriteMap<>();
+        methodValues = new CopyOnWriteMap<>();
+        arrayValues = new CopyOnWriteMap<>();
         this.sequentialSemantics = sequentialSemantics;
     }
 
-    /** Copy constructor. */
+    /**
+     * Copy constructor.  The maps of {@code other} are shared until either
+     * store is modified.
+     */
     protected CFAbstractStore(CFAbstractStore<V, S> other) {
         this.analysis = other.analysis;
-        localVariableValues = new HashMap<>(other.localVariableValues);
-        fieldValues = new HashMap<>(other.fieldValues);
-        methodValues = new HashMap<>(other.methodValues);
-        arrayValues = new HashMap<>(other.arrayValues);
+        localVariableValues = new CopyOnWriteMap<>(other.localVariableValues);
+        fieldValues = new CopyOnWriteMap<>(other.fieldValues);
+        methodValues = new CopyOnWriteMap<>(other.methodValues);
+        arrayValues = new CopyOnWriteMap<>(other.arrayValues);
         sequentialSemantics = other.sequentialSemantics;
     }
 
@@ -151,6 +162,7 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
               || PurityUtils.isSideEffectFree(atypeFactory, method))) {
             // update field values
             Map<FlowExpressions.FieldAccess, V> newFieldValues = new HashMap<>();
+            List<FlowExpressions.FieldAccess> removedFields = new ArrayList<>();
             for (Entry<FlowExpressions.FieldAccess, V> e : fieldValues
                     .entrySet()) {
                 FlowExpressions.FieldAccess fieldAccess = e.getKey();
@@ -186,13 +198,13 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
 
                 // case 2:
                 if (!fieldAccess.isUnmodifiableByOtherCode()) {
-                    continue; // remove information completely
+                    removedFields.add(fieldAccess); // remove information completely
                 }
 
-                // keep information
-                newFieldValues.put(fieldAccess, otherVal);
+                // otherwise, keep information
             }
-            fieldValues = newFieldValues;
+            removeAll(fieldValues, removedFields);
+            fieldValues.putAll(newFieldValues);
 
             // update method values
             methodValues.clear();
@@ -514,13 +526,15 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
     protected void removeConflicting(FlowExpressions.FieldAccess fieldAccess,
             /*@Nullable*/ V val) {
         Map<FlowExpressions.FieldAccess, V> newFieldValues = new HashMap<>();
+        List<FlowExpressions.FieldAccess> removedFields = new ArrayList<>();
         for (Entry<FlowExpressions.FieldAccess, V> e : fieldValues.entrySet()) {
             FlowExpressions.FieldAccess otherFieldAccess = e.getKey();
             V otherVal = e.getValue();
             // case 2:
             if (otherFieldAccess.getReceiver().containsModifiableAliasOf(this,
                     fieldAccess)) {
-                continue; // remove information completely
+                removedFields.add(otherFieldAccess); // remove information completely
+                continue;
             }
             // case 1:
             if (fieldAccess.getField().equals(otherFieldAccess.getField())) {
@@ -531,31 +545,28 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
                             V newVal = val.leastUpperBound(otherVal);
                             newFieldValues.put(otherFieldAccess, newVal);
                         } else {
-                            // remove information completely
+                            removedFields.add(otherFieldAccess); // remove information completely
                         }
                         continue;
                     }
                 }
             }
             // information is save to be carried over
-            newFieldValues.put(otherFieldAccess, otherVal);
         }
-        fieldValues = newFieldValues;
+        removeAll(fieldValues, removedFields);
+        fieldValues.putAll(newFieldValues);
 
-        Map<FlowExpressions.ArrayAccess, V> newArrayValues = new HashMap<>();
-        for (Entry<ArrayAccess, V> e : arrayValues.entrySet()) {
-            FlowExpressions.ArrayAccess otherArrayAccess = e.getKey();
-            V otherVal = e.getValue();
+        List<FlowExpressions.ArrayAccess> removedArrays = new ArrayList<>();
+        for (FlowExpressions.ArrayAccess otherArrayAccess : arrayValues.keySet()) {
             if (otherArrayAccess.containsModifiableAliasOf(this, fieldAccess)) {
                 // remove information completely
-                continue;
+                removedArrays.add(otherArrayAccess);
             }
-            newArrayValues.put(otherArrayAccess, otherVal);
         }
-        arrayValues = newArrayValues;
+        removeAll(arrayValues, removedArrays);
 
         // case 3:
-        methodValues = new HashMap<>();
+        methodValues.clear();
     }
 
     /**
@@ -581,42 +592,35 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
      */
     protected void removeConflicting(FlowExpressions.ArrayAccess arrayAccess,
             /*@Nullable*/ V val) {
-        Map<FlowExpressions.ArrayAccess, V> newArrayValues = new HashMap<>();
-        for (Entry<FlowExpressions.ArrayAccess, V> e : arrayValues.entrySet()) {
-            FlowExpressions.ArrayAccess otherArrayAccess = e.getKey();
-            V otherVal = e.getValue();
+        List<FlowExpressions.ArrayAccess> removedArrays = new ArrayList<>();
+        for (FlowExpressions.ArrayAccess otherArrayAccess : arrayValues.keySet()) {
             // case 1:
             if (otherArrayAccess.containsModifiableAliasOf(this, arrayAccess)) {
-                continue; // remove information completely
-            }
-            if (canAlias(arrayAccess.getReceiver(),
+                removedArrays.add(otherArrayAccess); // remove information completely
+            } else if (canAlias(arrayAccess.getReceiver(),
                     otherArrayAccess.getReceiver())) {
                 // TODO: one could be less strict here, and only raise the
                 // abstract value
                 // for all array expressions with potentially aliasing receivers
-                continue; // remove information completely
+                removedArrays.add(otherArrayAccess); // remove information completely
             }
-            // information is save to be carried over
-            newArrayValues.put(otherArrayAccess, otherVal);
+            // otherwise, information is save to be carried over
         }
-        arrayValues = newArrayValues;
+        removeAll(arrayValues, removedArrays);
 
         // case 2:
-        Map<FlowExpressions.FieldAccess, V> newFieldValues = new HashMap<>();
-        for (Entry<FieldAccess, V> e : fieldValues.entrySet()) {
-            FlowExpressions.FieldAccess otherFieldAccess = e.getKey();
-            V otherVal = e.getValue();
+        List<FlowExpressions.FieldAccess> removedFields = new ArrayList<>();
+        for (FlowExpressions.FieldAccess otherFieldAccess : fieldValues.keySet()) {
             Receiver receiver = otherFieldAccess.getReceiver();
             if (receiver.containsModifiableAliasOf(this, arrayAccess) && receiver.containsOfClass(ArrayAccess.class)) {
                 // remove information completely
-                continue;
+                removedFields.add(otherFieldAccess);
             }
-            newFieldValues.put(otherFieldAccess, otherVal);
         }
-        fieldValues = newFieldValues;
+        removeAll(fieldValues, removedFields);
 
         // case 3:
-        methodValues = new HashMap<>();
+        methodValues.clear();
     }
 
     /**
@@ -635,40 +639,44 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
      * </ol>
      */
     protected void removeConflicting(LocalVariable var) {
-        Map<FlowExpressions.FieldAccess, V> newFieldValues = new HashMap<>();
-        for (Entry<FlowExpressions.FieldAccess, V> e : fieldValues.entrySet()) {
-            FlowExpressions.FieldAccess otherFieldAccess = e.getKey();
+        List<FlowExpressions.FieldAccess> removedFields = new ArrayList<>();
+        for (FlowExpressions.FieldAccess otherFieldAccess : fieldValues.keySet()) {
             // case 1:
             if (otherFieldAccess.containsSyntacticEqualReceiver(var)) {
-                continue;
+                removedFields.add(otherFieldAccess);
             }
-            newFieldValues.put(otherFieldAccess, e.getValue());
         }
-        fieldValues = newFieldValues;
+        removeAll(fieldValues, removedFields);
 
-        Map<FlowExpressions.ArrayAccess, V> newArrayValues = new HashMap<>();
-        for (Entry<FlowExpressions.ArrayAccess, V> e : arrayValues.entrySet()) {
-            FlowExpressions.ArrayAccess otherArrayAccess = e.getKey();
+        List<FlowExpressions.ArrayAccess> removedArrays = new ArrayList<>();
+        for (FlowExpressions.ArrayAccess otherArrayAccess : arrayValues.keySet()) {
             // case 2:
             if (otherArrayAccess.containsSyntacticEqualReceiver(var)) {
-                continue;
+                removedArrays.add(otherArrayAccess);
             }
-            newArrayValues.put(otherArrayAccess, e.getValue());
         }
-        arrayValues = newArrayValues;
+        removeAll(arrayValues, removedArrays);
 
-        Map<FlowExpressions.PureMethodCall, V> newMethodValues = new HashMap<>();
-        for (Entry<FlowExpressions.PureMethodCall, V> e : methodValues
-                .entrySet()) {
-            FlowExpressions.PureMethodCall otherMethodAccess = e.getKey();
+        List<FlowExpressions.PureMethodCall> removedMethods = new ArrayList<>();
+        for (FlowExpressions.PureMethodCall otherMethodAccess : methodValues.keySet()) {
             // case 3:
             if (otherMethodAccess.containsSyntacticEqualReceiver(var)
                     || otherMethodAccess.containsSyntacticEqualParameter(var)) {
-                continue;
+                removedMethods.add(otherMethodAccess);
             }
-            newMethodValues.put(otherMethodAccess, e.getValue());
         }
-        methodValues = newMethodValues;
+        removeAll(methodValues, removedMethods);
+    }
+
+    /**
+     * Remove all {@code keys} from {@code map}.  The keys are collected
+     * first, such that maps whose contents are shared with other stores are
+     * only copied if information actually has to be removed.
+     */
+    private static <K> void removeAll(Map<K, ?> map, List<K> keys) {
+        for (K key : keys) {
+            map.remove(key);
+        }
     }
 
     /**
@@ -712,66 +720,43 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
     public S leastUpperBound(S other) {
         S newStore = analysis.createEmptyStore(sequentialSemantics);
 
-        for (Entry<Element, V> e : other.localVariableValues.entrySet()) {
-            // local variables that are only part of one store, but not the
-            // other are discarded, as one of store implicitly contains 'top'
-            // for that variable.
-            Element el = e.getKey();
-            if (localVariableValues.containsKey(el)) {
-                V otherVal = e.getValue();
-                V thisVal = localVariableValues.get(el);
-                V mergedVal = thisVal.leastUpperBound(otherVal);
-                if (mergedVal != null) {
-                    newStore.localVariableValues.put(el, mergedVal);
-                }
-            }
-        }
-        for (Entry<FlowExpressions.FieldAccess, V> e : other.fieldValues
-                .entrySet()) {
-            // information about fields that are only part of one store, but not
-            // the other are discarded, as one store implicitly contains 'top'
-            // for that field.
-            FlowExpressions.FieldAccess el = e.getKey();
-            if (fieldValues.containsKey(el)) {
-                V otherVal = e.getValue();
-                V thisVal = fieldValues.get(el);
-                V mergedVal = thisVal.leastUpperBound(otherVal);
-                if (mergedVal != null) {
-                    newStore.fieldValues.put(el, mergedVal);
-                }
-            }
-        }
-        for (Entry<FlowExpressions.ArrayAccess, V> e : other.arrayValues
-                .entrySet()) {
-            // information about arrays that are only part of one store, but not
-            // the other are discarded, as one store implicitly contains 'top'
-            // for that array access.
-            FlowExpressions.ArrayAccess el = e.getKey();
-            if (arrayValues.containsKey(el)) {
-                V otherVal = e.getValue();
-                V thisVal = arrayValues.get(el);
-                V mergedVal = thisVal.leastUpperBound(otherVal);
-                if (mergedVal != null) {
-                    newStore.arrayValues.put(el, mergedVal);
-                }
-            }
-        }
-        for (Entry<PureMethodCall, V> e : other.methodValues.entrySet()) {
-            // information about methods that are only part of one store, but
-            // not the other are discarded, as one store implicitly contains
-            // 'top' for that field.
-            FlowExpressions.PureMethodCall el = e.getKey();
-            if (methodValues.containsKey(el)) {
+        // Information that is only part of one store, but not the other, is
+        // discarded, as one store implicitly contains 'top' for it.
+        leastUpperBound(localVariableValues, other.localVariableValues,
+                newStore.localVariableValues);
+        leastUpperBound(fieldValues, other.fieldValues, newStore.fieldValues);
+        leastUpperBound(arrayValues, other.arrayValues, newStore.arrayValues);
+        leastUpperBound(methodValues, other.methodValues, newStore.methodValues);
+
+        return newStore;
+    }
+
+    /**
+     * Store the pointwise least upper bound of {@code map} and
+     * {@code otherMap} in {@code result}.  Keys that are only part of one
+     * of the maps are discarded.
+     *
+     * <p>
+     *
+     * The least upper bound of two values is computed even if the values,
+     * or the maps, are the same: it is not idempotent for every kind of
+     * value, and the analysis only reaches a fixed point with the values it
+     * computes.
+     */
+    private static <K, V extends CFAbstractValue<V>> void leastUpperBound(
+            CopyOnWriteMap<K, V> map, CopyOnWriteMap<K, V> otherMap,
+            CopyOnWriteMap<K, V> result) {
+        for (Entry<K, V> e : otherMap.entrySet()) {
+            K key = e.getKey();
+            V thisVal = map.get(key);
+            if (thisVal != null) {
                 V otherVal = e.getValue();
-                V thisVal = methodValues.get(el);
                 V mergedVal = thisVal.leastUpperBound(otherVal);
                 if (mergedVal != null) {
-                    newStore.methodValues.put(el, mergedVal);
+                    result.put(key, mergedVal);
                 }
             }
         }
-
-        return newStore;
     }
 
     /**
@@ -782,33 +767,26 @@ public abstract class CFAbstractStore<V extends CFAbstractValue<V>, S extends CF
      * predicate.
      */
     protected boolean supersetOf(CFAbstractStore<V, S> other) {
-        for (Entry<Element, V> e : other.localVariableValues.entrySet()) {
-            Element key = e.getKey();
-            if (!localVariableValues.containsKey(key)
-                    || !localVariableValues.get(key).equals(e.getValue())) {
-                return false;
-            }
-        }
-        for (Entry<FlowExpressions.FieldAccess, V> e : other.fieldValues
-                .entrySet()) {
-            FlowExpressions.FieldAccess key = e.getKey();
-            if (!fieldValues.containsKey(key)
-                    || !fieldValues.get(key).equals(e.getValue())) {
-                return false;
-            }
+        return supersetOf(localVariableValues, other.localVariableValues)
+                && supersetOf(fieldValues, other.fieldValues)
+                && supersetOf(arrayValues, other.arrayValues)
+                && supersetOf(methodValues, other.methodValues);
+    }
+
+    /**
+     * Returns true iff {@code map} contains all entries of {@code otherMap}.
+     */
+    private static <K, V> boolean supersetOf(CopyOnWriteMap<K, V> map,
+            CopyOnWriteMap<K, V> otherMap) {
+        if (map.sharesContentsWith(otherMap)) {
+            return true;
         }
-        for (Entry<FlowExpressions.ArrayAccess, V> e : other.arrayValues
-                .entrySet()) {
-            FlowExpressions.ArrayAccess key = e.getKey();
-            if (!arrayValues.containsKey(key)
-                    || !arrayValues.get(key).equals(e.getValue())) {
-                return false;
-            }
+        if (map.size() < otherMap.size()) {
+            return false;
         }
-        for (Entry<PureMethodCall, V> e : other.methodValues.entrySet()) {
-            FlowExpressions.PureMethodCall key = e.getKey();
-            if (!methodValues.containsKey(key)
-                    || !methodValues.get(key).equals(e.getValue())) {
+        for (Entry<K, V> e : otherMap.entrySet()) {
+            V thisVal = map.get(e.getKey());
+            if (thisVal == null || !thisVal.equals(e.getValue())) {
                 return false;
             }
         }
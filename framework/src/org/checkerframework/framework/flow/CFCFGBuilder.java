@@ -2,7 +2,9 @@ package org.checkerframework.framework.flow;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.Element;
@@ -15,6 +17,7 @@ import javax.lang.model.type.TypeMirror;
 
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.dataflow.cfg.CFGBuilder;
+import org.checkerframework.dataflow.cfg.CFGCache;
 import org.checkerframework.dataflow.cfg.ControlFlowGraph;
 import org.checkerframework.dataflow.cfg.UnderlyingAST;
 import org.checkerframework.dataflow.cfg.node.ArrayAccessNode;
@@ -68,6 +71,21 @@ public class CFCFGBuilder extends CFGBuilder {
     /** Type factory to provide types used during CFG building. */
     protected final AnnotatedTypeFactory factory;
 
+    /**
+     * Does the graph built by {@link #run} depend on the checker or its
+     * type factory?  Only other graphs can be shared with other checkers;
+     * see {@link CFGCache}.  The declaration annotations that affect the
+     * graph, i.e. {@code @TerminatesExecution}, are assumed to be the same
+     * for all checkers.
+     */
+    protected boolean checkerSpecific;
+
+    /**
+     * The trees created by {@link #run}, with the method or class that
+     * encloses each of them.
+     */
+    protected Map<Tree, Element> artificialTrees;
+
     public CFCFGBuilder(BaseTypeChecker checker, AnnotatedTypeFactory factory) {
         super(checker.hasOption("assumeAssertionsAreEnabled"),
               checker.hasOption("assumeAssertionsAreDisabled"));
@@ -86,6 +104,8 @@ public class CFCFGBuilder extends CFGBuilder {
             CompilationUnitTree root, ProcessingEnvironment env,
             UnderlyingAST underlyingAST) {
         declaredClasses = new LinkedList<>();
+        checkerSpecific = false;
+        artificialTrees = new IdentityHashMap<>();
         CFTreeBuilder builder = new CFTreeBuilder(env);
         PhaseOneResult phase1result = new CFCFGTranslationPhaseOne().process(
                 root, env, underlyingAST, exceptionalExitLabel, builder, factory);
@@ -96,6 +116,22 @@ public class CFCFGBuilder extends CFGBuilder {
         return phase3result;
     }
 
+    /**
+     * @return true if the graph built by the last call of {@link #run}
+     *         depends on the checker or its type factory
+     */
+    public boolean isCheckerSpecific() {
+        return checkerSpecific;
+    }
+
+    /**
+     * @return the trees created by the last call of {@link #run}, with the
+     *         method or class that encloses each of them
+     */
+    public Map<Tree, Element> getArtificialTrees() {
+        return artificialTrees;
+    }
+
     public class CFCFGTranslationPhaseOne extends CFGTranslationPhaseOne {
 
         @Override
@@ -103,6 +139,10 @@ public class CFCFGBuilder extends CFGBuilder {
             ExpressionTree detail = tree.getDetail();
             if (detail != null) {
                 String msg = detail.toString();
+                if (msg.contains("@AssumeAssertion(")) {
+                    // The result depends on the checker's warning keys.
+                    checkerSpecific = true;
+                }
                 Collection<String> warningKeys = checker.getSuppressWarningsKeys();
                 for (String warningKey : warningKeys) {
                     String key = "@AssumeAssertion(" + warningKey + ")";
@@ -122,20 +162,25 @@ public class CFCFGBuilder extends CFGBuilder {
             if (enclosingMethod != null) {
                 Element methodElement = TreeUtils
                     .elementFromDeclaration(enclosingMethod);
-                factory.setPathHack(tree, methodElement);
+                artificialTrees.put(tree, methodElement);
+                factory.addArtificialTree(tree, methodElement);
             } else {
                 ClassTree enclosingClass = TreeUtils
                     .enclosingClass(getCurrentPath());
                 if (enclosingClass != null) {
                     Element classElement = TreeUtils
                         .elementFromDeclaration(enclosingClass);
-                    factory.setPathHack(tree, classElement);
+                    artificialTrees.put(tree, classElement);
+                    factory.addArtificialTree(tree, classElement);
                 }
             }
         }
 
         @Override
         public Node visitEnhancedForLoop(EnhancedForLoopTree tree, Void p) {
+            // The types of the artificial variables are annotated types.
+            checkerSpecific = true;
+
             // see JLS 14.14.2
             Name parentLabel = getLabel(getCurrentPath());
 
@@ -12,6 +12,9 @@ import java.util.Set;
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.TypeElement;
 
+import org.checkerframework.dataflow.cfg.CFGCache;
+
+import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.util.TreePath;
 import com.sun.tools.javac.processing.JavacProcessingEnvironment;
@@ -32,7 +35,8 @@ import com.sun.tools.javac.util.Log;
  * <p>
  *
  * This class delegates {@code AbstractTypeProcessor} responsibilities to each
- * component checker.
+ * component checker.  The component checkers share the control flow graphs
+ * of the class they check; see {@link CFGCache}.
  * <p>
  *
  * Checker writers need to subclass this class and only override
@@ -96,6 +100,9 @@ public abstract class AggregateChecker extends SourceChecker {
     // Same functionality as the same field in SourceChecker
     int errsOnLastExit = 0;
 
+    // The total time in nanoseconds spent in each checker, for the "stats" option
+    private long[] checkerTimes;
+
     // AbstractTypeProcessor delegation
     @Override
     public final void typeProcess(TypeElement element, TreePath tree) {
@@ -113,10 +120,23 @@ public abstract class AggregateChecker extends SourceChecker {
             // error was already output. Just quit.
             return;
         }
-        for (SourceChecker checker : checkers) {
-            checker.errsOnLastExit = this.errsOnLastExit;
-            checker.typeProcess(element, tree);
-            this.errsOnLastExit = checker.errsOnLastExit;
+        if (checkerTimes == null) {
+            checkerTimes = new long[checkers.size()];
+        }
+        // The checkers share the control flow graphs of the class.
+        ClassTree classTree = (ClassTree) tree.getLeaf();
+        CFGCache.open(classTree);
+        try {
+            for (int i = 0; i < checkers.size(); i++) {
+                SourceChecker checker = checkers.get(i);
+                checker.errsOnLastExit = this.errsOnLastExit;
+                long start = System.nanoTime();
+                checker.typeProcess(element, tree);
+                checkerTimes[i] += System.nanoTime() - start;
+                this.errsOnLastExit = checker.errsOnLastExit;
+            }
+        } finally {
+            CFGCache.close(classTree);
         }
     }
 
@@ -125,6 +145,13 @@ public abstract class AggregateChecker extends SourceChecker {
         for (SourceChecker checker : checkers) {
             checker.typeProcessingOver();
         }
+        if (hasOption("stats") && checkerTimes != null) {
+            System.out.println(this.getClass().getSimpleName() + " time per checker:");
+            for (int i = 0; i < checkers.size(); i++) {
+                System.out.printf("  %s: %.1f ms%n",
+                        checkers.get(i).getClass().getSimpleName(), checkerTimes[i] / 1e6);
+            }
+        }
     }
 
     @Override
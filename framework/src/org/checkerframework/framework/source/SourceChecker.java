@@ -38,7 +38,9 @@ import org.checkerframework.common.basetype.BaseAnnotatedTypeFactory;
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.framework.qual.TypeQualifiers;
 import org.checkerframework.framework.type.AnnotatedTypeFactory;
+import org.checkerframework.framework.util.CheckerProfiler;
 import org.checkerframework.javacutil.AbstractTypeProcessor;
+import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.ErrorHandler;
 import org.checkerframework.javacutil.ErrorReporter;
@@ -181,6 +183,35 @@ import com.sun.tools.javac.util.Log;
     // org.checkerframework.framework.stub.StubParser.warnIfNotFound
     "stubWarnIfNotFound",
 
+    ///
+    /// Performance tuning
+    ///
+
+    // The maximal sizes of the annotated type caches, either for all
+    // caches or per cache name
+    // org.checkerframework.framework.type.AnnotatedTypeFactory.getCacheSize(String)
+    "atfCacheSize",
+
+    // The worklist implementation of the dataflow analysis,
+    // "bitset" (the default) or "priorityqueue"
+    // org.checkerframework.framework.flow.CFAbstractAnalysis.createWorklist(ControlFlowGraph)
+    "flowWorklist",
+
+    // Do not precompute the subtype, lub, and glb tables of qualifier
+    // hierarchies; for debugging and benchmarking
+    // org.checkerframework.framework.util.MultiGraphQualifierHierarchy.buildTables()
+    "noQualifierTables",
+
+    // Resolve the declarations of a type in the stub files only when the
+    // type or one of its members is used
+    // org.checkerframework.framework.stub.LazyStubTypes
+    "lazyStubs",
+
+    // Analyze a method with dataflow only when the results of the analysis
+    // are first needed for a tree in it
+    // org.checkerframework.framework.type.GenericAnnotatedTypeFactory.analyzePendingMethods(Tree)
+    "lazyFlow",
+
     ///
     /// Debugging
     ///
@@ -238,6 +269,17 @@ import com.sun.tools.javac.util.Log;
     // org.checkerframework.framework.source.SourceChecker.shutdownHook()
     "resourceStats",
 
+    // Whether to output statistics about the work done for each
+    // compilation unit, e.g. about the annotated type caches
+    // org.checkerframework.framework.type.AnnotatedTypeFactory.printStats()
+    "stats",
+
+    // Write the wall time and allocation of each compilation unit, class,
+    // analyzed method, and phase to the given file, as JSON or, if the
+    // file name ends with ".csv", as CSV
+    // org.checkerframework.framework.util.CheckerProfiler
+    "profile",
+
 })
 public abstract class SourceChecker
     extends AbstractTypeProcessor implements ErrorHandler {
@@ -311,6 +353,29 @@ public abstract class SourceChecker
      */
     private Pattern onlyDefsPattern;
 
+    /** The default of the skip patterns, which matches no class. */
+    private static final String SKIP_PATTERN_DEFAULT = "\\]'\"\\]";
+
+    /** The default of the only patterns, which matches every class. */
+    private static final String ONLY_PATTERN_DEFAULT = ".";
+
+    /**
+     * The decisions of {@link #shouldSkipUses(Element)}, by the enclosing
+     * class of the element.
+     */
+    private final Map<TypeElement, Boolean> skipUsesDecisions = new HashMap<TypeElement, Boolean>();
+
+    /** The decisions of {@link #shouldSkipDefs(ClassTree)}, by class. */
+    private final Map<TypeElement, Boolean> skipDefsDecisions = new HashMap<TypeElement, Boolean>();
+
+    /** The number of calls of shouldSkipUses and of those answered from skipUsesDecisions. */
+    private long skipUsesQueries = 0;
+    private long skipUsesHits = 0;
+
+    /** The number of calls of shouldSkipDefs and of those answered from skipDefsDecisions. */
+    private long skipDefsQueries = 0;
+    private long skipDefsHits = 0;
+
     /** The supported lint options */
     private Set<String> supportedLints;
 
@@ -394,12 +459,12 @@ public abstract class SourceChecker
         // Default is an illegal Java identifier substring
         // so that it won't match anything.
         // Note that AnnotatedType's toString output format contains characters such as "():{}".
-        return getPattern(patternName, options, "\\]'\"\\]");
+        return getPattern(patternName, options, SKIP_PATTERN_DEFAULT);
     }
 
     private Pattern getOnlyPattern(String patternName, Map<String, String> options) {
         // default matches everything
-        return getPattern(patternName, options, ".");
+        return getPattern(patternName, options, ONLY_PATTERN_DEFAULT);
     }
 
     private Pattern getPattern(String patternName, Map<String, String> options, String defaultPattern) {
@@ -598,6 +663,9 @@ public abstract class SourceChecker
     public void typeProcessingStart() {
         try {
             super.typeProcessingStart();
+            // An earlier compilation on this thread may have stopped
+            // before typeProcessingOver because of errors.
+            AnnotationUtils.clearInternedAnnotations();
             initChecker();
             if (this.messager == null) {
                 messager = processingEnv.getMessager();
@@ -661,6 +729,60 @@ public abstract class SourceChecker
         }
     }
 
+    /**
+     * Outputs the statistics of the skipUses and skipDefs decisions, if the
+     * "stats" option is provided.  Also empties the table of this
+     * compilation's canonical annotations in {@link AnnotationUtils}.
+     */
+    @Override
+    public void typeProcessingOver() {
+        if (hasOption("stats")) {
+            printSkipStats();
+        }
+        if (profiler != null && profiler.isEnabled()) {
+            try {
+                profiler.write();
+            } catch (IOException e) {
+                messager.printMessage(Kind.WARNING, "Could not write the profile: " + e.getMessage());
+            }
+        }
+        AnnotationUtils.clearInternedAnnotations();
+        super.typeProcessingOver();
+    }
+
+    /** The profiler of the "profile" option; see {@link #getProfiler}. */
+    private volatile CheckerProfiler profiler;
+
+    /**
+     * @return the profiler that records the time spent checking, which
+     *         records nothing unless the "profile" option is given
+     */
+    public synchronized CheckerProfiler getProfiler() {
+        if (profiler == null) {
+            String file = null;
+            if (hasOption("profile")) {
+                file = getOption("profile");
+                if (file == null) {
+                    file = "";
+                }
+            }
+            profiler = CheckerProfiler.create(getClass().getSimpleName(), file, processingEnv);
+        }
+        return profiler;
+    }
+
+    /**
+     * Prints how often the skipUses and skipDefs decisions were answered
+     * from their caches.  Nothing is counted if no pattern is given.
+     */
+    protected void printSkipStats() {
+        System.out.println(getClass().getSimpleName() + " skip decisions:");
+        System.out.println("  skipUses: " + skipUsesHits + " of " + skipUsesQueries +
+                " cached, " + skipUsesDecisions.size() + " classes");
+        System.out.println("  skipDefs: " + skipDefsHits + " of " + skipDefsQueries +
+                " cached, " + skipDefsDecisions.size() + " classes");
+    }
+
     /** Print resource usage statistics */
     protected void printStats() {
         List<MemoryPoolMXBean> memoryPools = ManagementFactory.getMemoryPoolMXBeans();
@@ -718,7 +840,7 @@ public abstract class SourceChecker
         currentPath = p;
         // Visit the attributed tree.
         try {
-            visitor.visit(currentRoot, p, null);
+            visitProfiled(visitor, currentRoot, p);
         } catch (CheckerError ce) {
             logCheckerError(ce);
         } catch (Throwable t) {
@@ -730,6 +852,27 @@ public abstract class SourceChecker
         }
     }
 
+    /**
+     * Visit the class at {@code path} with {@code visitor}, recording the
+     * time for the class and its compilation unit if the "profile" option
+     * is given.
+     */
+    private void visitProfiled(SourceVisitor<?, ?> visitor, CompilationUnitTree root, TreePath path) {
+        CheckerProfiler profiler = getProfiler();
+        CheckerProfiler.Measurement start = profiler.start();
+        profiler.enterPhase(CheckerProfiler.VISITOR);
+        try {
+            visitor.visit(root, path, null);
+        } finally {
+            profiler.exitPhase();
+            if (start != null) {
+                Element element = InternalUtils.symbol(path.getLeaf());
+                profiler.stop(start, CheckerProfiler.CLASS, String.valueOf(element));
+                profiler.stop(start, CheckerProfiler.COMPILATION_UNIT, root.getSourceFile().getName());
+            }
+        }
+    }
+
     private CheckerError wrapThrowableAsCheckerError(String where, Throwable t, /*@Nullable*/ TreePath p) {
         return new CheckerError(
            where + ": unexpected Throwable (" +
@@ -1465,9 +1608,21 @@ public abstract class SourceChecker
     public final boolean shouldSkipUses(Element element) {
         if (element == null)
             return false;
+        initUsesPatterns();
+        if (isDefault(skipUsesPattern, onlyUsesPattern)) {
+            return false;
+        }
         TypeElement typeElement = ElementUtils.enclosingClass(element);
+        skipUsesQueries++;
+        Boolean skip = skipUsesDecisions.get(typeElement);
+        if (skip != null) {
+            skipUsesHits++;
+            return skip;
+        }
         String name = typeElement.toString();
-        return shouldSkipUses(name);
+        skip = shouldSkipUses(name);
+        skipUsesDecisions.put(typeElement, skip);
+        return skip;
     }
 
     /**
@@ -1492,14 +1647,30 @@ public abstract class SourceChecker
         //     System.out.println("  " + stea[i]);
         // }
         // System.out.println();
+        initUsesPatterns();
+        if (isDefault(skipUsesPattern, onlyUsesPattern)) {
+            return false;
+        }
+        return (skipUsesPattern.matcher(typeName).find()
+                || ! onlyUsesPattern.matcher(typeName).find());
+    }
+
+    private void initUsesPatterns() {
         if (skipUsesPattern == null) {
             skipUsesPattern = getSkipUsesPattern(getOptions());
         }
         if (onlyUsesPattern == null) {
             onlyUsesPattern = getOnlyUsesPattern(getOptions());
         }
-        return (skipUsesPattern.matcher(typeName).find()
-                || ! onlyUsesPattern.matcher(typeName).find());
+    }
+
+    /**
+     * @return true iff neither pattern was specified by the user, in which
+     *         case nothing is skipped
+     */
+    private static boolean isDefault(Pattern skipPattern, Pattern onlyPattern) {
+        return skipPattern.pattern().equals(SKIP_PATTERN_DEFAULT)
+                && onlyPattern.pattern().equals(ONLY_PATTERN_DEFAULT);
     }
 
     /**
@@ -1510,6 +1681,32 @@ public abstract class SourceChecker
      * @return true if checker should not test node
      */
     public final boolean shouldSkipDefs(ClassTree node) {
+        if (skipDefsPattern == null) {
+            skipDefsPattern = getSkipDefsPattern(getOptions());
+        }
+        if (onlyDefsPattern == null) {
+            onlyDefsPattern = getOnlyDefsPattern(getOptions());
+        }
+        if (isDefault(skipDefsPattern, onlyDefsPattern)) {
+            return false;
+        }
+
+        TypeElement typeElement = TreeUtils.elementFromDeclaration(node);
+        if (typeElement == null) {
+            return shouldSkipDefsUncached(node);
+        }
+        skipDefsQueries++;
+        Boolean skip = skipDefsDecisions.get(typeElement);
+        if (skip != null) {
+            skipDefsHits++;
+            return skip;
+        }
+        skip = shouldSkipDefsUncached(node);
+        skipDefsDecisions.put(typeElement, skip);
+        return skip;
+    }
+
+    private boolean shouldSkipDefsUncached(ClassTree node) {
         String qualifiedName = InternalUtils.typeOf(node).toString();
         // System.out.printf("shouldSkipDefs(%s) %s%nskipDefs %s%nonlyDefs %s%nresult %s%n%n",
         //                   node,
@@ -1518,13 +1715,6 @@ public abstract class SourceChecker
         //                   onlyDefsPattern.matcher(qualifiedName).find(),
         //                   (skipDefsPattern.matcher(qualifiedName).find()
         //                    || ! onlyDefsPattern.matcher(qualifiedName).find()));
-        if (skipDefsPattern == null) {
-            skipDefsPattern = getSkipDefsPattern(getOptions());
-        }
-        if (onlyDefsPattern == null) {
-            onlyDefsPattern = getOnlyDefsPattern(getOptions());
-        }
-
         return (skipDefsPattern.matcher(qualifiedName).find()
                 || ! onlyDefsPattern.matcher(qualifiedName).find());
     }
@@ -0,0 +1,116 @@
+package org.checkerframework.framework.stub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+
+import org.checkerframework.framework.type.AnnotatedTypeMirror;
+import org.checkerframework.stubparser.ast.CompilationUnit;
+import org.checkerframework.stubparser.ast.body.TypeDeclaration;
+
+/**
+ * The type declarations of stub files that have not been resolved yet,
+ * indexed by fully-qualified type name.
+ *
+ * <p>
+ *
+ * A type declaration is converted into annotated types and declaration
+ * annotations only when {@link #materialize} is called for its type, which
+ * the {@link org.checkerframework.framework.type.AnnotatedTypeFactory} does
+ * the first time it needs the type or one of its members.  Declarations of
+ * the same type in several stub files are resolved in the order in which the
+ * stub files were read.
+ *
+ * @see StubParser#parseLazily
+ */
+public class LazyStubTypes {
+
+    /** A type declaration in a stub file. */
+    private static class Declaration {
+        final StubParser parser;
+        final CompilationUnit cu;
+        final String packageName;
+        final TypeDeclaration typeDecl;
+
+        Declaration(StubParser parser, CompilationUnit cu, String packageName, TypeDeclaration typeDecl) {
+            this.parser = parser;
+            this.cu = cu;
+            this.packageName = packageName;
+            this.typeDecl = typeDecl;
+        }
+    }
+
+    /** The unresolved declarations, keyed by fully-qualified type name. */
+    private final Map<String, List<Declaration>> pending = new HashMap<String, List<Declaration>>();
+
+    /** The number of types that were indexed. */
+    private int indexed = 0;
+
+    /** The number of types that were materialized. */
+    private int materialized = 0;
+
+    /** Is a type being materialized right now? */
+    private boolean materializing = false;
+
+    /*package-private*/ void add(String typeName, StubParser parser, CompilationUnit cu,
+            String packageName, TypeDeclaration typeDecl) {
+        List<Declaration> decls = pending.get(typeName);
+        if (decls == null) {
+            decls = new ArrayList<Declaration>(1);
+            pending.put(typeName, decls);
+            indexed++;
+        }
+        decls.add(new Declaration(parser, cu, packageName, typeDecl));
+    }
+
+    /**
+     * Resolve the stub declarations of {@code type}, if any, and add the
+     * results to {@code atypes} and {@code declAnnos}.  Does nothing if the
+     * type has already been materialized.
+     *
+     * <p>
+     *
+     * Resolving a declaration looks up other types, whose stub declarations
+     * are not used, just like when all stub files are parsed eagerly.  While
+     * {@link #isMaterializing} returns true, callers should neither cache
+     * such types nor materialize other types.
+     */
+    public void materialize(TypeElement type, Map<Element, AnnotatedTypeMirror> atypes,
+            Map<String, Set<AnnotationMirror>> declAnnos) {
+        List<Declaration> decls = pending.remove(type.getQualifiedName().toString());
+        if (decls == null) {
+            return;
+        }
+        materialized++;
+        boolean wasMaterializing = materializing;
+        materializing = true;
+        try {
+            for (Declaration decl : decls) {
+                decl.parser.parseLazyType(decl.cu, decl.packageName, decl.typeDecl, atypes, declAnnos);
+            }
+        } finally {
+            materializing = wasMaterializing;
+        }
+    }
+
+    /** @return true if a type is being materialized right now */
+    public boolean isMaterializing() {
+        return materializing;
+    }
+
+    /** @return the number of types declared in the stub files */
+    public int getIndexedCount() {
+        return indexed;
+    }
+
+    /** @return the number of types that were materialized */
+    public int getMaterializedCount() {
+        return materialized;
+    }
+}
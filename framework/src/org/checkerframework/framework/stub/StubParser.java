@@ -298,6 +298,39 @@ public class StubParser {
             parse(cu, atypes, declAnnos);
     }
 
+    /**
+     * Like {@link #parse(Map, Map)}, but only indexes the type declarations
+     * of the stub file in {@code lazyTypes}.  A type declaration is
+     * resolved when {@link LazyStubTypes#materialize} is called for its type.
+     * Package annotations are read immediately.
+     */
+    public void parseLazily(LazyStubTypes lazyTypes, Map<String, Set<AnnotationMirror>> declAnnos) {
+        for (CompilationUnit cu : index.getCompilationUnits()) {
+            final String packageName;
+            if (cu.getPackage() == null) {
+                packageName = null;
+            } else {
+                packageName = cu.getPackage().getName().toString();
+                parsePackage(cu.getPackage(), null, declAnnos);
+            }
+            if (cu.getTypes() != null) {
+                for (TypeDeclaration typeDecl : cu.getTypes()) {
+                    lazyTypes.add(getTypeName(typeDecl, packageName), this, cu, packageName, typeDecl);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse a single type declaration of the stub file, which was indexed by
+     * {@link #parseLazily}.
+     */
+    /*package-private*/ void parseLazyType(CompilationUnit cu, String packageName, TypeDeclaration typeDecl,
+            Map<Element, AnnotatedTypeMirror> atypes, Map<String, Set<AnnotationMirror>> declAnnos) {
+        theCompilationUnit = cu;
+        parse(typeDecl, packageName, atypes, declAnnos);
+    }
+
     private CompilationUnit theCompilationUnit;
 
     private void parse(CompilationUnit cu, Map<Element, AnnotatedTypeMirror> atypes, Map<String, Set<AnnotationMirror>> declAnnos) {
@@ -330,7 +363,7 @@ public class StubParser {
     // That is a hack because the StubParser does not handle nested classes.
     private void parse(TypeDeclaration typeDecl, String packageName, Map<Element, AnnotatedTypeMirror> atypes, Map<String, Set<AnnotationMirror>> declAnnos) {
         // Fully-qualified name of the type being parsed
-        String typeName = (packageName == null ? "" : packageName + ".") + typeDecl.getName().replace('$', '.');
+        String typeName = getTypeName(typeDecl, packageName);
         TypeElement typeElt = elements.getTypeElement(typeName);
         // couldn't find type.  not in class path
         if (typeElt == null) {
@@ -362,6 +395,11 @@ public class StubParser {
         }
     }
 
+    /** @return the fully-qualified name of the type declared by {@code typeDecl} */
+    private static String getTypeName(TypeDeclaration typeDecl, String packageName) {
+        return (packageName == null ? "" : packageName + ".") + typeDecl.getName().replace('$', '.');
+    }
+
     private void parseType(ClassOrInterfaceDeclaration decl, TypeElement elt, Map<Element, AnnotatedTypeMirror> atypes, Map<String, Set<AnnotationMirror>> declAnnos) {
         annotateDecl(declAnnos, elt, decl.getAnnotations());
         AnnotatedDeclaredType type = atypeFactory.fromElement(elt);
@@ -141,6 +141,10 @@ public class CheckerParameterized extends Suite {
         for (int i= 0; i < parametersList.size(); i++)
             runners.add(new TestClassRunnerForParameters(getTestClass().getJavaClass(),
                     parametersList, i));
+        int threads = ParallelTestScheduler.getParallelism();
+        if (threads > 1) {
+            setScheduler(new ParallelTestScheduler(threads));
+        }
     }
 
     @Override
@@ -17,10 +17,8 @@ import java.util.List;
 
 import javax.annotation.processing.AbstractProcessor;
 import javax.tools.Diagnostic;
-import javax.tools.JavaCompiler;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
-import javax.tools.ToolProvider;
 
 import org.junit.Assert;
 
@@ -85,21 +83,24 @@ abstract public class CheckerTest {
         for (String s : files)
             fileStrings.add(checkerDir + File.separator + s);
 
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        StandardJavaFileManager fileManager
-            = compiler.getStandardFileManager(null, null, null);
+        StandardJavaFileManager fileManager = TestInput.getFileManager();
         Iterable<? extends JavaFileObject> tests
             = fileManager.getJavaFileObjectsFromStrings(fileStrings);
 
-        // files need to compile cleanly without any errors
-        TestRun pureCompilation = TestInput.compileAndCheck(checkerDir, tests, null, Collections.<String>emptyList());
-        if (!pureCompilation.getResult()) {
-            String message = "Java file is not valid Java code: " + fileStrings;
-            System.err.println(message);
-            for (Diagnostic<?> d : pureCompilation) {
-                System.err.println(d);
+        // files need to compile cleanly without any errors;
+        // files with the same contents compiled cleanly before need not be compiled again
+        String pureCompilationKey = TestInput.pureCompilationKey(checkerDir, fileStrings);
+        if (!TestInput.isPureCompilationCached(pureCompilationKey)) {
+            TestRun pureCompilation = TestInput.compileAndCheck(checkerDir, tests, null, Collections.<String>emptyList());
+            if (!pureCompilation.getResult()) {
+                String message = "Java file is not valid Java code: " + fileStrings;
+                System.err.println(message);
+                for (Diagnostic<?> d : pureCompilation) {
+                    System.err.println(d);
+                }
+                throw new IllegalArgumentException(message);
             }
-            throw new IllegalArgumentException(message);
+            TestInput.cachePureCompilation(pureCompilationKey);
         }
 
         return TestInput.compileAndCheck(checkerDir, tests, checkerName, checkerOptions);
@@ -109,9 +110,7 @@ abstract public class CheckerTest {
      * Compiles and returns a TestRun.
      */
     protected TestRun getTest(File... files) {
-        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        StandardJavaFileManager fileManager
-            = compiler.getStandardFileManager(null, null, null);
+        StandardJavaFileManager fileManager = TestInput.getFileManager();
         Iterable<? extends JavaFileObject> tests
             = fileManager.getJavaFileObjects(files);
 
@@ -137,9 +136,7 @@ abstract public class CheckerTest {
     }
 
     protected static void test(final String checkerName, final List<String> checkerOptions, File ... javaFiles) {
-        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-        StandardJavaFileManager fileManager
-                = compiler.getStandardFileManager(null, null, null);
+        StandardJavaFileManager fileManager = TestInput.getFileManager();
         Iterable<? extends JavaFileObject> tests
                 = fileManager.getJavaFileObjects(javaFiles);
 
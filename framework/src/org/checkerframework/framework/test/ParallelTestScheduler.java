@@ -0,0 +1,65 @@
+package org.checkerframework.framework.test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.runners.model.RunnerScheduler;
+
+/**
+ * Runs the test cases of a {@link CheckerParameterized} test class
+ * concurrently, on a bounded pool of worker threads.  Each worker compiles
+ * with its own file manager and output directory; see {@link TestInput}.
+ * The errors that utility classes detect during a compilation are reported
+ * to the checker of that compilation; see
+ * {@link org.checkerframework.javacutil.ErrorReporter}.
+ *
+ * <p>
+ *
+ * Parallel tests are enabled by the system property "tests.parallel",
+ * whose value is the number of worker threads; an empty value or "true"
+ * means one thread per processor.
+ */
+public class ParallelTestScheduler implements RunnerScheduler {
+
+    private final ExecutorService workers;
+
+    public ParallelTestScheduler(int threads) {
+        this.workers = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * @return the number of worker threads requested by the system property
+     *         "tests.parallel", or 0 if tests should not run in parallel
+     */
+    public static int getParallelism() {
+        String value = System.getProperty("tests.parallel");
+        if (value == null || value.equals("false")) {
+            return 0;
+        }
+        if (value.isEmpty() || value.equals("true")) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("tests.parallel must be a number of threads: " + value);
+        }
+    }
+
+    @Override
+    public void schedule(Runnable childStatement) {
+        workers.submit(childStatement);
+    }
+
+    @Override
+    public void finished() {
+        workers.shutdown();
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
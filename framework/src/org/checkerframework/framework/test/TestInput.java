@@ -1,10 +1,20 @@
 package org.checkerframework.framework.test;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.tools.DiagnosticCollector;
 import javax.tools.JavaCompiler;
@@ -28,47 +38,227 @@ public class TestInput {
             "tests" + File.separator + "build" + File.separator + "testclasses");
     static { ensureExistance(OUTDIR); }
 
+    /**
+     * The file manager of each thread.  A file manager caches the archives
+     * on the classpath, so it is shared by all compilations of a thread.
+     */
+    private static final ThreadLocal<StandardJavaFileManager> fileManagers =
+        new ThreadLocal<StandardJavaFileManager>() {
+            @Override
+            protected StandardJavaFileManager initialValue() {
+                return ToolProvider.getSystemJavaCompiler().getStandardFileManager(null, null, null);
+            }
+        };
+
+    /** The number of output directories of worker threads. */
+    private static final AtomicInteger workerDirs = new AtomicInteger();
+
+    /**
+     * The output directory of each thread.  When tests run in parallel,
+     * each worker thread writes its class files to its own directory.
+     */
+    private static final ThreadLocal<String> outputDirs =
+        new ThreadLocal<String>() {
+            @Override
+            protected String initialValue() {
+                if (ParallelTestScheduler.getParallelism() <= 1) {
+                    return OUTDIR;
+                }
+                String dir = OUTDIR + File.separator + "worker" + workerDirs.incrementAndGet();
+                ensureExistance(dir);
+                return dir;
+            }
+        };
+
+    /**
+     * The directory in which the keys of pure compilations that succeeded
+     * are kept; see {@link #isPureCompilationCached}.
+     */
+    private static final String PURE_COMPILATION_CACHE = OUTDIR + File.separator + "pure-compilation-cache";
+
+    /**
+     * The fingerprints of source paths and classpaths, which do not change
+     * while the tests run; see {@link #fingerprint}.
+     */
+    private static final ConcurrentMap<String, String> fingerprints =
+        new ConcurrentHashMap<String, String>();
+
     private TestInput(String checkerDir, Iterable<? extends JavaFileObject> files,
                      Iterable<String> processors, List<String> options) {
 
         this.compiler = ToolProvider.getSystemJavaCompiler();
-        this.fileManager = compiler.getStandardFileManager(null, null, null);
+        this.fileManager = getFileManager();
 
         this.files = files;
         this.processors = processors;
-        this.options = new LinkedList<String>();
+        this.options = compilerOptions(checkerDir, outputDirs.get(), options);
+    }
+
+    /**
+     * @return the options of a compilation with the source path
+     *         {@code checkerDir}, which writes its class files to
+     *         {@code outputDir}, followed by {@code options}
+     */
+    private static List<String> compilerOptions(String checkerDir, String outputDir, List<String> options) {
+        List<String> result = new LinkedList<String>();
 
         String classpath = System.getProperty("tests.classpath",
                 "tests" + File.separator + "build");
         String globalclasspath = System.getProperty("java.class.path", "");
 
-        this.options.add("-Xmaxerrs");
-        this.options.add("9999");
-        this.options.add("-g");
+        result.add("-Xmaxerrs");
+        result.add("9999");
+        result.add("-g");
         // Always output warnings for unchecked constructs
-        this.options.add("-Xlint:unchecked");
+        result.add("-Xlint:unchecked");
         // Use short javac diagnostics
-        this.options.add("-XDrawDiagnostics");
+        result.add("-XDrawDiagnostics");
 
         // Pass the source path to allow test files that depend
         // on each other.
         if (checkerDir != null && !checkerDir.isEmpty()) {
-            this.options.add("-sourcepath");
-            this.options.add(checkerDir);
+            result.add("-sourcepath");
+            result.add(checkerDir);
         }
 
-        this.options.add("-implicit:class");
+        result.add("-implicit:class");
 
-        this.options.add("-d");
-        this.options.add(OUTDIR);
+        result.add("-d");
+        result.add(outputDir);
 
-        this.options.add("-classpath");
-        this.options.add("build" + File.pathSeparator +
+        result.add("-classpath");
+        result.add("build" + File.pathSeparator +
                 "junit.jar" + File.pathSeparator +
                 classpath + File.pathSeparator +
                 globalclasspath);
 
-        this.options.addAll(options);
+        result.addAll(options);
+        return result;
+    }
+
+    /**
+     * @return the file manager of the current thread, which must not be closed
+     */
+    static StandardJavaFileManager getFileManager() {
+        return fileManagers.get();
+    }
+
+    /**
+     * @return the key of the pure compilation of {@code files}: a hash of
+     *         the Java version, the compiler options, the files on the
+     *         source path and the classpath, and the names and contents of
+     *         {@code files}, or null if a file cannot be read or pure
+     *         compilations should not be cached, because the system property
+     *         "tests.pureCompilationCache" is false
+     */
+    static String pureCompilationKey(String checkerDir, List<String> files) {
+        if ("false".equals(System.getProperty("tests.pureCompilationCache"))) {
+            return null;
+        }
+        // The output directory of the worker does not matter.
+        List<String> options = compilerOptions(checkerDir, OUTDIR, Collections.<String>emptyList());
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            update(digest, System.getProperty("java.version", ""));
+            String previous = null;
+            for (String option : options) {
+                update(digest, option);
+                if ("-sourcepath".equals(previous) || "-classpath".equals(previous)) {
+                    update(digest, fingerprint(option));
+                }
+                previous = option;
+            }
+            byte[] buffer = new byte[8192];
+            for (String file : files) {
+                update(digest, file);
+                InputStream in = new FileInputStream(file);
+                try {
+                    int read;
+                    while ((read = in.read(buffer)) != -1) {
+                        digest.update(buffer, 0, read);
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            return toHex(digest.digest());
+        } catch (IOException e) {
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a hash of the names, sizes and modification times of the
+     *         files in {@code path}, a list of files and directories,
+     *         except those in the output directory
+     */
+    private static String fingerprint(String path) throws NoSuchAlgorithmException {
+        String fingerprint = fingerprints.get(path);
+        if (fingerprint == null) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            File excluded = new File(OUTDIR).getAbsoluteFile();
+            for (String entry : path.split(File.pathSeparator)) {
+                if (!entry.isEmpty()) {
+                    fingerprint(new File(entry).getAbsoluteFile(), excluded, digest);
+                }
+            }
+            fingerprint = toHex(digest.digest());
+            fingerprints.putIfAbsent(path, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    private static void fingerprint(File file, File excluded, MessageDigest digest) {
+        if (file.equals(excluded)) {
+            return;
+        }
+        update(digest, file.getPath());
+        File[] children = file.listFiles();
+        if (children != null) {
+            Arrays.sort(children);
+            for (File child : children) {
+                fingerprint(child, excluded, digest);
+            }
+        } else if (file.exists()) {
+            update(digest, file.length() + " " + file.lastModified());
+        }
+    }
+
+    private static void update(MessageDigest digest, String text) {
+        digest.update((text + "\n").getBytes(Charset.forName("UTF-8")));
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return true if a pure compilation with the given key succeeded
+     *         before, in this or an earlier run of the tests
+     */
+    static boolean isPureCompilationCached(String key) {
+        return key != null && new File(PURE_COMPILATION_CACHE, key).exists();
+    }
+
+    /**
+     * Record that the pure compilation with the given key succeeded.
+     */
+    static void cachePureCompilation(String key) {
+        if (key == null) {
+            return;
+        }
+        ensureExistance(PURE_COMPILATION_CACHE);
+        try {
+            new File(PURE_COMPILATION_CACHE, key).createNewFile();
+        } catch (IOException e) {
+            // The compilation is simply repeated next time.
+        }
     }
 
     private static void ensureExistance(String path) {
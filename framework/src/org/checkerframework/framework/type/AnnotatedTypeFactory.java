@@ -14,7 +14,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -38,6 +37,7 @@ import javax.lang.model.util.Types;
 import javax.tools.Diagnostic.Kind;
 
 import org.checkerframework.common.basetype.BaseTypeChecker;
+import org.checkerframework.dataflow.analysis.FlowExpressions.Receiver;
 import org.checkerframework.dataflow.qual.SideEffectFree;
 import org.checkerframework.framework.qual.FromByteCode;
 import org.checkerframework.framework.qual.FromStubFile;
@@ -46,6 +46,7 @@ import org.checkerframework.framework.qual.StubFiles;
 import org.checkerframework.framework.qual.SubtypeOf;
 import org.checkerframework.framework.qual.TypeQualifiers;
 import org.checkerframework.framework.source.SourceChecker;
+import org.checkerframework.framework.stub.LazyStubTypes;
 import org.checkerframework.framework.stub.StubParser;
 import org.checkerframework.framework.stub.StubResource;
 import org.checkerframework.framework.stub.StubUtil;
@@ -57,15 +58,20 @@ import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedTypeVari
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedWildcardType;
 import org.checkerframework.framework.type.visitor.AnnotatedTypeScanner;
 import org.checkerframework.framework.util.AnnotatedTypes;
+import org.checkerframework.framework.util.CheckerProfiler;
+import org.checkerframework.framework.util.FlowExpressionParseUtil;
 import org.checkerframework.framework.util.GraphQualifierHierarchy;
+import org.checkerframework.framework.util.LRUCache;
 import org.checkerframework.framework.util.MultiGraphQualifierHierarchy;
 import org.checkerframework.framework.util.MultiGraphQualifierHierarchy.MultiGraphFactory;
+import org.checkerframework.framework.util.OverrideIndex;
 import org.checkerframework.javacutil.AnnotationProvider;
 import org.checkerframework.javacutil.AnnotationUtils;
 import org.checkerframework.javacutil.ElementUtils;
 import org.checkerframework.javacutil.ErrorReporter;
 import org.checkerframework.javacutil.InternalUtils;
 import org.checkerframework.javacutil.Pair;
+import org.checkerframework.javacutil.TreePathIndex;
 import org.checkerframework.javacutil.TreeUtils;
 import org.checkerframework.javacutil.trees.DetachedVarSymbol;
 
@@ -161,11 +167,21 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
     // Not final, because it is assigned in postInit().
     private Map<String, Set<AnnotationMirror>> indexDeclAnnos;
 
+    /**
+     * The stub type declarations that have not been added to
+     * {@link #indexTypes} and {@link #indexDeclAnnos} yet, if the
+     * "lazyStubs" option is provided; null otherwise.
+     */
+    private LazyStubTypes lazyStubTypes;
+
     /**
      * The checker to use for option handling and resource management.
      */
     protected final BaseTypeChecker checker;
 
+    /** Records the time spent in the phases of checking; see the "profile" option. */
+    protected final CheckerProfiler profiler;
+
     /**
      * Map from class name (canonical name) of an annotation, to the
      * annotation in the Checker Framework that will be used in its place.
@@ -208,11 +224,21 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         this.processingEnv = checker.getProcessingEnvironment();
         // this.root = root;
         this.checker = checker;
+        this.profiler = checker.getProfiler();
         this.trees = Trees.instance(processingEnv);
         this.elements = processingEnv.getElementUtils();
         this.types = processingEnv.getTypeUtils();
         this.visitorState = new VisitorState();
 
+        this.treeCache = createCache("treeCache", TYPE_WEIGHER);
+        this.fromTreeCache = createCache("fromTreeCache", TYPE_WEIGHER);
+        this.elementCache = createCache("elementCache", TYPE_WEIGHER);
+        this.elementToTreeCache = createCache("elementToTreeCache", UNIT_WEIGHER);
+        this.flowExpressionCache = createCache("flowExpressionCache", UNIT_WEIGHER);
+        this.overrideIndex = new OverrideIndex(types,
+                createCache("declaredMethodsCache", OverrideIndex.WEIGHER),
+                createCache("inheritedMethodsCache", OverrideIndex.WEIGHER));
+
         this.supportedQuals = createSupportedTypeQualifiers();
 
         this.fromByteCode = AnnotationUtils.fromClass(elements, FromByteCode.class);
@@ -237,7 +263,12 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
                 AnnotationUtils.fromClass(elements, org.checkerframework.dataflow.qual.Pure.class));
 
         if (this.getClass().equals(AnnotatedTypeFactory.class)) {
-            this.buildIndexTypes();
+            profiler.enterPhase(CheckerProfiler.STUBS);
+            try {
+                this.buildIndexTypes();
+            } finally {
+                profiler.exitPhase();
+            }
         }
     }
 
@@ -245,9 +276,16 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
     // Set the CompilationUnitTree that should be used.
     // What's a better name? Maybe "reset" or "start"?
     public void setRoot(/*@Nullable*/ CompilationUnitTree root) {
+        if (this.root != null && this.root != root &&
+                checker.hasOption("stats")) {
+            printStats();
+        }
+        if (this.root != root) {
+            treePathIndex = null;
+        }
         this.root = root;
         // There is no need to clear the following caches, they
-        // are all limited by CACHE_SIZE.
+        // are all limited in size, see createCache.
         /*
         treeCache.clear();
         fromTreeCache.clear();
@@ -455,22 +493,181 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
     protected static boolean SHOULD_READ_CACHE = true;
     public boolean shouldReadCache = SHOULD_READ_CACHE;
 
-    /** Size of LRU cache. */
+    /**
+     * Default maximal weight of each cache; see {@link #createCache}.
+     * Can be changed with the "atfCacheSize" option.
+     */
     private final static int CACHE_SIZE = 300;
 
     /** Mapping from a Tree to its annotated type; implicits have been applied. */
-    private final Map<Tree, AnnotatedTypeMirror> treeCache = createLRUCache(CACHE_SIZE);
+    private final Map<Tree, AnnotatedTypeMirror> treeCache;
 
     /** Mapping from a Tree to its annotated type; before implicits are applied,
      * just what the programmer wrote. */
-    protected final Map<Tree, AnnotatedTypeMirror> fromTreeCache = createLRUCache(CACHE_SIZE);
+    protected final Map<Tree, AnnotatedTypeMirror> fromTreeCache;
 
     /** Mapping from an Element to its annotated type; before implicits are applied,
      * just what the programmer wrote. */
-    private final Map<Element, AnnotatedTypeMirror> elementCache = createLRUCache(CACHE_SIZE);
+    private final Map<Element, AnnotatedTypeMirror> elementCache;
 
     /** Mapping from an Element to the source Tree of the declaration. */
-    private final Map<Element, Tree> elementToTreeCache  = createLRUCache(CACHE_SIZE);
+    private final Map<Element, Tree> elementToTreeCache;
+
+    /**
+     * Mapping from a flow expression string and the shape of its context
+     * to the parsed expression; see {@link FlowExpressionParseUtil#parse}.
+     */
+    private final Map<List<Object>, Receiver> flowExpressionCache;
+
+    /** The candidates for the methods overridden by a method. */
+    private final OverrideIndex overrideIndex;
+
+    /** All caches created by {@link #createCache}, for printing statistics. */
+    private final List<LRUCache<?, ?>> caches = new ArrayList<LRUCache<?, ?>>();
+
+    /** The maximal cache weights given by the "atfCacheSize" option; see {@link #getCacheSize}. */
+    private Map<String, Integer> cacheSizes;
+
+    /**
+     * Number of annotation sets that were shared between an annotated type
+     * and its copy instead of being copied.
+     * See {@link AnnotatedTypeMirror#getCopy(boolean)}.
+     */
+    /*package-private*/ int sharedAnnotationSets = 0;
+
+    /**
+     * Number of shared annotation sets that had to be copied after all,
+     * because one of the types sharing the set was modified.
+     */
+    /*package-private*/ int copiedAnnotationSets = 0;
+
+    /**
+     * Returns a copy of a type from one of the caches.
+     * The cached type itself is never handed out and never modified.
+     * The copy shares its annotation sets with the cached type; they are
+     * copied only if the caller modifies the copy.
+     */
+    private <T extends AnnotatedTypeMirror> T copyFromCache(T cached) {
+        return AnnotatedTypes.deepCopy(cached);
+    }
+
+    /**
+     * Print statistics about the work done by this factory for the current
+     * compilation unit and reset them.
+     * Called for each compilation unit if the "stats" option is provided.
+     */
+    public void printStats() {
+        String name = (root == null) ? "<no compilation unit>" :
+            root.getSourceFile().getName();
+        System.out.println(this + " statistics for " + name + ":");
+        for (LRUCache<?, ?> cache : caches) {
+            System.out.println("  " + cache.statistics());
+            cache.resetStatistics();
+        }
+        System.out.println("  Annotation sets shared by copies: " + sharedAnnotationSets);
+        System.out.println("  Annotation sets copied on write: " + copiedAnnotationSets);
+        System.out.println("  Annotation set copies avoided: " +
+                (sharedAnnotationSets - copiedAnnotationSets));
+        sharedAnnotationSets = 0;
+        copiedAnnotationSets = 0;
+        if (lazyStubTypes != null) {
+            System.out.println("  Stub types materialized: " +
+                    lazyStubTypes.getMaterializedCount() + " of " +
+                    lazyStubTypes.getIndexedCount());
+        }
+        if (treePathIndex != null && treePathIndex.getRoot() == root) {
+            System.out.println("  Trees in path index: " + treePathIndex.size());
+        }
+    }
+
+    /**
+     * Creates a cache for annotated types or other information that is
+     * expensive to compute.  Subclasses can override this method to use a
+     * different cache, e.g. with another eviction policy; the caches
+     * of this class are created during construction.
+     *
+     * @param name the name of the cache, used for the "atfCacheSize"
+     *   option and for printing statistics
+     * @param weigher determines the weight of each cache entry
+     * @return a new cache, bounded by {@link #getCacheSize}
+     */
+    protected <K, V> Map<K, V> createCache(String name, LRUCache.Weigher<? super K, ? super V> weigher) {
+        LRUCache<K, V> cache = new LRUCache<K, V>(name, getCacheSize(name), weigher);
+        caches.add(cache);
+        return cache;
+    }
+
+    /**
+     * Returns the maximal weight of the cache with the given name.
+     * The "atfCacheSize" option is a comma-separated list of entries,
+     * each either a number, which applies to all caches, or
+     * {@code name:number}, which applies to the cache with that name,
+     * e.g. {@code -AatfCacheSize=500,elementCache:2000}.
+     *
+     * @param name the name of a cache
+     * @return the maximal total weight of the cache
+     */
+    protected int getCacheSize(String name) {
+        if (cacheSizes == null) {
+            cacheSizes = new HashMap<String, Integer>();
+            String option = checker.getOption("atfCacheSize");
+            if (option != null) {
+                for (String entry : option.split(",")) {
+                    int sep = entry.indexOf(':');
+                    String key = (sep < 0) ? "" : entry.substring(0, sep).trim();
+                    try {
+                        int size = Integer.parseInt(entry.substring(sep + 1).trim());
+                        if (size <= 0) {
+                            throw new NumberFormatException();
+                        }
+                        cacheSizes.put(key, size);
+                    } catch (NumberFormatException e) {
+                        ErrorReporter.errorAbort("AnnotatedTypeFactory: invalid atfCacheSize entry \"" + entry +
+                                "\"; expected a positive number, optionally preceded by a cache name and a colon");
+                    }
+                }
+            }
+        }
+        if (cacheSizes.containsKey(name)) {
+            return cacheSizes.get(name);
+        } else if (cacheSizes.containsKey("")) {
+            return cacheSizes.get("");
+        } else {
+            return CACHE_SIZE;
+        }
+    }
+
+    /**
+     * Weighs cached annotated types by the number of types they directly
+     * consist of, as an approximation of the memory they use.
+     */
+    private static final LRUCache.Weigher<Object, AnnotatedTypeMirror> TYPE_WEIGHER =
+            new LRUCache.Weigher<Object, AnnotatedTypeMirror>() {
+        @Override
+        public int weigh(Object key, AnnotatedTypeMirror type) {
+            switch (type.getKind()) {
+            case DECLARED:
+                return 1 + ((AnnotatedDeclaredType) type).getTypeArguments().size();
+            case EXECUTABLE:
+                AnnotatedExecutableType method = (AnnotatedExecutableType) type;
+                return 2 + method.getParameterTypes().size() +
+                        method.getTypeVariables().size();
+            case ARRAY:
+                return 2;
+            default:
+                return 1;
+            }
+        }
+    };
+
+    /** Weighs every cache entry with 1. */
+    private static final LRUCache.Weigher<Object, Object> UNIT_WEIGHER =
+            new LRUCache.Weigher<Object, Object>() {
+        @Override
+        public int weigh(Object key, Object value) {
+            return 1;
+        }
+    };
 
     /**
      * Determines the annotated type of an element using
@@ -532,8 +729,11 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
             ErrorReporter.errorAbort("AnnotatedTypeFactory.getAnnotatedType: null tree");
             return null; // dead code
         }
-        if (treeCache.containsKey(tree) && shouldReadCache) {
-            return AnnotatedTypes.deepCopy(treeCache.get(tree));
+        if (shouldReadCache) {
+            AnnotatedTypeMirror cached = treeCache.get(tree);
+            if (cached != null) {
+                return copyFromCache(cached);
+            }
         }
 
         AnnotatedTypeMirror type;
@@ -616,14 +816,18 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
      * @return the annotated type of the element
      */
     public AnnotatedTypeMirror fromElement(Element elt) {
-        if (elementCache.containsKey(elt) && shouldReadCache) {
-            return AnnotatedTypes.deepCopy(elementCache.get(elt));
+        if (shouldReadCache) {
+            AnnotatedTypeMirror cached = elementCache.get(elt);
+            if (cached != null) {
+                return copyFromCache(cached);
+            }
         }
         if (elt.getKind() == ElementKind.PACKAGE)
             return toAnnotatedType(elt.asType());
         AnnotatedTypeMirror type;
         Tree decl = declarationFromElement(elt);
 
+        materializeStubTypes(elt);
         addFromByteCode(elt);
 
         if (decl == null && indexTypes != null && indexTypes.containsKey(elt)) {
@@ -652,12 +856,38 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
 
         // Caching is disabled if indexTypes == null, because calls to this
         // method before the stub files are fully read can return incorrect
-        // results.
-        if (shouldCache && indexTypes != null)
+        // results.  The same holds while stub types are materialized.
+        if (shouldCache && indexTypes != null && !isMaterializingStubTypes())
             elementCache.put(elt, AnnotatedTypes.deepCopy(type));
         return type;
     }
 
+    /**
+     * Adds the stub declarations of the type that declares {@code elt}, or
+     * of {@code elt} itself if it is a type, to {@link #indexTypes} and
+     * {@link #indexDeclAnnos}, if they have not been added yet.
+     * Does nothing unless the "lazyStubs" option is provided.
+     */
+    private void materializeStubTypes(Element elt) {
+        if (lazyStubTypes == null || lazyStubTypes.isMaterializing()) {
+            return;
+        }
+        TypeElement type = ElementUtils.enclosingClass(elt);
+        if (type != null) {
+            profiler.enterPhase(CheckerProfiler.STUBS);
+            try {
+                lazyStubTypes.materialize(type, indexTypes, indexDeclAnnos);
+            } finally {
+                profiler.exitPhase();
+            }
+        }
+    }
+
+    /** @return true if stub types are being materialized right now */
+    private boolean isMaterializingStubTypes() {
+        return lazyStubTypes != null && lazyStubTypes.isMaterializing();
+    }
+
     /**
      * Adds @FromByteCode to methods and constructors declared in class files
      * that are not already annotated with @FromStubFile
@@ -665,7 +895,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
      * @param elt
      */
     private void addFromByteCode(Element elt) {
-        if (indexDeclAnnos == null){// || trees.getTree(elt) != null) {
+        if (indexDeclAnnos == null || isMaterializingStubTypes()){// || trees.getTree(elt) != null) {
             // Parsing stub files, don't add @FromByteCode
             return;
         }
@@ -714,8 +944,11 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
             ErrorReporter.errorAbort("AnnotatedTypeFactory.fromMember: not a method or variable declaration: " + tree);
             return null; // dead code
         }
-        if (fromTreeCache.containsKey(tree) && shouldReadCache) {
-            return AnnotatedTypes.deepCopy(fromTreeCache.get(tree));
+        if (shouldReadCache) {
+            AnnotatedTypeMirror cached = fromTreeCache.get(tree);
+            if (cached != null) {
+                return copyFromCache(cached);
+            }
         }
         AnnotatedTypeMirror result = fromTreeWithVisitor(
                 TypeFromTree.TypeFromMemberINSTANCE, tree);
@@ -732,8 +965,12 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
      * @return the annotated type of the expression
      */
     public AnnotatedTypeMirror fromExpression(ExpressionTree tree) {
-        if (fromTreeCache.containsKey(tree) && shouldReadCache)
-            return AnnotatedTypes.deepCopy(fromTreeCache.get(tree));
+        if (shouldReadCache) {
+            AnnotatedTypeMirror cached = fromTreeCache.get(tree);
+            if (cached != null) {
+                return copyFromCache(cached);
+            }
+        }
 
         AnnotatedTypeMirror result = fromTreeWithVisitor(
                 TypeFromTree.TypeFromExpressionINSTANCE, tree);
@@ -753,8 +990,11 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
      * @return the annotated type of the type in the AST
      */
     public AnnotatedTypeMirror fromTypeTree(Tree tree) {
-        if (fromTreeCache.containsKey(tree) && shouldReadCache) {
-            return AnnotatedTypes.deepCopy(fromTreeCache.get(tree));
+        if (shouldReadCache) {
+            AnnotatedTypeMirror cached = fromTreeCache.get(tree);
+            if (cached != null) {
+                return copyFromCache(cached);
+            }
         }
 
         AnnotatedTypeMirror result = fromTreeWithVisitor(
@@ -1595,6 +1835,22 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         return this.visitorState;
     }
 
+    /**
+     * Returns the cache of parsed flow expressions used by
+     * {@link FlowExpressionParseUtil#parse}.
+     */
+    public Map<List<Object>, Receiver> getFlowExpressionCache() {
+        return flowExpressionCache;
+    }
+
+    /**
+     * Returns the index of the methods that a method may override, used by
+     * {@link AnnotatedTypes#overriddenMethods(Elements, AnnotatedTypeFactory, ExecutableElement)}.
+     */
+    public OverrideIndex getOverrideIndex() {
+        return overrideIndex;
+    }
+
     // **********************************************************************
     // random methods wrapping #getAnnotatedType(Tree) and #fromElement(Tree)
     // with appropriate casts to reduce casts on the client side
@@ -1771,8 +2027,12 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         // if root is null, we cannot find any declaration
         if (root == null)
             return null;
-        if (elementToTreeCache.containsKey(elt) && shouldReadCache) {
-            return elementToTreeCache.get(elt);
+        if (shouldReadCache) {
+            // The declaration of an element without source code is cached as null.
+            Tree cached = elementToTreeCache.get(elt);
+            if (cached != null || elementToTreeCache.containsKey(elt)) {
+                return cached;
+            }
         }
 
         // Check for new declarations, outside of the AST.
@@ -1900,16 +2160,32 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         return null; // dead code
     }
 
-    private final Map<Tree, Element> pathHack = new HashMap<>();
-    public final void setPathHack(Tree node, Element enclosing) {
-        pathHack.put(node, enclosing);
+    /** The paths of the trees of the current root; built by getTreePathIndex. */
+    private TreePathIndex treePathIndex;
+
+    /**
+     * @return the index of the paths of the trees of the current root
+     */
+    private TreePathIndex getTreePathIndex() {
+        if (treePathIndex == null || treePathIndex.getRoot() != root) {
+            treePathIndex = new TreePathIndex(root);
+        }
+        return treePathIndex;
+    }
+
+    /**
+     * Records the method or class that encloses a tree created by the
+     * checker, see {@link #getEnclosingMethod(Tree)}.
+     */
+    public final void addArtificialTree(Tree node, Element enclosing) {
+        getTreePathIndex().addArtificialTree(node, enclosing);
     }
 
     /**
-     * Gets the path for the given {@link Tree} under the current root by
-     * checking from the visitor's current path, and only using
-     * {@link Trees#getPath(CompilationUnitTree, Tree)} (which is much slower)
-     * only if {@code node} is not found on the current path.
+     * Gets the path for the given {@link Tree} under the current root.  The
+     * path is taken from the visitor's current path, if it ends with
+     * {@code node}, or else from an index of the paths of all trees of the
+     * root, which is built on first use.
      *
      * Note that the given Tree has to be within the current compilation unit,
      * otherwise null will be returned.
@@ -1923,49 +2199,11 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         if (node == null) return null;
 
         TreePath currentPath = visitorState.getPath();
-        if (currentPath == null)
-            return TreePath.getPath(root, node);
-
-        // This method uses multiple heuristics to avoid calling
-        // TreePath.getPath()
-
-        // If the current path you are visiting is for this node we are done
-        if (currentPath.getLeaf() == node) {
+        if (currentPath != null && currentPath.getLeaf() == node) {
             return currentPath;
         }
 
-        // When running on Daikon, we noticed that a lot of calls happened
-        // within a small subtree containing the node we are currently visiting
-
-        // When testing on Daikon, two steps resulted in the best performance
-        if (currentPath.getParentPath() != null)
-            currentPath = currentPath.getParentPath();
-        if (currentPath.getLeaf() == node) {
-            return currentPath;
-        }
-        if (currentPath.getParentPath() != null)
-            currentPath = currentPath.getParentPath();
-        if (currentPath.getLeaf() == node) {
-            return currentPath;
-        }
-
-        final TreePath pathWithinSubtree = TreePath.getPath(currentPath, node);
-        if (pathWithinSubtree != null) {
-            return pathWithinSubtree;
-        }
-
-        // climb the current path till we see that
-        // Works when getPath called on the enclosing method, enclosing
-        // class
-        TreePath current = currentPath;
-        while (current != null) {
-            if (current.getLeaf() == node)
-                return current;
-            current = current.getParentPath();
-        }
-
-        // OK, we give up. Do a full scan.
-        return TreePath.getPath(root, node);
+        return getTreePathIndex().getPath(node);
     }
 
     /**
@@ -1974,15 +2212,12 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
      * the enclosing methods of {@link Tree}s that are created
      * internally by the checker.
      *
-     * TODO: Find a better way to store information about enclosing
-     * Trees.
-     *
      * @param node the {@link Tree} to get the enclosing method for
      * @return the method {@link Element} enclosing the argument, or
      * null if none has been recorded
      */
     public final Element getEnclosingMethod(Tree node) {
-        return pathHack.get(node);
+        return getTreePathIndex().getArtificialTreeEnclosing(node);
     }
 
     /**
@@ -2049,14 +2284,21 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
      * @return  a new cache with the provided size
      */
     protected static <K, V> Map<K, V> createLRUCache(final int size) {
-        return new LinkedHashMap<K, V>() {
+        return new LRUCache<K, V>("LRU cache", size);
+    }
 
-            private static final long serialVersionUID = 5261489276168775084L;
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<K, V> entry) {
-                return size() > size;
-            }
-        };
+    /**
+     * Parses a stub file into {@code indexTypes} and {@code indexDeclAnnos},
+     * or only indexes its type declarations if the "lazyStubs" option is
+     * provided.
+     */
+    private void parseStubFile(StubParser stubParser, Map<Element, AnnotatedTypeMirror> indexTypes,
+            Map<String, Set<AnnotationMirror>> indexDeclAnnos) {
+        if (lazyStubTypes != null) {
+            stubParser.parseLazily(lazyStubTypes, indexDeclAnnos);
+        } else {
+            stubParser.parse(indexTypes, indexDeclAnnos);
+        }
     }
 
     /** Sets indexTypes and indexDeclAnnos by side effect, just before returning. */
@@ -2070,13 +2312,17 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         Map<String, Set<AnnotationMirror>> indexDeclAnnos
             = new HashMap<String, Set<AnnotationMirror>>();
 
+        if (checker.hasOption("lazyStubs")) {
+            lazyStubTypes = new LazyStubTypes();
+        }
+
         if (!checker.hasOption("ignorejdkastub")) {
             InputStream in = null;
             if (checker != null)
                 in = checker.getClass().getResourceAsStream("jdk.astub");
             if (in != null) {
                 StubParser stubParser = new StubParser("jdk.astub", in, this, processingEnv);
-                stubParser.parse(indexTypes, indexDeclAnnos);
+                parseStubFile(stubParser, indexTypes, indexDeclAnnos);
             }
         }
 
@@ -2084,7 +2330,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         InputStream input = BaseTypeChecker.class.getResourceAsStream("flow.astub");
         if (input != null) {
             StubParser stubParser = new StubParser("flow.astub", input, this, processingEnv);
-            stubParser.parse(indexTypes, indexDeclAnnos);
+            parseStubFile(stubParser, indexTypes, indexDeclAnnos);
         }
 
         String allstubFiles = "";
@@ -2134,7 +2380,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
                     in = checker.getClass().getResourceAsStream(stubPath);
                 if (in != null) {
                     StubParser stubParser = new StubParser(stubPath, in, this, processingEnv);
-                    stubParser.parse(indexTypes, indexDeclAnnos);
+                    parseStubFile(stubParser, indexTypes, indexDeclAnnos);
                     // We could handle the stubPath -> continue.
                     continue;
                 }
@@ -2150,7 +2396,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
                     continue;
                 }
                 StubParser stubParser = new StubParser(resource.getDescription(), stubStream, this, processingEnv);
-                stubParser.parse(indexTypes, indexDeclAnnos);
+                parseStubFile(stubParser, indexTypes, indexDeclAnnos);
             }
         }
 
@@ -2170,6 +2416,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
     public AnnotationMirror getDeclAnnotation(Element elt,
             Class<? extends Annotation> anno) {
         String annoName = anno.getCanonicalName().intern();
+        materializeStubTypes(elt);
         String eltName = ElementUtils.getVerboseName(elt);
         List<? extends AnnotationMirror> annotationMirrors = elt.getAnnotationMirrors();
         return getDeclAnnotation(eltName, annoName, annotationMirrors, true);
@@ -2253,6 +2500,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         Set<AnnotationMirror> results = new HashSet<AnnotationMirror>();
 
         // First look in the stub files.
+        materializeStubTypes(elt);
         String eltName = ElementUtils.getVerboseName(elt);
         Set<AnnotationMirror> stubAnnos = indexDeclAnnos.get(eltName);
         if (stubAnnos != null) {
@@ -2287,6 +2535,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         annotationMirrors.addAll(element.getAnnotationMirrors());
 
         // Consider stub annotations.
+        materializeStubTypes(element);
         String eltName = ElementUtils.getVerboseName(element);
         Set<AnnotationMirror> stubAnnos = indexDeclAnnos.get(eltName);
         if (stubAnnos != null) {
@@ -2339,6 +2588,7 @@ public class AnnotatedTypeFactory implements AnnotationProvider {
         annotationMirrors.addAll(getAnnotatedType(element).getAnnotations());
 
         // Consider stub annotations.
+        materializeStubTypes(element);
         String eltName = ElementUtils.getVerboseName(element);
         Set<AnnotationMirror> stubAnnos = indexDeclAnnos.get(eltName);
         if (stubAnnos != null) {
@@ -7,10 +7,12 @@ import org.checkerframework.checker.interning.qual.*;
 */
 
 import java.lang.annotation.Annotation;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -153,7 +155,16 @@ public abstract class AnnotatedTypeMirror {
     // the class name of Annotation instead.
     // Caution: Assumes that a type can have at most one AnnotationMirror for
     // any Annotation type. JSR308 is pushing to have this change.
-    protected final Set<AnnotationMirror> annotations = AnnotationUtils.createAnnotationSet();
+    // The set is shared between a type and its copies, see getCopy, and is
+    // only copied when one of them is modified.  Never modify the set
+    // directly, use mutableAnnotations() instead.
+    protected Set<AnnotationMirror> annotations = AnnotationUtils.createAnnotationSet();
+
+    /**
+     * Whether {@link #annotations} is shared with another type and therefore
+     * needs to be copied before it is modified.
+     */
+    private boolean annotationsShared = false;
 
     /** The explicitly written annotations on this type. */
     // TODO: use this to cache the result once computed? For generic types?
@@ -298,7 +309,25 @@ public abstract class AnnotatedTypeMirror {
      * @return  a set of the annotations on this
      */
     public Set<AnnotationMirror> getAnnotations() {
-        return Collections.unmodifiableSet(annotations);
+        // Not Collections.unmodifiableSet(annotations): the returned set
+        // has to reflect later modifications of this type, even if these
+        // replace a shared annotation set by a copy.
+        return new AbstractSet<AnnotationMirror>() {
+            @Override
+            public Iterator<AnnotationMirror> iterator() {
+                return Collections.unmodifiableSet(annotations).iterator();
+            }
+
+            @Override
+            public int size() {
+                return annotations.size();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return annotations.contains(o);
+            }
+        };
     }
 
     /**
@@ -532,7 +561,7 @@ public abstract class AnnotatedTypeMirror {
             ErrorReporter.errorAbort("AnnotatedTypeMirror.addAnnotation: null is not a valid annotation.");
         }
         if (atypeFactory.isSupportedQualifier(a)) {
-            this.annotations.add(a);
+            mutableAnnotations().add(a);
         } else {
             AnnotationMirror aliased = atypeFactory.aliasedAnnotation(a);
             if (atypeFactory.isSupportedQualifier(aliased)) {
@@ -617,7 +646,7 @@ public abstract class AnnotatedTypeMirror {
         // It's currently necessary for the IGJ Checker and Lock Checker.
         AnnotationMirror anno = getAnnotation(AnnotationUtils.annotationName(a));
         if (anno != null) {
-            return annotations.remove(anno);
+            return mutableAnnotations().remove(anno);
         } else {
             return false;
         }
@@ -686,7 +715,45 @@ public abstract class AnnotatedTypeMirror {
      * and similar methods.
      */
     public void clearAnnotations() {
-        annotations.clear();
+        if (annotationsShared) {
+            annotations = AnnotationUtils.createAnnotationSet();
+            annotationsShared = false;
+        } else {
+            annotations.clear();
+        }
+    }
+
+    /**
+     * Use the annotations of {@code other} as the annotations of this type,
+     * without copying them.  The annotation set is only copied once either
+     * type is modified, which most copies never are.
+     * The annotations of {@code other} have already been checked to be
+     * supported, so they are not checked again.
+     *
+     * @param other the type whose annotations to share
+     */
+    /*package-private*/ final void shareAnnotations(AnnotatedTypeMirror other) {
+        this.annotations = other.annotations;
+        this.annotationsShared = true;
+        other.annotationsShared = true;
+        ++atypeFactory.sharedAnnotationSets;
+    }
+
+    /**
+     * Returns the annotation set of this type for modification, copying it
+     * first if it is shared with another type.
+     *
+     * @return the annotation set of this type that is not shared with any other type
+     */
+    private Set<AnnotationMirror> mutableAnnotations() {
+        if (annotationsShared) {
+            Set<AnnotationMirror> copy = AnnotationUtils.createAnnotationSet();
+            copy.addAll(annotations);
+            annotations = copy;
+            annotationsShared = false;
+            ++atypeFactory.copiedAnnotationSets;
+        }
+        return annotations;
     }
 
     private static boolean isInvisibleQualified(AnnotationMirror anno) {
@@ -1016,7 +1083,7 @@ public abstract class AnnotatedTypeMirror {
             AnnotatedDeclaredType type =
                 new AnnotatedDeclaredType(getUnderlyingType(), atypeFactory);
             if (copyAnnotations)
-                type.addAnnotations(annotations);
+                type.shareAnnotations(this);
             type.setEnclosingType(getEnclosingType());
             type.setTypeArguments(getTypeArguments());
             return type;
@@ -1531,7 +1598,7 @@ public abstract class AnnotatedTypeMirror {
         public AnnotatedArrayType getCopy(boolean copyAnnotations) {
             AnnotatedArrayType type = new AnnotatedArrayType(actualType, atypeFactory);
             if (copyAnnotations)
-                type.addAnnotations(annotations);
+                type.shareAnnotations(this);
             type.setComponentType(getComponentType());
             return type;
         }
@@ -1778,7 +1845,7 @@ public abstract class AnnotatedTypeMirror {
             AnnotatedTypeVariable type =
                 new AnnotatedTypeVariable(((TypeVariable)actualType), atypeFactory);
             if (copyAnnotations)
-                type.addAnnotations(annotations);
+                type.shareAnnotations(this);
             if (!inUpperBounds) {
                 inUpperBounds = true;
                 type.inUpperBounds = true;
@@ -1955,7 +2022,7 @@ public abstract class AnnotatedTypeMirror {
         public AnnotatedNoType getCopy(boolean copyAnnotations) {
             AnnotatedNoType type = new AnnotatedNoType((NoType) actualType, atypeFactory);
             if (copyAnnotations)
-                type.addAnnotations(annotations);
+                type.shareAnnotations(this);
             return type;
         }
 
@@ -1992,7 +2059,7 @@ public abstract class AnnotatedTypeMirror {
         public AnnotatedNullType getCopy(boolean copyAnnotations) {
             AnnotatedNullType type = new AnnotatedNullType((NullType) actualType, atypeFactory);
             if (copyAnnotations)
-                type.addAnnotations(annotations);
+                type.shareAnnotations(this);
             return type;
         }
 
@@ -2043,7 +2110,7 @@ public abstract class AnnotatedTypeMirror {
             AnnotatedPrimitiveType type =
                 new AnnotatedPrimitiveType((PrimitiveType) actualType, atypeFactory);
             if (copyAnnotations)
-                type.addAnnotations(annotations);
+                type.shareAnnotations(this);
             return type;
         }
 
@@ -2218,7 +2285,7 @@ public abstract class AnnotatedTypeMirror {
         public AnnotatedWildcardType getCopy(boolean copyAnnotations) {
             AnnotatedWildcardType type = new AnnotatedWildcardType((WildcardType) actualType, atypeFactory);
             if (copyAnnotations)
-                type.addAnnotations(annotations);
+                type.shareAnnotations(this);
             type.setExtendsBound(getExtendsBound());
             type.setSuperBound(getSuperBound());
 
@@ -2341,7 +2408,7 @@ public abstract class AnnotatedTypeMirror {
             AnnotatedIntersectionType type =
                     new AnnotatedIntersectionType((IntersectionType) actualType, atypeFactory);
             if (copyAnnotations)
-                type.addAnnotations(annotations);
+                type.shareAnnotations(this);
             type.supertypes = this.supertypes;
             return type;
         }
@@ -2433,7 +2500,7 @@ public abstract class AnnotatedTypeMirror {
             AnnotatedUnionType type =
                     new AnnotatedUnionType((UnionType) actualType, atypeFactory);
             if (copyAnnotations)
-                type.addAnnotations(annotations);
+                type.shareAnnotations(this);
             type.alternatives = this.alternatives;
             return type;
         }
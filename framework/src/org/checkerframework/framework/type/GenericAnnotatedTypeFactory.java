@@ -18,6 +18,7 @@ import java.util.Set;
 
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.DeclaredType;
@@ -27,7 +28,7 @@ import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.dataflow.analysis.AnalysisResult;
 import org.checkerframework.dataflow.analysis.TransferInput;
 import org.checkerframework.dataflow.analysis.TransferResult;
-import org.checkerframework.dataflow.cfg.CFGBuilder;
+import org.checkerframework.dataflow.cfg.CFGCache;
 import org.checkerframework.dataflow.cfg.ControlFlowGraph;
 import org.checkerframework.dataflow.cfg.UnderlyingAST;
 import org.checkerframework.dataflow.cfg.UnderlyingAST.CFGMethod;
@@ -52,6 +53,7 @@ import org.checkerframework.framework.qual.MonotonicQualifier;
 import org.checkerframework.framework.qual.Unqualified;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedDeclaredType;
 import org.checkerframework.framework.type.AnnotatedTypeMirror.AnnotatedExecutableType;
+import org.checkerframework.framework.util.CheckerProfiler;
 import org.checkerframework.framework.util.QualifierDefaults;
 import org.checkerframework.framework.util.QualifierPolymorphism;
 import org.checkerframework.javacutil.AnnotationUtils;
@@ -112,6 +114,9 @@ public abstract class GenericAnnotatedTypeFactory<
     /** An empty store. */
     private Store emptyStore;
 
+    /** Should methods be analyzed only when their results are needed? */
+    private final boolean lazyFlow;
+
     /**
      * Creates a type factory for checking the given compilation unit with
      * respect to the given annotation.
@@ -123,6 +128,7 @@ public abstract class GenericAnnotatedTypeFactory<
         super(checker);
 
         this.useFlow = useFlow;
+        this.lazyFlow = checker.hasOption("lazyFlow");
         this.analyses = new LinkedList<>();
         this.scannedClasses = new HashMap<>();
         this.flowResult = null;
@@ -151,7 +157,12 @@ public abstract class GenericAnnotatedTypeFactory<
 
         this.poly = createQualifierPolymorphism();
 
-        this.buildIndexTypes();
+        profiler.enterPhase(CheckerProfiler.STUBS);
+        try {
+            this.buildIndexTypes();
+        } finally {
+            profiler.exitPhase();
+        }
     }
 
     /**
@@ -176,6 +187,19 @@ public abstract class GenericAnnotatedTypeFactory<
         this.returnStatementStores = null;
         this.initializationStore = null;
         this.initializationStaticStore = null;
+        this.pendingMethods.clear();
+    }
+
+    @Override
+    public void printStats() {
+        super.printStats();
+        if (defaults != null) {
+            defaults.printStats();
+        }
+        if (lazyFlow) {
+            System.out.println("  lazy flow: " + deferredMethods + " methods deferred, "
+                    + lazilyAnalyzedMethods + " analyzed");
+        }
     }
 
     // **********************************************************************
@@ -439,6 +463,7 @@ public abstract class GenericAnnotatedTypeFactory<
      *         block).
      */
     public /*@Nullable*/ Store getRegularExitStore(Tree t) {
+        analyzePendingMethods(t);
         return regularExitStores.get(t);
     }
 
@@ -447,6 +472,7 @@ public abstract class GenericAnnotatedTypeFactory<
      */
     public List<Pair<ReturnNode, TransferResult<Value, Store>>> getReturnStatementStores(
             MethodTree methodTree) {
+        analyzePendingMethods(methodTree);
         assert returnStatementStores.containsKey(methodTree);
         return returnStatementStores.get(methodTree);
     }
@@ -455,6 +481,7 @@ public abstract class GenericAnnotatedTypeFactory<
      * @return The store immediately before a given {@link Tree}.
      */
     public Store getStoreBefore(Tree tree) {
+        analyzePendingMethods(tree);
         if (analyses == null || analyses.isEmpty()) {
             return flowResult.getStoreBefore(tree);
         }
@@ -472,6 +499,7 @@ public abstract class GenericAnnotatedTypeFactory<
      * @return The store immediately after a given {@link Tree}.
      */
     public Store getStoreAfter(Tree tree) {
+        analyzePendingMethods(tree);
         if (analyses == null || analyses.isEmpty()) {
             return flowResult.getStoreAfter(tree);
         }
@@ -485,6 +513,7 @@ public abstract class GenericAnnotatedTypeFactory<
      * @return The {@link Node} for a given {@link Tree}.
      */
     public Node getNodeForTree(Tree tree) {
+        analyzePendingMethods(tree);
         return flowResult.getNodeForTree(tree);
     }
 
@@ -492,6 +521,7 @@ public abstract class GenericAnnotatedTypeFactory<
      * @return The value of effectively final local variables.
      */
     public HashMap<Element, Value> getFinalLocalValues() {
+        analyzePendingMethods(null);
         return flowResult.getFinalLocalValues();
     }
 
@@ -500,6 +530,24 @@ public abstract class GenericAnnotatedTypeFactory<
      * classes.
      */
     protected void performFlowAnalysis(ClassTree classTree) {
+        ClassTree prevFlowClassTree = flowClassTree;
+        flowClassTree = classTree;
+        try {
+            performFlowAnalysisOfClass(classTree);
+        } finally {
+            flowClassTree = prevFlowClassTree;
+        }
+    }
+
+    /**
+     * The class passed to the current invocation of
+     * {@link #performFlowAnalysis}, whose control flow graphs may be shared
+     * with other checkers through the {@link CFGCache}.
+     */
+    private ClassTree flowClassTree;
+
+    /** The implementation of {@link #performFlowAnalysis}. */
+    private void performFlowAnalysisOfClass(ClassTree classTree) {
         if (flowResult == null) {
             regularExitStores = new IdentityHashMap<>();
             returnStatementStores = new IdentityHashMap<>();
@@ -516,6 +564,17 @@ public abstract class GenericAnnotatedTypeFactory<
         Queue<ClassTree> queue = new LinkedList<>();
         List<Pair<VariableElement, Value>> fieldValues = new ArrayList<>();
         queue.add(classTree);
+        analyzeClassQueue(queue, fieldValues, classTree);
+    }
+
+    /**
+     * Analyze the classes in {@code queue} and the classes that are added to
+     * it during the analysis.
+     *
+     * @param classTree the class passed to {@link #performFlowAnalysis}
+     */
+    private void analyzeClassQueue(Queue<ClassTree> queue,
+            List<Pair<VariableElement, Value>> fieldValues, ClassTree classTree) {
         while (!queue.isEmpty()) {
             ClassTree ct = queue.remove();
             scannedClasses.put(ct, ScanState.IN_PROGRESS);
@@ -591,10 +650,25 @@ public abstract class GenericAnnotatedTypeFactory<
                 // Now analyze all methods.
                 // TODO: at this point, we don't have any information about
                 // fields of superclasses.
+                // Classes analyzed later add their fields to fieldValues,
+                // so deferred methods keep a copy of the current values.
+                List<Pair<VariableElement, Value>> methodFieldValues =
+                        lazyFlow ? new ArrayList<>(fieldValues) : fieldValues;
                 for (MethodTree mt : methods) {
-                    analyze(queue,
-                            new CFGMethod(mt, TreeUtils
-                                    .enclosingClass(getPath(mt))), fieldValues, classTree, false, false);
+                    if (lazyFlow) {
+                        // Analyze the method when its results are first needed.
+                        pendingMethods.put(mt, new PendingMethod(ct, methodFieldValues, classTree));
+                        deferredMethods++;
+                    } else {
+                        analyze(queue,
+                                new CFGMethod(mt, TreeUtils
+                                        .enclosingClass(getPath(mt))), fieldValues, classTree, false, false);
+                    }
+                }
+                if (emptyStore == null && lazyFlow) {
+                    // analyze usually creates the empty store
+                    emptyStore = createFlowAnalysis(fieldValues).createEmptyStore(
+                            !checker.hasOption("concurrentSemantics"));
                 }
 
                 // by convention we store the static initialization store as the regular exit
@@ -617,6 +691,100 @@ public abstract class GenericAnnotatedTypeFactory<
         }
     }
 
+    /**
+     * A method whose analysis was deferred until its results are needed,
+     * because of the "lazyFlow" option.
+     */
+    private class PendingMethod {
+        /** The class that declares the method. */
+        final ClassTree classTree;
+        /**
+         * The abstract values of the fields, after all initializers of the
+         * class; shared by the methods of the class and not modified.
+         */
+        final List<Pair<VariableElement, Value>> fieldValues;
+        /** The class passed to {@link #performFlowAnalysis}. */
+        final ClassTree flowClassTree;
+
+        PendingMethod(ClassTree classTree, List<Pair<VariableElement, Value>> fieldValues,
+                ClassTree flowClassTree) {
+            this.classTree = classTree;
+            this.fieldValues = fieldValues;
+            this.flowClassTree = flowClassTree;
+        }
+    }
+
+    /** The methods whose analysis was deferred by the "lazyFlow" option. */
+    private final Map<MethodTree, PendingMethod> pendingMethods = new IdentityHashMap<>();
+
+    /** Number of methods whose analysis was deferred, for the "stats" option. */
+    private int deferredMethods = 0;
+
+    /** Number of deferred methods that were analyzed, for the "stats" option. */
+    private int lazilyAnalyzedMethods = 0;
+
+    /**
+     * Analyze the methods that may contain {@code tree}, if their analysis
+     * was deferred by the "lazyFlow" option: {@code tree} itself, if it is a
+     * method, and the method whose body is being visited.
+     * Called by the methods that return the results of the analysis; does
+     * nothing while another analysis is running.
+     */
+    protected void analyzePendingMethods(/*@Nullable*/ Tree tree) {
+        if (pendingMethods.isEmpty() || !analyses.isEmpty()) {
+            return;
+        }
+        if (tree instanceof MethodTree) {
+            analyzePendingMethod((MethodTree) tree);
+        }
+        MethodTree visited = visitorState.getMethodTree();
+        if (visited != null) {
+            analyzePendingMethod(visited);
+        }
+    }
+
+    /**
+     * Analyze {@code mt} and the classes declared in it, if its analysis was
+     * deferred, in the same state as {@link #performFlowAnalysis} would
+     * have.
+     */
+    private void analyzePendingMethod(MethodTree mt) {
+        PendingMethod pending = pendingMethods.remove(mt);
+        if (pending == null) {
+            return;
+        }
+        lazilyAnalyzedMethods++;
+
+        AnnotatedDeclaredType preClassType = visitorState.getClassType();
+        ClassTree preClassTree = visitorState.getClassTree();
+        AnnotatedDeclaredType preAMT = visitorState.getMethodReceiver();
+        MethodTree preMT = visitorState.getMethodTree();
+        ClassTree prevFlowClassTree = flowClassTree;
+
+        visitorState.setClassType(getAnnotatedType(pending.classTree));
+        visitorState.setClassTree(pending.classTree);
+        visitorState.setMethodReceiver(null);
+        visitorState.setMethodTree(null);
+        flowClassTree = pending.flowClassTree;
+
+        try {
+            Queue<ClassTree> queue = new LinkedList<>();
+            // The classes declared in the method add their fields.
+            List<Pair<VariableElement, Value>> fieldValues = new ArrayList<>(pending.fieldValues);
+            analyze(queue,
+                    new CFGMethod(mt, TreeUtils
+                            .enclosingClass(getPath(mt))), fieldValues,
+                    pending.flowClassTree, false, false);
+            analyzeClassQueue(queue, fieldValues, pending.flowClassTree);
+        } finally {
+            visitorState.setClassType(preClassType);
+            visitorState.setClassTree(preClassTree);
+            visitorState.setMethodReceiver(preAMT);
+            visitorState.setMethodTree(preMT);
+            flowClassTree = prevFlowClassTree;
+        }
+    }
+
     // Maintain a deque of analyses to accomodate nested classes.
     protected final Deque<FlowAnalysis> analyses;
     // Maintain for every class the store that is used when we analyze initialization code
@@ -639,8 +807,44 @@ public abstract class GenericAnnotatedTypeFactory<
     protected void analyze(Queue<ClassTree> queue, UnderlyingAST ast,
             List<Pair<VariableElement, Value>> fieldValues, ClassTree currentClass,
             boolean isInitializationCode, boolean isStatic) {
-        CFGBuilder builder = new CFCFGBuilder(checker, this);
-        ControlFlowGraph cfg = builder.run(root, processingEnv, ast);
+        CheckerProfiler.Measurement start = (ast.getKind() == UnderlyingAST.Kind.METHOD)
+                ? profiler.start() : null;
+        profiler.enterPhase(CheckerProfiler.DATAFLOW);
+        try {
+            analyzeUnprofiled(queue, ast, fieldValues, currentClass, isInitializationCode, isStatic);
+        } finally {
+            profiler.exitPhase();
+            if (start != null) {
+                ExecutableElement method = TreeUtils.elementFromDeclaration(((CFGMethod) ast).getMethod());
+                profiler.stop(start, CheckerProfiler.METHOD, method.getEnclosingElement() + "." + method);
+            }
+        }
+    }
+
+    /** The implementation of {@link #analyze}. */
+    private void analyzeUnprofiled(Queue<ClassTree> queue, UnderlyingAST ast,
+            List<Pair<VariableElement, Value>> fieldValues, ClassTree currentClass,
+            boolean isInitializationCode, boolean isStatic) {
+        ControlFlowGraph cfg;
+        List<ClassTree> declaredClasses;
+        String configuration = "assumeAssertionsAreEnabled=" + checker.hasOption("assumeAssertionsAreEnabled")
+                + ",assumeAssertionsAreDisabled=" + checker.hasOption("assumeAssertionsAreDisabled");
+        CFGCache.Entry cached = CFGCache.get(flowClassTree, ast, configuration);
+        if (cached != null) {
+            cfg = cached.cfg;
+            declaredClasses = cached.declaredClasses;
+            for (Map.Entry<Tree, Element> artificial : cached.artificialTrees.entrySet()) {
+                addArtificialTree(artificial.getKey(), artificial.getValue());
+            }
+        } else {
+            CFCFGBuilder builder = new CFCFGBuilder(checker, this);
+            cfg = builder.run(root, processingEnv, ast);
+            declaredClasses = builder.getDeclaredClasses();
+            if (!builder.isCheckerSpecific()) {
+                CFGCache.put(flowClassTree, ast, configuration,
+                        new CFGCache.Entry(cfg, declaredClasses, builder.getArtificialTrees()));
+            }
+        }
         FlowAnalysis newAnalysis = createFlowAnalysis(fieldValues);
         if (emptyStore == null) {
             emptyStore = newAnalysis.createEmptyStore(!checker.hasOption("concurrentSemantics"));
@@ -700,7 +904,7 @@ public abstract class GenericAnnotatedTypeFactory<
         analyses.removeFirst();
 
         // add classes declared in method
-        queue.addAll(builder.getDeclaredClasses());
+        queue.addAll(declaredClasses);
     }
 
     /** @return The file name used for DOT output. */
@@ -760,9 +964,27 @@ public abstract class GenericAnnotatedTypeFactory<
         if (iUseFlow) {
             annotateImplicitWithFlow(tree, type);
         } else {
+            applyAnnotatorsAndDefaults(tree, type);
+        }
+    }
+
+    /**
+     * Applies the tree and type annotators and then the defaults to the
+     * type of {@code tree}.
+     */
+    private void applyAnnotatorsAndDefaults(Tree tree, AnnotatedTypeMirror type) {
+        profiler.enterPhase(CheckerProfiler.TREE_ANNOTATION);
+        try {
             treeAnnotator.visit(tree, type);
             typeAnnotator.visit(type, null);
+        } finally {
+            profiler.exitPhase();
+        }
+        profiler.enterPhase(CheckerProfiler.DEFAULTS);
+        try {
             defaults.annotate(tree, type);
+        } finally {
+            profiler.exitPhase();
         }
     }
 
@@ -800,9 +1022,7 @@ public abstract class GenericAnnotatedTypeFactory<
             }
         }
 
-        treeAnnotator.visit(tree, type);
-        typeAnnotator.visit(type, null);
-        defaults.annotate(tree, type);
+        applyAnnotatorsAndDefaults(tree, type);
 
         Value as = getInferredValueFor(tree);
         if (as != null) {
@@ -814,6 +1034,7 @@ public abstract class GenericAnnotatedTypeFactory<
      * Returns the inferred value (by the org.checkerframework.dataflow analysis) for a given tree.
      */
     public Value getInferredValueFor(Tree tree) {
+        analyzePendingMethods(tree);
         Value as = null;
         if (!analyses.isEmpty() && tree != null) {
             as = analyses.getFirst().getValue(tree);
@@ -864,8 +1085,18 @@ public abstract class GenericAnnotatedTypeFactory<
 
     @Override
     public void annotateImplicit(Element elt, AnnotatedTypeMirror type) {
-        typeAnnotator.visit(type, null);
-        defaults.annotate(elt, type);
+        profiler.enterPhase(CheckerProfiler.TREE_ANNOTATION);
+        try {
+            typeAnnotator.visit(type, null);
+        } finally {
+            profiler.exitPhase();
+        }
+        profiler.enterPhase(CheckerProfiler.DEFAULTS);
+        try {
+            defaults.annotate(elt, type);
+        } finally {
+            profiler.exitPhase();
+        }
     }
 
     @Override
@@ -550,9 +550,14 @@ public class AnnotatedTypes {
             AnnotatedTypeFactory atypeFactory,
             ExecutableElement method) {
         final TypeElement elem = (TypeElement) method.getEnclosingElement();
+        final OverrideIndex index = atypeFactory.getOverrideIndex();
+        if (index.getInheritedCandidates(elem, method).isEmpty()) {
+            // No supertype has a method with the same name and arity.
+            return Collections.emptyMap();
+        }
         final AnnotatedDeclaredType type = atypeFactory.getAnnotatedType(elem);
         final Collection<AnnotatedDeclaredType> supertypes = getSuperTypes(type);
-        return overriddenMethods(elements, method, supertypes);
+        return overriddenMethods(elements, index, method, supertypes);
     }
 
     /**
@@ -573,6 +578,17 @@ public class AnnotatedTypes {
     public static Map<AnnotatedDeclaredType, ExecutableElement> overriddenMethods(
             Elements elements,
             ExecutableElement method, Collection<AnnotatedDeclaredType> supertypes) {
+        return overriddenMethods(elements, null, method, supertypes);
+    }
+
+    /**
+     * Like {@link #overriddenMethods(Elements, ExecutableElement, Collection)},
+     * but only considers the candidates given by {@code index}, if it is not
+     * null, instead of all methods of each supertype.
+     */
+    private static Map<AnnotatedDeclaredType, ExecutableElement> overriddenMethods(
+            Elements elements, /*@Nullable*/ OverrideIndex index,
+            ExecutableElement method, Collection<AnnotatedDeclaredType> supertypes) {
 
         Map<AnnotatedDeclaredType, ExecutableElement> overrides =
             new HashMap<AnnotatedDeclaredType, ExecutableElement>();
@@ -583,7 +599,10 @@ public class AnnotatedTypes {
             assert superElement != null; /*nninvariant*/
             // For all method in the supertype, add it to the set if
             // it overrides the given method.
-            for (ExecutableElement supermethod : ElementFilter.methodsIn(superElement.getEnclosedElements())) {
+            List<ExecutableElement> supermethods = (index == null)
+                    ? ElementFilter.methodsIn(superElement.getEnclosedElements())
+                    : index.getDeclaredCandidates(superElement, method);
+            for (ExecutableElement supermethod : supermethods) {
                 if (elements.overrides(method, supermethod,
                         superElement)) {
                     overrides.put(supertype, supermethod);
@@ -1409,7 +1428,17 @@ public class AnnotatedTypes {
     }
 
 
-    private static Map<TypeElement, Boolean> isTypeAnnotationCache = new IdentityHashMap<TypeElement, Boolean>();
+    // Synchronized, because several compilations may run in parallel in one JVM, e.g. in tests.
+    private static Map<TypeElement, Boolean> isTypeAnnotationCache =
+            Collections.synchronizedMap(new IdentityHashMap<TypeElement, Boolean>());
+
+    /**
+     * Clear the caches of this class, which hold elements of one compilation.
+     * Must be called before a later compilation runs in the same JVM.
+     */
+    public static void clearCaches() {
+        isTypeAnnotationCache.clear();
+    }
 
     public static boolean isTypeAnnotation(AnnotationMirror anno) {
         TypeElement elem = (TypeElement)anno.getAnnotationType().asElement();
@@ -0,0 +1,489 @@
+package org.checkerframework.framework.util;
+
+import org.checkerframework.javacutil.AnnotationUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.processing.Processor;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+
+import com.sun.source.util.JavacTask;
+import com.sun.tools.javac.api.JavacTool;
+
+/**
+ * Runs the Checker Framework compiler in a long-lived daemon JVM, which
+ * avoids the JVM start-up and class loading cost of every compilation and
+ * lets the JIT-compiled checker code be reused.
+ *
+ * <p>
+ *
+ * Usage:
+ * <pre>
+ *   java -cp checker.jar org.checkerframework.framework.util.CheckerDaemon --start-daemon
+ *   java -cp checker.jar org.checkerframework.framework.util.CheckerDaemon [javac arguments]
+ *   java -cp checker.jar org.checkerframework.framework.util.CheckerDaemon --stop-daemon
+ * </pre>
+ *
+ * The javac arguments are the same as for {@link CheckerMain}.  If no daemon
+ * is running, the compiler is invoked exactly as by {@link CheckerMain}.
+ * The daemon listens on the loopback interface on the port given by the
+ * system property {@value #PORT_PROPERTY}, by default {@value #DEFAULT_PORT}.
+ *
+ * <p>
+ *
+ * Every request must carry a secret that the daemon writes to a file in the
+ * per-user directory (see {@link UserDirectoryUtil}) when it starts.  Only
+ * the user who started the daemon can read that file, so other users of the
+ * same machine cannot make the daemon compile or run code.
+ *
+ * <p>
+ *
+ * Type factories, stub indexes, and the other state of a checker refer to
+ * the elements and types of one javac compilation and cannot be shared with
+ * the next one, so every request runs a complete compilation.
+ */
+public class CheckerDaemon extends CheckerMain {
+
+    /** The system property that determines the port of the daemon. */
+    public static final String PORT_PROPERTY = "checkerframework.daemon.port";
+
+    /** The port of the daemon if {@value #PORT_PROPERTY} is not set. */
+    public static final int DEFAULT_PORT = 7363;
+
+    /** Argument to start a daemon in the background. */
+    public static final String START_DAEMON = "--start-daemon";
+
+    /** Argument to stop a running daemon. */
+    public static final String STOP_DAEMON = "--stop-daemon";
+
+    /** Argument to run the daemon in the current JVM (used by {@link #START_DAEMON}). */
+    protected static final String RUN_DAEMON = "--run-daemon";
+
+    /** Requests that can be sent to the daemon. */
+    protected static final String COMPILE_REQUEST = "compile";
+    protected static final String STOP_REQUEST = "stop";
+
+    /** The exit status of javac if the compiler crashed. */
+    protected static final int EXIT_ABNORMAL = 4;
+
+    /** The exit status of javac for invalid command-line arguments. */
+    protected static final int EXIT_CMDERR = 2;
+
+    /** The exit status for requests that do not carry the secret of the daemon. */
+    protected static final int EXIT_UNAUTHORIZED = 3;
+
+    /** How long to wait for a newly started daemon to accept requests. */
+    private static final long START_TIMEOUT_MILLIS = 30000;
+
+    /** The number of random bytes of the secret of a daemon. */
+    private static final int SECRET_LENGTH = 32;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static void main(String[] args) {
+        final int port = Integer.getInteger(PORT_PROPERTY, DEFAULT_PORT);
+
+        if (args.length == 1 && args[0].equals(RUN_DAEMON)) {
+            try {
+                new Daemon(port, getSecretFile(port)).run();
+                System.exit(0);
+            } catch (IOException e) {
+                throw new RuntimeException("Checker daemon failed on port " + port, e);
+            }
+        }
+
+        if (args.length == 1 && args[0].equals(STOP_DAEMON)) {
+            try {
+                sendRequest(port, getSecretFile(port), STOP_REQUEST, null, Collections.<String>emptyList());
+                System.exit(0);
+            } catch (IOException e) {
+                System.err.println("No checker daemon is running on port " + port);
+                System.exit(1);
+            }
+        }
+
+        final File pathToThisJar = new File(findPathTo(CheckerDaemon.class, false));
+        if (args.length == 1 && args[0].equals(START_DAEMON)) {
+            final CheckerDaemon program = new CheckerDaemon(pathToThisJar, new String[0]);
+            System.exit(program.startDaemon(port));
+        }
+
+        final CheckerDaemon program = new CheckerDaemon(pathToThisJar, args);
+        System.exit(program.invokeDaemon(port));
+    }
+
+    public CheckerDaemon(File checkersJar, String[] args) {
+        super(checkersJar, args);
+    }
+
+    /**
+     * @return the file that holds the secret of the daemon listening on
+     *         {@code port}
+     */
+    protected static File getSecretFile(int port) throws IOException {
+        return new File(UserDirectoryUtil.getPrivateDirectory("daemon"), "daemon-" + port + ".secret");
+    }
+
+    /**
+     * Send the compiler arguments to the daemon, or invoke the compiler
+     * directly if no daemon is running.
+     *
+     * @return the exit status of the compiler
+     */
+    protected int invokeDaemon(int port) {
+        Response response;
+        try {
+            response = sendRequest(port, getSecretFile(port), COMPILE_REQUEST,
+                    new File(".").getAbsoluteFile().getParent(), getCompilerArgs());
+        } catch (IOException e) {
+            return invokeCompiler();
+        }
+        System.err.print(response.output);
+        System.err.flush();
+        return response.exitStatus;
+    }
+
+    /**
+     * Start a daemon in a new JVM and wait until it accepts requests.
+     * The output of the daemon is written to a log file in the per-user
+     * directory.
+     *
+     * @return 0 if the daemon was started, 1 otherwise
+     */
+    protected int startDaemon(int port) {
+        List<String> args = new ArrayList<String>();
+        args.add(PluginUtil.getJavaCommand(System.getProperty("java.home"), System.out));
+        args.add("-Xbootclasspath/p:" + PluginUtil.join(File.pathSeparator, runtimeBootClasspath));
+        args.add("-ea");
+        // com.sun.tools needs to be enabled separately
+        args.add("-ea:com.sun.tools...");
+        args.addAll(jvmOpts);
+        args.add("-D" + PORT_PROPERTY + "=" + port);
+        args.add("-classpath");
+        args.add(checkersJar.getAbsolutePath());
+        args.add(CheckerDaemon.class.getName());
+        args.add(RUN_DAEMON);
+
+        File log;
+        try {
+            log = new File(UserDirectoryUtil.getPrivateDirectory("daemon"), "daemon-" + port + ".log");
+            UserDirectoryUtil.createPrivateFile(log);
+            new ProcessBuilder(args).redirectErrorStream(true).redirectOutput(log).start();
+        } catch (IOException e) {
+            throw new RuntimeException("Exception executing command: " + PluginUtil.join(" ", args), e);
+        }
+
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                new Socket(InetAddress.getLoopbackAddress(), port).close();
+                System.out.println("Checker daemon listening on port " + port + ", log: " + log);
+                return 0;
+            } catch (IOException e) {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+            }
+        }
+        System.err.println("Checker daemon did not start; see " + log);
+        return 1;
+    }
+
+    /** The answer of the daemon to a request. */
+    protected static class Response {
+        public final int exitStatus;
+        public final String output;
+
+        public Response(int exitStatus, String output) {
+            this.exitStatus = exitStatus;
+            this.output = output;
+        }
+    }
+
+    /**
+     * Send a request to the daemon listening on {@code port}, authenticated
+     * with the secret stored in {@code secretFile}.
+     *
+     * @throws IOException if no daemon is running
+     */
+    protected static Response sendRequest(int port, File secretFile, String request,
+            String workingDirectory, List<String> args) throws IOException {
+        byte[] secret = Files.readAllBytes(secretFile.toPath());
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(secret.length);
+            out.write(secret);
+            out.writeUTF(request);
+            if (request.equals(COMPILE_REQUEST)) {
+                out.writeUTF(workingDirectory);
+                out.writeInt(args.size());
+                for (String arg : args) {
+                    out.writeUTF(arg);
+                }
+            }
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            int exitStatus = in.readInt();
+            byte[] output = new byte[in.readInt()];
+            in.readFully(output);
+            return new Response(exitStatus, new String(output, UTF8));
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * The daemon, which handles one request at a time.  javac must be on the
+     * boot class path of the JVM that runs the daemon.
+     */
+    protected static class Daemon {
+
+        private final int port;
+
+        /** The file to which the secret of the daemon is written. */
+        private final File secretFile;
+
+        /** The secret that every request must carry. */
+        private final byte[] secret;
+
+        /** The socket of the daemon, once {@link #start} was called. */
+        private ServerSocket server;
+
+        /** The directory the daemon runs in; relative paths are resolved against it. */
+        private final String workingDirectory = new File(".").getAbsoluteFile().getParent();
+
+        public Daemon(int port, File secretFile) {
+            this.port = port;
+            this.secretFile = secretFile;
+            byte[] random = new byte[SECRET_LENGTH];
+            new SecureRandom().nextBytes(random);
+            // The secret is sent as is; hexadecimal digits keep the file readable.
+            StringBuilder hex = new StringBuilder(2 * SECRET_LENGTH);
+            for (byte b : random) {
+                hex.append(String.format("%02x", b & 0xff));
+            }
+            this.secret = hex.toString().getBytes(UTF8);
+        }
+
+        /**
+         * Listen on the port of the daemon and write its secret.  Requests are
+         * accepted once {@link #serve} is called.
+         *
+         * @return the port the daemon listens on, which is chosen by the
+         *         system if the daemon was created with port 0
+         */
+        public int start() throws IOException {
+            server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+            try {
+                UserDirectoryUtil.createPrivateFile(secretFile);
+                Files.write(secretFile.toPath(), secret);
+            } catch (IOException e) {
+                server.close();
+                throw e;
+            }
+            return server.getLocalPort();
+        }
+
+        /** Start the daemon and handle requests until a stop request is received. */
+        public void run() throws IOException {
+            start();
+            System.out.println("Checker daemon listening on port " + server.getLocalPort());
+            serve();
+        }
+
+        /** Handle requests until a stop request is received. */
+        public void serve() throws IOException {
+            try {
+                boolean stop = false;
+                while (!stop) {
+                    Socket socket = server.accept();
+                    try {
+                        DataInputStream in = new DataInputStream(socket.getInputStream());
+                        Response response;
+                        if (!readSecret(in)) {
+                            response = new Response(EXIT_UNAUTHORIZED,
+                                    "The request does not carry the secret of the checker daemon\n");
+                        } else {
+                            String request = in.readUTF();
+                            if (request.equals(COMPILE_REQUEST)) {
+                                String directory = in.readUTF();
+                                List<String> args = new ArrayList<String>();
+                                for (int n = in.readInt(); n > 0; n--) {
+                                    args.add(in.readUTF());
+                                }
+                                response = compile(directory, args);
+                            } else if (request.equals(STOP_REQUEST)) {
+                                response = new Response(0, "");
+                                stop = true;
+                            } else {
+                                response = new Response(EXIT_CMDERR, "Unknown request: " + request + "\n");
+                            }
+                        }
+                        DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                        out.writeInt(response.exitStatus);
+                        byte[] output = response.output.getBytes(UTF8);
+                        out.writeInt(output.length);
+                        out.write(output);
+                        out.flush();
+                    } catch (IOException e) {
+                        System.out.println("Checker daemon: failed request: " + e);
+                    } finally {
+                        socket.close();
+                    }
+                }
+            } finally {
+                server.close();
+                secretFile.delete();
+            }
+        }
+
+        /**
+         * Read the secret sent with a request.
+         *
+         * @return whether the request carries the secret of this daemon
+         */
+        private boolean readSecret(DataInputStream in) throws IOException {
+            int length = in.readInt();
+            if (length != secret.length) {
+                return false;
+            }
+            byte[] received = new byte[length];
+            in.readFully(received);
+            // Compare in constant time, so the secret cannot be guessed byte by byte.
+            return MessageDigest.isEqual(secret, received);
+        }
+
+        /** Compile with the given arguments. */
+        protected Response compile(String directory, List<String> args) {
+            if (!directory.equals(workingDirectory)) {
+                return new Response(EXIT_CMDERR, "The checker daemon runs in " + workingDirectory
+                        + ", but was invoked in " + directory + "\n");
+            }
+
+            List<String> expandedArgs;
+            try {
+                expandedArgs = expandArgFiles(args);
+            } catch (IOException e) {
+                return new Response(EXIT_CMDERR, e.getMessage() + "\n");
+            }
+
+            return runCompiler(expandedArgs);
+        }
+
+        /** Run javac in this JVM, capturing everything it and the checkers print. */
+        protected Response runCompiler(List<String> args) {
+            List<String> options = new ArrayList<String>();
+            List<File> sources = new ArrayList<File>();
+            List<Processor> processors = null;
+            for (int i = 0; i < args.size(); i++) {
+                String arg = args.get(i);
+                if (arg.equals("-processor") && i + 1 < args.size()) {
+                    processors = loadProcessors(args.get(i + 1));
+                    if (processors != null) {
+                        i++;
+                        continue;
+                    }
+                }
+                if (arg.endsWith(".java") && !arg.startsWith("-")) {
+                    sources.add(new File(arg));
+                } else {
+                    options.add(arg);
+                }
+            }
+
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            PrintStream capture = new PrintStream(buffer, true);
+            PrintStream oldOut = System.out;
+            PrintStream oldErr = System.err;
+            System.setOut(capture);
+            System.setErr(capture);
+            int exitStatus;
+            try {
+                JavacTool tool = JavacTool.create();
+                StandardJavaFileManager fileManager = tool.getStandardFileManager(null, null, null);
+                try {
+                    Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(sources);
+                    PrintWriter writer = new PrintWriter(capture, true);
+                    JavacTask task = tool.getTask(writer, fileManager, null, options, null, units);
+                    if (processors != null) {
+                        task.setProcessors(processors);
+                    }
+                    exitStatus = task.call() ? 0 : 1;
+                    writer.flush();
+                } finally {
+                    fileManager.close();
+                }
+            } catch (IllegalArgumentException e) {
+                capture.println("javac: " + e.getMessage());
+                exitStatus = EXIT_CMDERR;
+            } catch (Throwable t) {
+                t.printStackTrace(capture);
+                exitStatus = EXIT_ABNORMAL;
+            } finally {
+                System.setOut(oldOut);
+                System.setErr(oldErr);
+                // Static caches hold elements of this compilation.
+                AnnotationUtils.clear();
+                AnnotatedTypes.clearCaches();
+            }
+            capture.flush();
+            return new Response(exitStatus, new String(buffer.toByteArray(), UTF8));
+        }
+
+        /**
+         * Instantiate the comma-separated annotation processors with the class
+         * loader of the daemon, such that their classes stay loaded between
+         * compilations.
+         *
+         * @return the processors, or null if one of them could not be loaded
+         *         by the daemon (then javac loads them from the processor path)
+         */
+        private List<Processor> loadProcessors(String names) {
+            List<Processor> processors = new ArrayList<Processor>();
+            for (String name : names.split(",")) {
+                try {
+                    Class<? extends Processor> cls = Class.forName(name.trim(), true,
+                            CheckerDaemon.class.getClassLoader()).asSubclass(Processor.class);
+                    processors.add(cls.newInstance());
+                } catch (Exception e) {
+                    return null;
+                }
+            }
+            return processors;
+        }
+
+        /** Replace arguments of the form @file by the arguments in the file. */
+        private static List<String> expandArgFiles(List<String> args) throws IOException {
+            List<String> expanded = new ArrayList<String>(args.size());
+            for (String arg : args) {
+                if (arg.startsWith("@")) {
+                    expanded.addAll(PluginUtil.readArgFile(new File(arg.substring(1))));
+                } else {
+                    expanded.add(arg);
+                }
+            }
+            return expanded;
+        }
+    }
+}
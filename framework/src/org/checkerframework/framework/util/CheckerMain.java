@@ -48,17 +48,17 @@ public class CheckerMain {
     protected final File checkersJar;
 
 
-    private final List<String> compilationBootclasspath;
+    protected final List<String> compilationBootclasspath;
 
-    private final List<String> runtimeBootClasspath;
+    protected final List<String> runtimeBootClasspath;
 
-    private final List<String> jvmOpts;
+    protected final List<String> jvmOpts;
 
-    private final List<String> cpOpts;
+    protected final List<String> cpOpts;
 
-    private final List<String> toolOpts;
+    protected final List<String> toolOpts;
 
-    private final List<File> argListFiles;
+    protected final List<File> argListFiles;
 
     /**
      * Construct all the relevant file locations and java version given the path to this jar and
@@ -327,6 +327,23 @@ public class CheckerMain {
         return ExecUtil.execute(args.toArray(new String[args.size()]), System.out, System.err);
     }
 
+    /**
+     * @return The arguments passed to the JSR308 Type Annotations Compiler by
+     *         {@link #invokeCompiler}, without the arguments for the JVM that runs it
+     */
+    protected List<String> getCompilerArgs() {
+        List<String> args = new ArrayList<String>(cpOpts.size() + toolOpts.size() + 3);
+        args.add("-Xbootclasspath/p:" + PluginUtil.join(File.pathSeparator, compilationBootclasspath));
+
+        if (!argsListHasClassPath(argListFiles)) {
+            args.add("-classpath");
+            args.add(PluginUtil.join(File.pathSeparator, cpOpts));
+        }
+
+        args.addAll(toolOpts);
+        return args;
+    }
+
     private static boolean argsListHasClassPath(final List<File> argListFiles) {
         for (final String arg : expandArgs(argListFiles)) {
             if (arg.contains("-classpath ") || arg.contains("-cp ")) {
@@ -0,0 +1,396 @@
+package org.checkerframework.framework.util;
+
+/*>>>
+import org.checkerframework.checker.nullness.qual.Nullable;
+*/
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records where a checker spends its time, for the "profile" option.
+ *
+ * <p>
+ *
+ * The profiler records the wall time and the allocated bytes of every
+ * compilation unit, every class passed to
+ * {@link org.checkerframework.framework.source.SourceChecker#typeProcess},
+ * and every method analyzed by the dataflow analysis; each includes
+ * everything that happens while it is checked.  In addition, it records the
+ * time of each phase, such as stub parsing or dataflow analysis, exclusive
+ * of the nested phases: when a phase is entered, the enclosing phase is
+ * suspended until the nested phase is exited.
+ *
+ * <p>
+ *
+ * The option value is the output file.  If it ends with ".csv", the
+ * records are written as comma-separated values, otherwise as JSON.  The
+ * records are sorted by checker, kind, and name, so that the outputs of two
+ * builds can be compared with diff.  All checkers of a compilation that
+ * write to the same file share their records.
+ */
+public class CheckerProfiler {
+
+    /** The kind of records of compilation units. */
+    public static final String COMPILATION_UNIT = "compilationUnit";
+
+    /** The kind of records of classes. */
+    public static final String CLASS = "class";
+
+    /** The kind of records of methods. */
+    public static final String METHOD = "method";
+
+    /** The kind of records of phases. */
+    public static final String PHASE = "phase";
+
+    /** The phase of reading stub files. */
+    public static final String STUBS = "stubs";
+
+    /** The phase of the tree and type annotators. */
+    public static final String TREE_ANNOTATION = "treeAnnotation";
+
+    /** The phase of applying defaults. */
+    public static final String DEFAULTS = "defaults";
+
+    /** The phase of the dataflow analysis. */
+    public static final String DATAFLOW = "dataflow";
+
+    /** The phase of the visitor, i.e. the checks themselves. */
+    public static final String VISITOR = "visitor";
+
+    /** A profiler that records nothing, used unless the "profile" option is given. */
+    private static final CheckerProfiler DISABLED = new CheckerProfiler(null, null, null);
+
+    /**
+     * The records of each output file, for each compilation; all checkers of
+     * a compilation that write to a file share them.  The records are
+     * released with the compilation.
+     */
+    private static final Map<Object, Map<String, ConcurrentMap<List<String>, Record>>> RECORDS =
+            new WeakHashMap<Object, Map<String, ConcurrentMap<List<String>, Record>>>();
+
+    /**
+     * The phases the current thread is in, innermost first.  Shared by all
+     * profilers, so that the time of a checker that runs within another is
+     * not counted twice.
+     */
+    private static final ThreadLocal<Deque<Frame>> PHASES = new ThreadLocal<Deque<Frame>>() {
+        @Override
+        protected Deque<Frame> initialValue() {
+            return new ArrayDeque<Frame>();
+        }
+    };
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The method getThreadAllocatedBytes(long) of
+     * com.sun.management.ThreadMXBean, or null if the JVM does not have that
+     * interface or does not measure allocation.  It is looked up reflectively
+     * because that interface is not part of the Java platform.
+     */
+    private static final /*@Nullable*/ Method GET_THREAD_ALLOCATED_BYTES = getThreadAllocatedBytesMethod();
+
+    /** The name of the checker, or null if this profiler is disabled. */
+    private final /*@Nullable*/ String checkerName;
+
+    /** The output file, or null if this profiler is disabled. */
+    private final /*@Nullable*/ String file;
+
+    /** The records of {@link #file}, or null if this profiler is disabled. */
+    private final /*@Nullable*/ ConcurrentMap<List<String>, Record> records;
+
+    private CheckerProfiler(/*@Nullable*/ String checkerName, /*@Nullable*/ String file,
+            /*@Nullable*/ Object compilation) {
+        this.checkerName = checkerName;
+        this.file = file;
+        if (file == null) {
+            this.records = null;
+        } else {
+            synchronized (RECORDS) {
+                Map<String, ConcurrentMap<List<String>, Record>> files = RECORDS.get(compilation);
+                if (files == null) {
+                    files = new HashMap<String, ConcurrentMap<List<String>, Record>>();
+                    RECORDS.put(compilation, files);
+                }
+                ConcurrentMap<List<String>, Record> shared = files.get(file);
+                if (shared == null) {
+                    shared = new ConcurrentHashMap<List<String>, Record>();
+                    files.put(file, shared);
+                }
+                this.records = shared;
+            }
+        }
+    }
+
+    /**
+     * @param checkerName the name of the checker, used in the records
+     * @param file the output file given by the "profile" option, or null
+     * @param compilation an object that identifies the compilation, such as
+     *        its processing environment; profilers of the same compilation
+     *        and file share their records
+     * @return a profiler that writes to {@code file}, or one that records
+     *         nothing if {@code file} is null
+     */
+    public static CheckerProfiler create(String checkerName, /*@Nullable*/ String file,
+            Object compilation) {
+        if (file == null) {
+            return DISABLED;
+        }
+        if (file.isEmpty()) {
+            file = "checker-profile.json";
+        }
+        return new CheckerProfiler(checkerName, file, compilation);
+    }
+
+    /** @return true if this profiler records anything */
+    public boolean isEnabled() {
+        return records != null;
+    }
+
+    /** The start of a measurement, see {@link #start} and {@link #stop}. */
+    public static final class Measurement {
+        final long nanos;
+        final long bytes;
+
+        Measurement(long nanos, long bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+    }
+
+    /** The accumulated measurements of a compilation unit, class, method, or phase. */
+    private static final class Record {
+        long count;
+        long nanos;
+        long bytes;
+
+        synchronized void add(long count, long nanos, long bytes) {
+            this.count += count;
+            this.nanos += nanos;
+            this.bytes += bytes;
+        }
+    }
+
+    /** A phase that the current thread is in. */
+    private static final class Frame {
+        final CheckerProfiler profiler;
+        final String phase;
+
+        /** When the phase was entered or last resumed. */
+        long nanos;
+        long bytes;
+
+        Frame(CheckerProfiler profiler, String phase, long nanos, long bytes) {
+            this.profiler = profiler;
+            this.phase = phase;
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Starts measuring a compilation unit, class, or method; the
+     * measurement is recorded by {@link #stop}.
+     *
+     * @return the start of the measurement, or null if this profiler is disabled
+     */
+    public /*@Nullable*/ Measurement start() {
+        if (records == null) {
+            return null;
+        }
+        return new Measurement(System.nanoTime(), allocatedBytes());
+    }
+
+    /**
+     * Records the time and allocation since {@code start} under the given
+     * kind and name.  Does nothing if {@code start} is null.
+     */
+    public void stop(/*@Nullable*/ Measurement start, String kind, String name) {
+        if (start == null) {
+            return;
+        }
+        record(kind, name, 1, System.nanoTime() - start.nanos,
+                allocatedBytes() - start.bytes);
+    }
+
+    /**
+     * Enters a phase, suspending the phase that the current thread is in.
+     * Every call must be followed by a call of {@link #exitPhase}, usually
+     * in a finally block.
+     */
+    public void enterPhase(String phase) {
+        if (records == null) {
+            return;
+        }
+        long nanos = System.nanoTime();
+        long bytes = allocatedBytes();
+        Deque<Frame> phases = PHASES.get();
+        Frame outer = phases.peek();
+        if (outer != null) {
+            outer.profiler.record(PHASE, outer.phase, 0, nanos - outer.nanos, bytes - outer.bytes);
+        }
+        phases.push(new Frame(this, phase, nanos, bytes));
+    }
+
+    /** Exits the phase entered last, resuming the phase it suspended. */
+    public void exitPhase() {
+        if (records == null) {
+            return;
+        }
+        long nanos = System.nanoTime();
+        long bytes = allocatedBytes();
+        Deque<Frame> phases = PHASES.get();
+        Frame inner = phases.pop();
+        inner.profiler.record(PHASE, inner.phase, 1, nanos - inner.nanos, bytes - inner.bytes);
+        Frame outer = phases.peek();
+        if (outer != null) {
+            outer.nanos = nanos;
+            outer.bytes = bytes;
+        }
+    }
+
+    private void record(String kind, String name, long count, long nanos, long bytes) {
+        List<String> key = Arrays.asList(checkerName, kind, name);
+        Record record = records.get(key);
+        if (record == null) {
+            Record created = new Record();
+            record = records.putIfAbsent(key, created);
+            if (record == null) {
+                record = created;
+            }
+        }
+        record.add(count, nanos, bytes);
+    }
+
+    /**
+     * @return the number of bytes allocated by the current thread so far, or
+     *         0 if the JVM does not measure it
+     */
+    private static long allocatedBytes() {
+        if (GET_THREAD_ALLOCATED_BYTES == null) {
+            return 0;
+        }
+        try {
+            return (Long) GET_THREAD_ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException e) {
+            return 0;
+        }
+    }
+
+    private static /*@Nullable*/ Method getThreadAllocatedBytesMethod() {
+        try {
+            Class<?> threads = Class.forName("com.sun.management.ThreadMXBean");
+            if (!threads.isInstance(THREADS)
+                    || !(Boolean) threads.getMethod("isThreadAllocatedMemorySupported").invoke(THREADS)
+                    || !(Boolean) threads.getMethod("isThreadAllocatedMemoryEnabled").invoke(THREADS)) {
+                return null;
+            }
+            return threads.getMethod("getThreadAllocatedBytes", long.class);
+        } catch (ReflectiveOperationException | SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the records of all checkers that use the output file of this
+     * profiler, replacing the previous contents of the file.
+     */
+    public void write() throws IOException {
+        if (records == null) {
+            return;
+        }
+        List<List<String>> keys = new ArrayList<List<String>>(records.keySet());
+        Collections.sort(keys, new Comparator<List<String>>() {
+            @Override
+            public int compare(List<String> a, List<String> b) {
+                for (int i = 0; i < a.size(); i++) {
+                    int c = a.get(i).compareTo(b.get(i));
+                    if (c != 0) {
+                        return c;
+                    }
+                }
+                return 0;
+            }
+        });
+        Map<List<String>, long[]> values = new HashMap<List<String>, long[]>();
+        for (List<String> key : keys) {
+            Record record = records.get(key);
+            synchronized (record) {
+                values.put(key, new long[] { record.count, record.nanos, record.bytes });
+            }
+        }
+
+        boolean csv = file.endsWith(".csv");
+        PrintWriter out = new PrintWriter(new FileWriter(new File(file)));
+        try {
+            if (csv) {
+                out.println("checker,kind,name,count,wallNanos,allocatedBytes");
+            } else {
+                out.println("{");
+                out.println("  \"records\": [");
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                List<String> key = keys.get(i);
+                long[] v = values.get(key);
+                if (csv) {
+                    out.println(csvString(key.get(0)) + "," + key.get(1) + "," + csvString(key.get(2)) +
+                            "," + v[0] + "," + v[1] + "," + v[2]);
+                } else {
+                    out.println("    {\"checker\": " + jsonString(key.get(0)) +
+                            ", \"kind\": " + jsonString(key.get(1)) +
+                            ", \"name\": " + jsonString(key.get(2)) +
+                            ", \"count\": " + v[0] +
+                            ", \"wallNanos\": " + v[1] +
+                            ", \"allocatedBytes\": " + v[2] + "}" +
+                            (i < keys.size() - 1 ? "," : ""));
+                }
+            }
+            if (!csv) {
+                out.println("  ]");
+                out.println("}");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String csvString(String s) {
+        if (s.indexOf(',') < 0 && s.indexOf('"') < 0) {
+            return s;
+        }
+        return "\"" + s.replace("\"", "\"\"") + "\"";
+    }
+
+    private static String jsonString(String s) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
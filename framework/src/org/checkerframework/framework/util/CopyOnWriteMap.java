@@ -0,0 +1,117 @@
+package org.checkerframework.framework.util;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A hash map whose copies share their contents until one of them is
+ * modified.
+ *
+ * <p>
+ *
+ * Copying a map (see {@link #CopyOnWriteMap(CopyOnWriteMap)}) takes
+ * constant time.  The first modification of a map whose contents are
+ * shared copies the contents.  Maps that still share their contents can be
+ * recognized by {@link #sharesContentsWith}, which allows comparisons to
+ * skip them.
+ *
+ * <p>
+ *
+ * The entry set, key set, and values of this map are read-only; modify the
+ * map through {@link #put}, {@link #remove}, and {@link #clear}.
+ *
+ * @see org.checkerframework.framework.flow.CFAbstractStore
+ */
+public class CopyOnWriteMap<K, V> extends AbstractMap<K, V> {
+
+    /** The contents of this map, possibly shared with other maps. */
+    private Map<K, V> contents;
+
+    /** Might {@link #contents} be shared with another map? */
+    private boolean shared;
+
+    /** Creates an empty map. */
+    public CopyOnWriteMap() {
+        contents = new HashMap<>();
+        shared = false;
+    }
+
+    /** Creates a copy of {@code other} in constant time. */
+    public CopyOnWriteMap(CopyOnWriteMap<K, V> other) {
+        contents = other.contents;
+        shared = true;
+        other.shared = true;
+    }
+
+    /**
+     * @return true if this map and {@code other} have the same contents
+     *         because neither has been modified since they were copied
+     */
+    public boolean sharesContentsWith(CopyOnWriteMap<?, ?> other) {
+        return contents == other.contents;
+    }
+
+    /** Ensure that {@link #contents} is not shared, so that it can be modified. */
+    private Map<K, V> mutableContents() {
+        if (shared) {
+            contents = new HashMap<>(contents);
+            shared = false;
+        }
+        return contents;
+    }
+
+    @Override
+    public int size() {
+        return contents.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return contents.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return contents.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        return contents.get(key);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return mutableContents().put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (!contents.containsKey(key)) {
+            return null;
+        }
+        return mutableContents().remove(key);
+    }
+
+    @Override
+    public void clear() {
+        if (contents.isEmpty()) {
+            return;
+        }
+        if (shared) {
+            // No need to copy contents that are discarded anyway.
+            contents = new HashMap<>();
+            shared = false;
+        } else {
+            contents.clear();
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return Collections.unmodifiableMap(contents).entrySet();
+    }
+}
@@ -6,8 +6,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 import javax.annotation.processing.ProcessingEnvironment;
 import javax.lang.model.element.Element;
@@ -54,48 +53,21 @@ import com.sun.tools.javac.code.Type.ClassType;
  * Java expression. Such expressions can be found in annotations (e.g., to
  * specify a pre- or postcondition).
  *
+ * <p>
+ *
+ * The same contract strings are parsed over and over again, once for each
+ * use of a method.  The result of parsing only depends on the expression,
+ * the types of the receiver and the arguments of the context, and the scope
+ * in which names are resolved.  Therefore {@link #parse} parses an
+ * expression once for each such shape of a context, with placeholders in
+ * place of the receiver and the arguments, and caches the result in the
+ * {@link AnnotatedTypeFactory#getFlowExpressionCache() factory}.  Later
+ * uses only substitute the actual receiver and arguments.
+ *
  * @author Stefan Heule
  */
 public class FlowExpressionParseUtil {
 
-    /** Regular expression for an identifier */
-    protected static final String identifierRegex = "[a-zA-Z_$][a-zA-Z_$0-9]*";
-    /** Matches a parameter */
-    protected static final Pattern parameterPattern = Pattern
-            .compile("^#([1-9]+[0-9]*)$");
-    /** Finds all parameters */
-    protected static final Pattern parametersPattern = Pattern
-            .compile("#([1-9]+[0-9]*)");
-    /**
-     * Matches the self reference. In the future we could allow "#0" as a
-     * synonym for "this".
-     */
-    protected static final Pattern selfPattern = Pattern.compile("^(this)$");
-    /** Matches 'super' */
-    protected static final Pattern superPattern = Pattern.compile("^(super)$");
-    /** Matches an identifier */
-    protected static final Pattern identifierPattern = Pattern.compile("^"
-            + identifierRegex + "$");
-    /** Matches a method call */
-    protected static final Pattern methodPattern = Pattern.compile("^("
-            + identifierRegex + ")\\((.*)\\)$");
-    /** Matches an array access */
-    protected static final Pattern arrayPattern = Pattern.compile("^(.*)\\[(.*)\\]$");
-    /** Matches a field access */
-    protected static final Pattern dotPattern = Pattern
-            .compile("^([^.]+)\\.(.+)$");
-    /** Matches integer literals */
-    protected static final Pattern intPattern = Pattern
-            .compile("^([1-9][0-9]*)$");
-    /** Matches long literals */
-    protected static final Pattern longPattern = Pattern
-            .compile("^([1-9][0-9]*L)$");
-    /** Matches string literals */
-    protected static final Pattern stringPattern = Pattern
-            .compile("^(\"([^\"\\\\]|\\\\.)*\")$");
-    /** Matches the null literal */
-    protected static final Pattern nullPattern = Pattern.compile("^(null)$");
-
     /**
      * Parse a string and return its representation as a {@link Receiver}, or
      * throw an {@link FlowExpressionParseException}. The expression is assumed
@@ -112,9 +84,44 @@ public class FlowExpressionParseUtil {
     public static FlowExpressions. /*@Nullable*/ Receiver parse(String s,
             FlowExpressionContext context, TreePath path)
             throws FlowExpressionParseException {
-        Receiver result = parse(s, context, path, true, true, true, true, true, true,
-                true);
-        return result;
+        AnnotatedTypeFactory factory = context.atypeFactory;
+        if (!factory.shouldCache || context.receiver == null
+                || context.outerReceiver == null) {
+            return parse(s, context, path, true, true, true, true, true, true,
+                    true);
+        }
+        Map<List<Object>, Receiver> cache = factory.getFlowExpressionCache();
+        List<Object> key = cacheKey(s, context, path);
+        Receiver template = cache.get(key);
+        if (template == null) {
+            template = parse(s, Placeholder.contextShape(context), path, true,
+                    true, true, true, true, true, true);
+            cache.put(key, template);
+        }
+        return Placeholder.substitute(template, context);
+    }
+
+    /**
+     * @return the key of the expression {@code s} in the cache of parsed
+     *         expressions: the expression, the types in the context, and the
+     *         innermost method or class that encloses {@code path}, which
+     *         determines how names are resolved
+     */
+    private static List<Object> cacheKey(String s,
+            FlowExpressionContext context, TreePath path) {
+        List<Object> key = new ArrayList<>(context.arguments.size() + 4);
+        key.add(s);
+        key.add(context.receiver.getType().toString());
+        key.add(context.outerReceiver.getType().toString());
+        for (Receiver argument : context.arguments) {
+            key.add(argument.getType().toString());
+        }
+        Tree scope = TreeUtils.enclosingMethod(path);
+        if (scope == null) {
+            scope = TreeUtils.enclosingClass(path);
+        }
+        key.add(scope);
+        return key;
     }
 
     /**
@@ -128,38 +135,26 @@ public class FlowExpressionParseUtil {
             throws FlowExpressionParseException {
         s = s.trim();
 
-        Matcher identifierMatcher = identifierPattern.matcher(s);
-        Matcher selfMatcher = selfPattern.matcher(s);
-        Matcher superMatcher = superPattern.matcher(s);
-        Matcher parameterMatcher = parameterPattern.matcher(s);
-        Matcher methodMatcher = methodPattern.matcher(s);
-        Matcher arraymatcher = arrayPattern.matcher(s);
-        Matcher dotMatcher = dotPattern.matcher(s);
-        Matcher intMatcher = intPattern.matcher(s);
-        Matcher longMatcher = longPattern.matcher(s);
-        Matcher stringMatcher = stringPattern.matcher(s);
-        Matcher nullMatcher = nullPattern.matcher(s);
-
         ProcessingEnvironment env = context.atypeFactory.getProcessingEnv();
         Types types = env.getTypeUtils();
 
-        if (intMatcher.matches() && allowLiterals) {
+        if (allowLiterals && isIntLiteral(s)) {
             int val = Integer.parseInt(s);
             return new ValueLiteral(types.getPrimitiveType(TypeKind.INT), val);
-        } else if (nullMatcher.matches() && allowLiterals) {
+        } else if (allowLiterals && s.equals("null")) {
             return new ValueLiteral(types.getNullType(), (Object) null);
-        } else if (longMatcher.matches() && allowLiterals) {
+        } else if (allowLiterals && isLongLiteral(s)) {
             long val = Long.parseLong(s.substring(0, s.length() - 1));
             return new ValueLiteral(types.getPrimitiveType(TypeKind.LONG), val);
-        } else if (stringMatcher.matches() && allowLiterals) {
+        } else if (allowLiterals && isStringLiteral(s)) {
             TypeElement stringTypeElem = env.getElementUtils().getTypeElement(
                     "java.lang.String");
             return new ValueLiteral(types.getDeclaredType(stringTypeElem),
                     s.substring(1, s.length() - 1));
-        } else if (selfMatcher.matches() && allowSelf) {
+        } else if (allowSelf && s.equals("this")) {
             // this literal
             return new ThisReference(context.receiver.getType());
-        } else if (superMatcher.matches() && allowSelf) {
+        } else if (allowSelf && s.equals("super")) {
             // super literal
             List<? extends TypeMirror> superTypes = types
                     .directSupertypes(context.receiver.getType());
@@ -180,7 +175,7 @@ public class FlowExpressionParseUtil {
                 throw constructParserException(s);
             }
             return new ThisReference(superType);
-        } else if (identifierMatcher.matches() && allowIdentifier) {
+        } else if (allowIdentifier && identifierEnd(s) == s.length()) {
             Resolver resolver = new Resolver(env);
             try {
                 // field access
@@ -223,26 +218,32 @@ public class FlowExpressionParseUtil {
                     throw constructParserException(s);
                 }
             }
-        } else if (parameterMatcher.matches() && allowParameter) {
+        } else if (allowParameter && isParameter(s)) {
             // parameter syntax
-            int idx = -1;
+            int idx;
             try {
-                idx = Integer.parseInt(parameterMatcher.group(1));
+                idx = Integer.parseInt(s.substring(1));
             } catch (NumberFormatException e) {
-                // cannot occur by the way the pattern is defined (matches only
-                // numbers)
-                assert false;
+                // too many digits
+                throw constructParserException(s);
             }
             if (idx > context.arguments.size()) {
                 throw new FlowExpressionParseException(Result.failure(
                         "flowexpr.parse.index.too.big", Integer.toString(idx)));
             }
             return context.arguments.get(idx - 1);
-        } else if (arraymatcher.matches() && allowArrays) {
-            String receiverStr = arraymatcher.group(1);
-            String indexStr = arraymatcher.group(2);
-            Receiver receiver = parse(receiverStr, context, path);
-            Receiver index = parse(indexStr, context, path);
+        }
+
+        // array accesses, method calls, and field accesses
+        Structure structure = Structure.scan(s);
+        if (allowArrays && structure.group >= 0
+                && s.charAt(structure.group) == '[') {
+            String receiverStr = s.substring(0, structure.group);
+            String indexStr = s.substring(structure.group + 1, s.length() - 1);
+            Receiver receiver = parse(receiverStr, context, path, true, true,
+                    true, true, true, true, true);
+            Receiver index = parse(indexStr, context, path, true, true, true,
+                    true, true, true, true);
             TypeMirror receiverType = receiver.getType();
             if (!(receiverType instanceof ArrayType)) {
                 throw constructParserException(s);
@@ -251,11 +252,14 @@ public class FlowExpressionParseUtil {
                     .getComponentType();
             ArrayAccess result = new ArrayAccess(componentType, receiver, index);
             return result;
-        } else if (methodMatcher.matches() && allowMethods) {
-            String methodName = methodMatcher.group(1);
+        } else if (allowMethods && structure.group > 0
+                && s.charAt(structure.group) == '('
+                && identifierEnd(s) == structure.group) {
+            String methodName = s.substring(0, structure.group);
 
             // parse parameter list
-            String parameterList = methodMatcher.group(2);
+            String parameterList = s.substring(structure.group + 1,
+                    s.length() - 1);
             List<Receiver> parameters = ParameterListParser.parseParameterList(
                     parameterList, true, context.useOuterReceiver(), path);
 
@@ -325,12 +329,14 @@ public class FlowExpressionParseUtil {
                 return new PureMethodCall(methodType, methodElement,
                         context.receiver, parameters);
             }
-        } else if (dotMatcher.matches() && allowDot) {
-            String receiverString = dotMatcher.group(1);
-            String remainingString = dotMatcher.group(2);
+        } else if (allowDot && structure.dot > 0
+                && structure.dot < s.length() - 1) {
+            String receiverString = s.substring(0, structure.dot);
+            String remainingString = s.substring(structure.dot + 1);
 
             // Parse the receiver first.
-            Receiver receiver = parse(receiverString, context, path);
+            Receiver receiver = parse(receiverString, context, path, true,
+                    true, true, true, true, true, true);
 
             // Parse the rest, with a new receiver.
             FlowExpressionContext newContext = context.changeReceiver(receiver);
@@ -341,6 +347,159 @@ public class FlowExpressionParseUtil {
         }
     }
 
+    /**
+     * @return the length of the longest prefix of {@code s} that is an
+     *         identifier, or 0 if {@code s} does not start with an identifier
+     */
+    private static int identifierEnd(String s) {
+        if (s.isEmpty() || !isIdentifierStart(s.charAt(0))) {
+            return 0;
+        }
+        int end = 1;
+        while (end < s.length() && (isIdentifierStart(s.charAt(end))
+                || isDigit(s.charAt(end)))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isIdentifierStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_'
+                || c == '$';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return true if {@code s.substring(start, end)} is a positive decimal
+     *         number without leading zeros
+     */
+    private static boolean isPositiveNumber(String s, int start, int end) {
+        if (start >= end || s.charAt(start) == '0') {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (!isDigit(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIntLiteral(String s) {
+        return isPositiveNumber(s, 0, s.length());
+    }
+
+    private static boolean isLongLiteral(String s) {
+        return s.endsWith("L") && isPositiveNumber(s, 0, s.length() - 1);
+    }
+
+    /** @return true if {@code s} is a parameter, such as {@code #1} */
+    private static boolean isParameter(String s) {
+        return s.startsWith("#") && isPositiveNumber(s, 1, s.length());
+    }
+
+    /**
+     * @return true if {@code s} is a string literal, in which any character
+     *         may be escaped with a backslash
+     */
+    private static boolean isStringLiteral(String s) {
+        if (s.length() < 2 || s.charAt(0) != '"'
+                || s.charAt(s.length() - 1) != '"') {
+            return false;
+        }
+        for (int i = 1; i < s.length() - 1; i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                return false;
+            } else if (c == '\\') {
+                // skip the escaped character, which must not be the
+                // closing quote
+                i++;
+                if (i == s.length() - 1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The top-level structure of an expression string, i.e. the positions of
+     * the characters that are not nested in parentheses, brackets, or string
+     * literals and that determine whether the expression is an array access,
+     * a method call, or a field access.
+     */
+    private static class Structure {
+        /**
+         * The index of the first top-level '.', or -1.
+         */
+        int dot = -1;
+
+        /**
+         * The index of the top-level '(' or '[' that is closed by the last
+         * character of the string, or -1 if there is no such character.
+         */
+        int group = -1;
+
+        /**
+         * Scan {@code s} once and determine its top-level structure.
+         * Unbalanced parentheses or brackets end the scan.
+         */
+        static Structure scan(String s) {
+            Structure result = new Structure();
+            // the opening parentheses and brackets that are not closed yet
+            StringBuilder open = new StringBuilder();
+            int groupStart = -1;
+            boolean inString = false;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (inString) {
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                    continue;
+                }
+                switch (c) {
+                case '"':
+                    inString = true;
+                    break;
+                case '.':
+                    if (open.length() == 0 && result.dot < 0) {
+                        result.dot = i;
+                    }
+                    break;
+                case '(':
+                case '[':
+                    if (open.length() == 0) {
+                        groupStart = i;
+                    }
+                    open.append(c);
+                    break;
+                case ')':
+                case ']':
+                    int depth = open.length();
+                    if (depth == 0
+                            || open.charAt(depth - 1) != (c == ')' ? '(' : '[')) {
+                        return result;
+                    }
+                    open.setLength(depth - 1);
+                    if (depth == 1 && i == s.length() - 1) {
+                        result.group = groupStart;
+                    }
+                    break;
+                default:
+                    break;
+                }
+            }
+            return result;
+        }
+    }
+
     /**
      * Returns a {@link FlowExpressionParseException} for the string {@code s}.
      */
@@ -457,9 +616,111 @@ public class FlowExpressionParseUtil {
                 }
             } else {
                 result.add(parse(parameterString.substring(0, idx), context,
-                        path));
+                        path, true, true, true, true, true, true, true));
+            }
+        }
+    }
+
+    /**
+     * Stands for the receiver, the outer receiver, or an argument of a
+     * {@link FlowExpressionContext} in a parsed expression that is cached.
+     * Placeholders never leave this class; {@link #substitute} replaces them
+     * by the receivers of an actual context.
+     */
+    private static class Placeholder extends Receiver {
+        /** The index of {@link FlowExpressionContext#receiver}. */
+        static final int RECEIVER = -1;
+        /** The index of {@link FlowExpressionContext#outerReceiver}. */
+        static final int OUTER_RECEIVER = -2;
+
+        /** The index of the argument, or {@link #RECEIVER} or {@link #OUTER_RECEIVER}. */
+        final int index;
+
+        Placeholder(TypeMirror type, int index) {
+            super(type);
+            this.index = index;
+        }
+
+        /**
+         * @return a context of the same shape as {@code context}, whose
+         *         receivers and arguments are placeholders of the same types
+         */
+        static FlowExpressionContext contextShape(FlowExpressionContext context) {
+            List<Receiver> arguments = new ArrayList<>(context.arguments.size());
+            for (int i = 0; i < context.arguments.size(); i++) {
+                arguments.add(new Placeholder(context.arguments.get(i).getType(), i));
+            }
+            return new FlowExpressionContext(
+                    new Placeholder(context.receiver.getType(), RECEIVER),
+                    new Placeholder(context.outerReceiver.getType(), OUTER_RECEIVER),
+                    arguments, context.atypeFactory);
+        }
+
+        /**
+         * @return {@code template} with its placeholders replaced by the
+         *         receivers and arguments of {@code context}; parts without
+         *         placeholders are shared with the template
+         */
+        static Receiver substitute(Receiver template, FlowExpressionContext context) {
+            if (template instanceof Placeholder) {
+                int index = ((Placeholder) template).index;
+                if (index == RECEIVER) {
+                    return context.receiver;
+                } else if (index == OUTER_RECEIVER) {
+                    return context.outerReceiver;
+                } else {
+                    return context.arguments.get(index);
+                }
+            } else if (template instanceof FieldAccess) {
+                FieldAccess fa = (FieldAccess) template;
+                Receiver receiver = substitute(fa.getReceiver(), context);
+                if (receiver == fa.getReceiver()) {
+                    return fa;
+                }
+                return new FieldAccess(receiver, fa.getType(), fa.getField());
+            } else if (template instanceof ArrayAccess) {
+                ArrayAccess aa = (ArrayAccess) template;
+                Receiver receiver = substitute(aa.getReceiver(), context);
+                Receiver index = substitute(aa.getIndex(), context);
+                if (receiver == aa.getReceiver() && index == aa.getIndex()) {
+                    return aa;
+                }
+                return new ArrayAccess(aa.getType(), receiver, index);
+            } else if (template instanceof PureMethodCall) {
+                PureMethodCall mc = (PureMethodCall) template;
+                Receiver receiver = substitute(mc.getReceiver(), context);
+                boolean changed = receiver != mc.getReceiver();
+                List<Receiver> parameters = new ArrayList<>(mc.getParameters().size());
+                for (Receiver p : mc.getParameters()) {
+                    Receiver actual = substitute(p, context);
+                    changed |= actual != p;
+                    parameters.add(actual);
+                }
+                if (!changed) {
+                    return mc;
+                }
+                return new PureMethodCall(mc.getType(), mc.getElement(),
+                        receiver, parameters);
+            } else {
+                // literals, class names, and self references
+                return template;
             }
         }
+
+        @Override
+        public boolean containsOfClass(Class<? extends Receiver> clazz) {
+            return getClass().equals(clazz);
+        }
+
+        @Override
+        public boolean isUnmodifiableByOtherCode() {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "<placeholder " + index + ">";
+        }
     }
 
     /**
@@ -514,10 +775,14 @@ public class FlowExpressionParseUtil {
      */
     public static List<Integer> parameterIndices(String s) {
         List<Integer> result = new ArrayList<>();
-        Matcher matcher = parametersPattern.matcher(s);
-        while (matcher.find()) {
-            int idx = Integer.parseInt(matcher.group(1));
-            result.add(idx);
+        for (int i = s.indexOf('#'); i >= 0; i = s.indexOf('#', i + 1)) {
+            int end = i + 1;
+            while (end < s.length() && isDigit(s.charAt(end))) {
+                end++;
+            }
+            if (isPositiveNumber(s, i + 1, end)) {
+                result.add(Integer.parseInt(s.substring(i + 1, end)));
+            }
         }
         return result;
     }
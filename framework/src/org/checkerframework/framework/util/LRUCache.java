@@ -0,0 +1,193 @@
+package org.checkerframework.framework.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least-recently-used cache that bounds the total weight of its entries
+ * and records hit, miss, and eviction counts.
+ *
+ * <p>
+ *
+ * The weight of each entry is determined by a {@link Weigher}; by default
+ * every entry has weight 1, in which case the maximum weight is simply the
+ * maximum number of entries.  When an insertion makes the total weight
+ * exceed the maximum, the least-recently-accessed entries are evicted until
+ * the cache fits again.
+ *
+ * <p>
+ *
+ * Only {@link #get}, {@link #put}, {@link #putAll}, {@link #remove}, and
+ * {@link #clear} keep track of the weight and the statistics; the weight of
+ * an entry must not change while it is in the cache.
+ *
+ * @see org.checkerframework.framework.type.AnnotatedTypeFactory#createCache
+ */
+public class LRUCache<K, V> extends LinkedHashMap<K, V> {
+
+    private static final long serialVersionUID = 7162307435620815406L;
+
+    /** Determines the weight of a cache entry. */
+    public static interface Weigher<K, V> {
+        /**
+         * @return the weight of the entry, at least 1
+         */
+        int weigh(K key, V value);
+    }
+
+    /** The weigher that assigns weight 1 to every entry. */
+    private static final Weigher<Object, Object> UNIT_WEIGHER = new Weigher<Object, Object>() {
+        @Override
+        public int weigh(Object key, Object value) {
+            return 1;
+        }
+    };
+
+    /** The name of this cache, used for printing statistics. */
+    private final String name;
+
+    /** The maximal total weight of all entries. */
+    private final int maxWeight;
+
+    private final Weigher<? super K, ? super V> weigher;
+
+    /** The total weight of all entries. */
+    private int weight = 0;
+
+    private int hits = 0;
+    private int misses = 0;
+    private int evictions = 0;
+
+    /**
+     * Creates a cache in which every entry has weight 1.
+     *
+     * @param name the name of the cache, used for printing statistics
+     * @param maxSize the maximal number of entries
+     */
+    public LRUCache(String name, int maxSize) {
+        this(name, maxSize, UNIT_WEIGHER);
+    }
+
+    /**
+     * Creates a cache whose entries are weighed by {@code weigher}.
+     *
+     * @param name the name of the cache, used for printing statistics
+     * @param maxWeight the maximal total weight of all entries
+     * @param weigher determines the weight of each entry
+     */
+    public LRUCache(String name, int maxWeight, Weigher<? super K, ? super V> weigher) {
+        // Access order, such that get moves an entry to the end.
+        super(16, 0.75f, true);
+        this.name = name;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    @Override
+    public V get(Object key) {
+        V value = super.get(key);
+        if (value != null || super.containsKey(key)) {
+            ++hits;
+        } else {
+            ++misses;
+        }
+        return value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        V previous = super.put(key, value);
+        if (previous != null) {
+            weight -= weigher.weigh(key, previous);
+        }
+        weight += weigher.weigh(key, value);
+        evict();
+        return previous;
+    }
+
+    @Override
+    public void putAll(Map<? extends K, ? extends V> m) {
+        for (Map.Entry<? extends K, ? extends V> entry : m.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V remove(Object key) {
+        boolean present = super.containsKey(key);
+        V previous = super.remove(key);
+        if (present) {
+            weight -= weigher.weigh((K) key, previous);
+        }
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        weight = 0;
+    }
+
+    /**
+     * Evict the least-recently-used entries until the total weight is at
+     * most the maximum weight.  The most recently used entry is always kept,
+     * even if it alone exceeds the maximum weight.
+     */
+    private void evict() {
+        Iterator<Map.Entry<K, V>> it = entrySet().iterator();
+        while (weight > maxWeight && size() > 1) {
+            Map.Entry<K, V> eldest = it.next();
+            weight -= weigher.weigh(eldest.getKey(), eldest.getValue());
+            it.remove();
+            ++evictions;
+        }
+    }
+
+    /** @return the name of this cache */
+    public String getName() {
+        return name;
+    }
+
+    /** @return the total weight of all entries */
+    public int getWeight() {
+        return weight;
+    }
+
+    /** @return the maximal total weight of all entries */
+    public int getMaxWeight() {
+        return maxWeight;
+    }
+
+    /** @return the number of lookups that found an entry */
+    public int getHits() {
+        return hits;
+    }
+
+    /** @return the number of lookups that did not find an entry */
+    public int getMisses() {
+        return misses;
+    }
+
+    /** @return the number of entries evicted to stay within the maximum weight */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    /** Reset the hit, miss, and eviction counts to 0. */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    /** @return a one-line summary of the contents and statistics of this cache */
+    public String statistics() {
+        int lookups = hits + misses;
+        return name + ": " + size() + " entries, weight " + weight + "/" + maxWeight +
+                ", hits " + hits + ", misses " + misses +
+                ", evictions " + evictions +
+                (lookups == 0 ? "" : ", hit rate " + (100 * hits / lookups) + "%");
+    }
+}
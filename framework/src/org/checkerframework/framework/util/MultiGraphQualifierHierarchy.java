@@ -8,14 +8,18 @@ import org.checkerframework.checker.nullness.qual.PolyNull;
 */
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.util.ElementFilter;
 
 import org.checkerframework.dataflow.qual.Pure;
 import org.checkerframework.dataflow.qual.SideEffectFree;
@@ -217,6 +221,121 @@ public class MultiGraphQualifierHierarchy extends QualifierHierarchy {
 
         this.supertypesMap = Collections.unmodifiableMap(fullMap);
         // System.out.println("MGH: " + this);
+
+        if (shouldBuildTables(f)) {
+            buildTables();
+        }
+    }
+
+    /**
+     * Whether to precompute the subtype, lub, and glb tables of this
+     * hierarchy; true unless the "noQualifierTables" option is provided.
+     * Called by the constructor.
+     */
+    // Not static to allow adaptation in subclasses.
+    protected boolean shouldBuildTables(MultiGraphFactory f) {
+        return f.atypeFactory == null ||
+                !f.atypeFactory.getProcessingEnv().getOptions().containsKey("noQualifierTables");
+    }
+
+    // **********************************************************************
+    // Precomputed tables
+    // **********************************************************************
+
+    /*
+     * The qualifiers in supertypesMap whose annotation types have no
+     * elements are numbered densely.  Such a qualifier is identified by its
+     * name alone.  Whether one qualifier is a subtype of another is
+     * precomputed as a bit set of the numbers of its supertypes, and lubs and
+     * glbs are memoized in two-dimensional arrays.  All other qualifiers,
+     * such as qualifiers with values, take the general path.
+     */
+
+    /** Results in the lub and glb tables. */
+    private static final byte NOT_COMPUTED = 0, FIRST_ARGUMENT = 1, SECOND_ARGUMENT = 2, FIXED = 3;
+
+    /**
+     * Maps the name of each numbered qualifier to its number.  The names
+     * are interned.  Null if the tables are disabled by the
+     * "noQualifierTables" option.
+     */
+    private Map</*@Interned*/ String, Integer> qualifierNumbers;
+
+    /**
+     * For each qualifier number, a bit set of the numbers of its
+     * supertypes, including itself.
+     */
+    private long[][] supertypeBits;
+
+    private byte[][] lubKinds;
+    private AnnotationMirror[][] lubTable;
+    private byte[][] glbKinds;
+    private AnnotationMirror[][] glbTable;
+
+    /** Number the qualifiers and compute the subtype bit sets. */
+    private void buildTables() {
+        List<AnnotationMirror> numbered = new ArrayList<AnnotationMirror>();
+        Map</*@Interned*/ String, Integer> numbers = new IdentityHashMap</*@Interned*/ String, Integer>();
+        for (AnnotationMirror q : supertypesMap.keySet()) {
+            if (ElementFilter.methodsIn(q.getAnnotationType().asElement().getEnclosedElements()).isEmpty()) {
+                numbers.put(AnnotationUtils.annotationName(q), numbered.size());
+                numbered.add(q);
+            }
+        }
+        AnnotationMirror[] qualifiers = numbered.toArray(new AnnotationMirror[numbered.size()]);
+        int n = qualifiers.length;
+
+        int words = (n + 63) >>> 6;
+        supertypeBits = new long[n][words];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (isSubtypeInGraph(qualifiers[i], qualifiers[j])) {
+                    supertypeBits[i][j >>> 6] |= 1L << j;
+                }
+            }
+        }
+        lubKinds = new byte[n][n];
+        lubTable = new AnnotationMirror[n][n];
+        glbKinds = new byte[n][n];
+        glbTable = new AnnotationMirror[n][n];
+        qualifierNumbers = numbers;
+    }
+
+    /** @return the number of {@code a} in the tables, or -1 */
+    private int qualifierNumber(AnnotationMirror a) {
+        if (qualifierNumbers == null || a == null) {
+            return -1;
+        }
+        // Only qualifiers without elements are numbered, so any
+        // annotation with values is not found.
+        Integer number = qualifierNumbers.get(AnnotationUtils.annotationName(a));
+        return (number == null) ? -1 : number;
+    }
+
+    /** Look up a result that was stored in a lub or glb table. */
+    private static AnnotationMirror lookUp(byte[][] kinds, AnnotationMirror[][] table, int i, int j,
+            AnnotationMirror a1, AnnotationMirror a2) {
+        switch (kinds[i][j]) {
+        case FIRST_ARGUMENT:
+            return a1;
+        case SECOND_ARGUMENT:
+            return a2;
+        default:
+            return table[i][j];
+        }
+    }
+
+    /** Store a result in a lub or glb table. */
+    private static void store(byte[][] kinds, AnnotationMirror[][] table, int i, int j,
+            AnnotationMirror a1, AnnotationMirror a2, AnnotationMirror result) {
+        if (result == a1) {
+            kinds[i][j] = FIRST_ARGUMENT;
+        } else if (result == a2) {
+            kinds[i][j] = SECOND_ARGUMENT;
+        } else {
+            table[i][j] = result;
+            kinds[i][j] = FIXED;
+        }
     }
 
     /**
@@ -336,6 +455,18 @@ public class MultiGraphQualifierHierarchy extends QualifierHierarchy {
 
     @Override
     public AnnotationMirror leastUpperBound(AnnotationMirror a1, AnnotationMirror a2) {
+        int i = qualifierNumber(a1);
+        int j = qualifierNumber(a2);
+        if (i >= 0 && j >= 0) {
+            if (lubKinds[i][j] == NOT_COMPUTED) {
+                store(lubKinds, lubTable, i, j, a1, a2, computeLeastUpperBound(a1, a2));
+            }
+            return lookUp(lubKinds, lubTable, i, j, a1, a2);
+        }
+        return computeLeastUpperBound(a1, a2);
+    }
+
+    private AnnotationMirror computeLeastUpperBound(AnnotationMirror a1, AnnotationMirror a2) {
         if (!AnnotationUtils.areSameIgnoringValues(getTopAnnotation(a1), getTopAnnotation(a2))) {
             return null;
         } else if (isSubtype(a1, a2)) {
@@ -366,6 +497,18 @@ public class MultiGraphQualifierHierarchy extends QualifierHierarchy {
 
     @Override
     public AnnotationMirror greatestLowerBound(AnnotationMirror a1, AnnotationMirror a2) {
+        int i = qualifierNumber(a1);
+        int j = qualifierNumber(a2);
+        if (i >= 0 && j >= 0) {
+            if (glbKinds[i][j] == NOT_COMPUTED) {
+                store(glbKinds, glbTable, i, j, a1, a2, computeGreatestLowerBound(a1, a2));
+            }
+            return lookUp(glbKinds, glbTable, i, j, a1, a2);
+        }
+        return computeGreatestLowerBound(a1, a2);
+    }
+
+    private AnnotationMirror computeGreatestLowerBound(AnnotationMirror a1, AnnotationMirror a2) {
         if (AnnotationUtils.areSameIgnoringValues(a1, a2))
             return AnnotationUtils.areSame(a1, a2) ? a1 : getBottomAnnotation(a1);
         if (glbs == null) {
@@ -403,9 +546,22 @@ public class MultiGraphQualifierHierarchy extends QualifierHierarchy {
      */
     @Override
     public boolean isSubtype(AnnotationMirror rhs, AnnotationMirror lhs) {
+        int i = qualifierNumber(rhs);
+        int j = qualifierNumber(lhs);
+        if (i >= 0 && j >= 0) {
+            return (supertypeBits[i][j >>> 6] & (1L << j)) != 0;
+        }
+
         checkAnnoInGraph(rhs);
         checkAnnoInGraph(lhs);
+        return isSubtypeInGraph(rhs, lhs);
+    }
 
+    /**
+     * The subtype test of {@link #isSubtype(AnnotationMirror, AnnotationMirror)}
+     * for qualifiers in the graph, which is precomputed in the tables.
+     */
+    private boolean isSubtypeInGraph(AnnotationMirror rhs, AnnotationMirror lhs) {
         /* TODO: this optimization leads to recursion
         for (AnnotationMirror top : tops) {
             System.out.println("Looking at top: " + tops + " and " + anno1);
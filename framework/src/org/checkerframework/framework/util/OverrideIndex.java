@@ -0,0 +1,142 @@
+package org.checkerframework.framework.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+
+/**
+ * An index of the methods that a method may override.
+ *
+ * <p>
+ *
+ * For every type element, the index records its methods and the methods of
+ * all its supertypes by name and number of parameters.  A method can only
+ * override a method with the same name and number of parameters, so the
+ * candidates for the methods overridden by a method are found by a single
+ * lookup, instead of a scan of every method of every supertype.  Whether a
+ * candidate is really overridden must still be determined with
+ * {@link javax.lang.model.util.Elements#overrides}.
+ *
+ * @see AnnotatedTypes#overriddenMethods(javax.lang.model.util.Elements,
+ *      org.checkerframework.framework.type.AnnotatedTypeFactory, ExecutableElement)
+ */
+public class OverrideIndex {
+
+    /** Weighs cached method tables by their number of method names. */
+    public static final LRUCache.Weigher<Object, Map<String, List<ExecutableElement>>> WEIGHER =
+            new LRUCache.Weigher<Object, Map<String, List<ExecutableElement>>>() {
+        @Override
+        public int weigh(Object key, Map<String, List<ExecutableElement>> methods) {
+            return 1 + methods.size() / 16;
+        }
+    };
+
+    private final Types types;
+
+    /** The methods declared by each type element. */
+    private final Map<TypeElement, Map<String, List<ExecutableElement>>> declaredMethods;
+
+    /** The methods declared by the proper supertypes of each type element. */
+    private final Map<TypeElement, Map<String, List<ExecutableElement>>> inheritedMethods;
+
+    /**
+     * @param types the type utilities
+     * @param declaredMethods the cache of the methods declared by a type
+     * @param inheritedMethods the cache of the methods of the supertypes of a type
+     */
+    public OverrideIndex(Types types,
+            Map<TypeElement, Map<String, List<ExecutableElement>>> declaredMethods,
+            Map<TypeElement, Map<String, List<ExecutableElement>>> inheritedMethods) {
+        this.types = types;
+        this.declaredMethods = declaredMethods;
+        this.inheritedMethods = inheritedMethods;
+    }
+
+    /**
+     * @return the methods declared by {@code type} that have the same name
+     *         and number of parameters as {@code method}, in declaration order
+     */
+    public List<ExecutableElement> getDeclaredCandidates(TypeElement type, ExecutableElement method) {
+        List<ExecutableElement> candidates = getDeclaredMethods(type).get(key(method));
+        return candidates == null ? Collections.<ExecutableElement>emptyList() : candidates;
+    }
+
+    /**
+     * @return the methods declared by the proper supertypes of {@code type}
+     *         that have the same name and number of parameters as
+     *         {@code method}; {@code method} can only override one of them
+     */
+    public List<ExecutableElement> getInheritedCandidates(TypeElement type, ExecutableElement method) {
+        List<ExecutableElement> candidates = getInheritedMethods(type).get(key(method));
+        return candidates == null ? Collections.<ExecutableElement>emptyList() : candidates;
+    }
+
+    private static String key(ExecutableElement method) {
+        return method.getSimpleName().toString() + "/" + method.getParameters().size();
+    }
+
+    private Map<String, List<ExecutableElement>> getDeclaredMethods(TypeElement type) {
+        Map<String, List<ExecutableElement>> methods = declaredMethods.get(type);
+        if (methods == null) {
+            methods = new HashMap<String, List<ExecutableElement>>();
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                String key = key(method);
+                List<ExecutableElement> list = methods.get(key);
+                if (list == null) {
+                    list = new ArrayList<ExecutableElement>(1);
+                    methods.put(key, list);
+                }
+                list.add(method);
+            }
+            declaredMethods.put(type, methods);
+        }
+        return methods;
+    }
+
+    private Map<String, List<ExecutableElement>> getInheritedMethods(TypeElement type) {
+        Map<String, List<ExecutableElement>> methods = inheritedMethods.get(type);
+        if (methods == null) {
+            // The methods of a supertype are the methods it declares and
+            // the methods it inherits; the latter are indexed recursively.
+            Map<String, Set<ExecutableElement>> union = new HashMap<String, Set<ExecutableElement>>();
+            for (TypeMirror supertype : types.directSupertypes(type.asType())) {
+                if (supertype.getKind() != TypeKind.DECLARED) {
+                    continue;
+                }
+                TypeElement superElement = (TypeElement) ((DeclaredType) supertype).asElement();
+                addAll(union, getDeclaredMethods(superElement));
+                addAll(union, getInheritedMethods(superElement));
+            }
+            methods = new HashMap<String, List<ExecutableElement>>();
+            for (Map.Entry<String, Set<ExecutableElement>> entry : union.entrySet()) {
+                methods.put(entry.getKey(), new ArrayList<ExecutableElement>(entry.getValue()));
+            }
+            inheritedMethods.put(type, methods);
+        }
+        return methods;
+    }
+
+    private static void addAll(Map<String, Set<ExecutableElement>> union,
+            Map<String, List<ExecutableElement>> methods) {
+        for (Map.Entry<String, List<ExecutableElement>> entry : methods.entrySet()) {
+            Set<ExecutableElement> set = union.get(entry.getKey());
+            if (set == null) {
+                set = new LinkedHashSet<ExecutableElement>();
+                union.put(entry.getKey(), set);
+            }
+            set.addAll(entry.getValue());
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.checkerframework.framework.util;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashSet;
@@ -99,6 +100,33 @@ public class QualifierDefaults {
     private final Map<Element, AMLocTreeSet> elementDefaults =
             new IdentityHashMap<Element, AMLocTreeSet>();
 
+    /**
+     * The defaults that {@link #applyDefaultsElement} applies for a scope:
+     * the defaults of the scope followed by the absolute defaults, without
+     * those whose location can never match a type in the scope.
+     * Cleared whenever a default is added.
+     */
+    private final Map<Element, List<Pair<AnnotationMirror, DefaultLocation>>> applicableDefaults =
+            new IdentityHashMap<Element, List<Pair<AnnotationMirror, DefaultLocation>>>();
+
+    /**
+     * The applier that is reused for all types; null before the first
+     * type is defaulted and while the applier is in use.
+     */
+    private DefaultApplierElement applier;
+
+    /** Number of types to which defaults were applied. */
+    private int typesDefaulted = 0;
+
+    /** Number of defaults that were applied to a type. */
+    private int defaultsApplied = 0;
+
+    /** Number of lookups of the defaults of a scope that were cached. */
+    private int scopeCacheHits = 0;
+
+    /** Number of lookups of the defaults of a scope that were not cached. */
+    private int scopeCacheMisses = 0;
+
     /**
      * @param elements interface to Element data in the current processing environment
      * @param atypeFactory an annotation factory, used to get annotations by name
@@ -115,6 +143,7 @@ public class QualifierDefaults {
     public void addAbsoluteDefault(AnnotationMirror absoluteDefaultAnno, DefaultLocation location) {
         checkDuplicates(absoluteDefaults, absoluteDefaultAnno, location);
         absoluteDefaults.add(Pair.of(absoluteDefaultAnno, location));
+        applicableDefaults.clear();
     }
 
     public void addAbsoluteDefaults(AnnotationMirror absoluteDefaultAnno, DefaultLocation[] locations) {
@@ -128,13 +157,15 @@ public class QualifierDefaults {
      */
     public void addElementDefault(Element elem, AnnotationMirror elementDefaultAnno, DefaultLocation location) {
         AMLocTreeSet prevset = elementDefaults.get(elem);
-        if (prevset != null) {
+        if (prevset != null && prevset != AMLocTreeSet.EMPTY_SET) {
             checkDuplicates(prevset, elementDefaultAnno, location);
         } else {
+            // EMPTY_SET is a cached lookup without defaults; never modify it.
             prevset = new AMLocTreeSet();
         }
         prevset.add(Pair.of(elementDefaultAnno, location));
         elementDefaults.put(elem, prevset);
+        applicableDefaults.clear();
     }
 
     private void checkDuplicates(Set<Pair<AnnotationMirror, DefaultLocation>> prevset,
@@ -329,9 +360,12 @@ public class QualifierDefaults {
             return AMLocTreeSet.EMPTY_SET;
         }
 
-        if (elementDefaults.containsKey(elt)) {
-            return elementDefaults.get(elt);
+        AMLocTreeSet cached = elementDefaults.get(elt);
+        if (cached != null) {
+            scopeCacheHits++;
+            return cached;
         }
+        scopeCacheMisses++;
 
         AMLocTreeSet qualifiers = null;
 
@@ -375,12 +409,103 @@ public class QualifierDefaults {
         else
             qualifiers.addAll(parentDefaults);
 
-        if (qualifiers != null && !qualifiers.isEmpty()) {
+        if (qualifiers == null || qualifiers.isEmpty()) {
+            qualifiers = AMLocTreeSet.EMPTY_SET;
+        }
+        // Also cache that there are no defaults, which is the common case,
+        // such that the enclosing elements are not visited again.
+        // Local variables and parameters are not cached, as there are many
+        // of them and their enclosing method is cached anyway.
+        if (!isLocal(elt)) {
             elementDefaults.put(elt, qualifiers);
-            return qualifiers;
-        } else {
-            return AMLocTreeSet.EMPTY_SET;
         }
+        return qualifiers;
+    }
+
+    private static boolean isLocal(Element elt) {
+        switch (elt.getKind()) {
+        case LOCAL_VARIABLE:
+        case RESOURCE_VARIABLE:
+        case EXCEPTION_PARAMETER:
+        case PARAMETER:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return the defaults of {@code scope} followed by the absolute
+     *         defaults, without those that {@link DefaultApplierElement}
+     *         would never apply to a type in {@code scope}
+     */
+    private List<Pair<AnnotationMirror, DefaultLocation>> applicableDefaultsAt(final Element scope) {
+        List<Pair<AnnotationMirror, DefaultLocation>> result = applicableDefaults.get(scope);
+        if (result != null) {
+            return result;
+        }
+        result = new ArrayList<Pair<AnnotationMirror, DefaultLocation>>();
+        for (Pair<AnnotationMirror, DefaultLocation> def : defaultsAt(scope)) {
+            if (isApplicable(def.second, scope)) {
+                result.add(def);
+            }
+        }
+        for (Pair<AnnotationMirror, DefaultLocation> def : absoluteDefaults) {
+            if (isApplicable(def.second, scope)) {
+                result.add(def);
+            }
+        }
+        if (scope != null && !isLocal(scope)) {
+            applicableDefaults.put(scope, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return false if {@link DefaultApplierElement} never applies a default
+     *         for {@code location} to a type in {@code scope}
+     */
+    private static boolean isApplicable(DefaultLocation location, Element scope) {
+        if (scope == null) {
+            return true;
+        }
+        ElementKind kind = scope.getKind();
+        switch (location) {
+        case FIELD:
+            return kind == ElementKind.FIELD;
+        case LOCAL_VARIABLE:
+            return kind == ElementKind.LOCAL_VARIABLE;
+        case RESOURCE_VARIABLE:
+            return kind == ElementKind.RESOURCE_VARIABLE;
+        case EXCEPTION_PARAMETER:
+            return kind == ElementKind.EXCEPTION_PARAMETER;
+        case PARAMETERS:
+            return kind == ElementKind.PARAMETER || kind == ElementKind.METHOD
+                    || kind == ElementKind.CONSTRUCTOR;
+        case RECEIVERS:
+            return kind == ElementKind.PARAMETER || kind == ElementKind.METHOD;
+        case RETURNS:
+            return kind == ElementKind.METHOD;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Print statistics about the defaults applied for the current
+     * compilation unit and reset them.
+     *
+     * @see AnnotatedTypeFactory#printStats()
+     */
+    public void printStats() {
+        System.out.println("  Types defaulted: " + typesDefaulted +
+                ", defaults applied: " + defaultsApplied);
+        System.out.println("  Default scope lookups: " + scopeCacheHits +
+                " hits, " + scopeCacheMisses + " misses");
+        typesDefaulted = 0;
+        defaultsApplied = 0;
+        scopeCacheHits = 0;
+        scopeCacheMisses = 0;
     }
 
     /**
@@ -394,23 +519,37 @@ public class QualifierDefaults {
      * @param type the type to which defaults will be applied
      */
     private void applyDefaultsElement(final Element annotationScope, final AnnotatedTypeMirror type) {
-        AMLocTreeSet defaults = defaultsAt(annotationScope);
-        DefaultApplierElement applier = new DefaultApplierElement(atypeFactory, annotationScope, type);
-
-        for (Pair<AnnotationMirror, DefaultLocation> def : defaults) {
-            applier.apply(def.first, def.second);
+        List<Pair<AnnotationMirror, DefaultLocation>> defaults = applicableDefaultsAt(annotationScope);
+        typesDefaulted++;
+        if (defaults.isEmpty()) {
+            return;
         }
+        defaultsApplied += defaults.size();
 
-        for (Pair<AnnotationMirror, DefaultLocation> def : absoluteDefaults) {
-            applier.apply(def.first, def.second);
+        // Reuse the applier, unless applying defaults is reentered.
+        DefaultApplierElement applier = this.applier;
+        this.applier = null;
+        if (applier == null) {
+            applier = new DefaultApplierElement(atypeFactory, annotationScope, type);
+        } else {
+            applier.reset(annotationScope, type);
+        }
+        try {
+            for (Pair<AnnotationMirror, DefaultLocation> def : defaults) {
+                applier.apply(def.first, def.second);
+            }
+        } finally {
+            // Do not keep the type alive.
+            applier.reset(null, null);
+            this.applier = applier;
         }
     }
 
     public static class DefaultApplierElement {
 
         private final AnnotatedTypeFactory atypeFactory;
-        private final Element scope;
-        private final AnnotatedTypeMirror type;
+        private Element scope;
+        private AnnotatedTypeMirror type;
 
         // Should only be set by {@link apply}
         private DefaultLocation location;
@@ -424,6 +563,15 @@ public class QualifierDefaults {
             this.impl = new DefaultApplierElementImpl();
         }
 
+        /**
+         * Apply defaults to {@code type} in {@code scope} from now on, such
+         * that an applier can be reused for many types.
+         */
+        public void reset(Element scope, AnnotatedTypeMirror type) {
+            this.scope = scope;
+            this.type = type;
+        }
+
         public void apply(AnnotationMirror toApply, DefaultLocation location) {
             this.location = location;
             impl.visit(type, toApply);
@@ -0,0 +1,100 @@
+package org.checkerframework.framework.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Access to the per-user directory of the Checker Framework,
+ * {@code ~/.checkerframework}, which holds files that must not be readable
+ * or writable by other users, such as the secret of the checker daemon.
+ */
+public final class UserDirectoryUtil {
+
+    /** The name of the per-user directory within the home directory. */
+    public static final String DIRECTORY_NAME = ".checkerframework";
+
+    /** Permissions of directories that only their owner may access. */
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY =
+            PosixFilePermissions.fromString("rwx------");
+
+    /** Permissions of files that only their owner may access. */
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE =
+            PosixFilePermissions.fromString("rw-------");
+
+    private UserDirectoryUtil() {
+        throw new AssertionError("Class UserDirectoryUtil cannot be instantiated.");
+    }
+
+    /**
+     * Returns the subdirectory {@code name} of the per-user directory,
+     * creating both directories if necessary.  Both directories are made
+     * accessible only by the current user.
+     *
+     * @throws IOException if a directory cannot be created, or if its
+     *         permissions cannot be restricted (e.g. because it belongs to
+     *         another user)
+     */
+    public static File getPrivateDirectory(String name) throws IOException {
+        File base = new File(System.getProperty("user.home"), DIRECTORY_NAME);
+        createPrivateDirectory(base);
+        File dir = new File(base, name);
+        createPrivateDirectory(dir);
+        return dir;
+    }
+
+    /**
+     * Create the directory {@code dir} and its parents if necessary, and
+     * make it accessible only by the current user.
+     *
+     * @throws IOException if the directory cannot be created, or if its
+     *         permissions cannot be restricted
+     */
+    private static void createPrivateDirectory(File dir) throws IOException {
+        Path path = dir.toPath();
+        Files.createDirectories(path);
+        restrictToOwner(path, true);
+    }
+
+    /**
+     * Create the file {@code file} if it does not exist, and make it
+     * accessible only by the current user.
+     *
+     * @throws IOException if the file cannot be created or its permissions
+     *         cannot be restricted
+     */
+    public static void createPrivateFile(File file) throws IOException {
+        Path path = file.toPath();
+        if (!Files.exists(path)) {
+            Files.createFile(path);
+        }
+        restrictToOwner(path, false);
+    }
+
+    private static void restrictToOwner(Path path, boolean directory) throws IOException {
+        if (Files.isSymbolicLink(path)) {
+            throw new IOException("Refusing to use symbolic link " + path);
+        }
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            // Fails unless the current user owns the file.
+            Files.setPosixFilePermissions(path, directory ? OWNER_ONLY_DIRECTORY : OWNER_ONLY_FILE);
+        } else {
+            // Other file systems, e.g. on Windows, usually restrict the home
+            // directory to its owner already; restrict it further if possible.
+            File file = path.toFile();
+            file.setReadable(false, false);
+            file.setReadable(true, true);
+            file.setWritable(false, false);
+            file.setWritable(true, true);
+            if (directory) {
+                file.setExecutable(false, false);
+                file.setExecutable(true, true);
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.Comparator;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.framework.util.AnnotationBuilder;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.ErrorReporter;
+import org.junit.Test;
+
+import tests.util.AnnoWithStringArg;
+import tests.util.TestChecker;
+
+import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+import com.sun.tools.javac.util.Context;
+
+/**
+ * Compares and interns annotations with {@link AnnotationUtils} and checks
+ * that its table of canonical annotations does not keep the compared
+ * annotations alive.
+ */
+public class AnnotationUtilsCacheTest {
+
+    private final ProcessingEnvironment env;
+
+    public AnnotationUtilsCacheTest() {
+        env = JavacProcessingEnvironment.instance(new Context());
+        ErrorReporter.setHandler(new TestChecker());
+        // Each test starts with an empty table.
+        AnnotationUtils.clearInternedAnnotations();
+    }
+
+    @Test
+    public void comparesValues() {
+        AnnotationMirror a1 = withValue("a");
+        AnnotationMirror a2 = withValue("a");
+        AnnotationMirror b = withValue("b");
+        Comparator<AnnotationMirror> ordering = AnnotationUtils.annotationOrdering();
+
+        // Twice, the second time with the canonical annotations.
+        for (int i = 0; i < 2; i++) {
+            assertTrue(AnnotationUtils.areSame(a1, a2));
+            assertFalse(AnnotationUtils.areSame(a1, b));
+            assertEquals(0, ordering.compare(a1, a2));
+            assertTrue(ordering.compare(a1, b) < 0);
+        }
+    }
+
+    @Test
+    public void internsSameAnnotations() {
+        AnnotationMirror a1 = withValue("a");
+        AnnotationMirror a2 = withValue("a");
+        AnnotationMirror b = withValue("b");
+
+        assertSame(a1, AnnotationUtils.intern(a1));
+        assertSame(a1, AnnotationUtils.intern(a2));
+        assertSame(b, AnnotationUtils.intern(b));
+
+        // Clearing starts a new table, in which a2 may become canonical.
+        AnnotationUtils.clearInternedAnnotations();
+        assertSame(a2, AnnotationUtils.intern(a2));
+        assertSame(a2, AnnotationUtils.intern(a1));
+        assertTrue(AnnotationUtils.areSame(a1, a2));
+    }
+
+    @Test
+    public void releasesComparedAnnotationsWhenCleared() throws InterruptedException {
+        AnnotationMirror a = withValue("a");
+        assertFalse(AnnotationUtils.areSame(a, withValue("b")));
+        WeakReference<AnnotationMirror> reference = new WeakReference<AnnotationMirror>(a);
+        a = null;
+
+        AnnotationUtils.clearInternedAnnotations();
+        awaitCollection(reference);
+        assertNull(reference.get());
+    }
+
+    @Test
+    public void releasesComparedAnnotationsWithoutClearing() throws InterruptedException {
+        AnnotationMirror a = withValue("a");
+        assertSame(a, AnnotationUtils.intern(a));
+        assertFalse(AnnotationUtils.areSame(a, withValue("b")));
+        WeakReference<AnnotationMirror> reference = new WeakReference<AnnotationMirror>(a);
+        a = null;
+
+        // A compilation that stops because of errors does not clear the table.
+        awaitCollection(reference);
+        assertNull(reference.get());
+
+        // The next annotation with the same value becomes canonical.
+        AnnotationMirror a2 = withValue("a");
+        assertSame(a2, AnnotationUtils.intern(a2));
+    }
+
+    private AnnotationMirror withValue(String value) {
+        AnnotationBuilder builder = new AnnotationBuilder(env, AnnoWithStringArg.class);
+        builder.setValue("value", value);
+        return builder.build();
+    }
+
+    /** Run the garbage collector until {@code reference} is cleared, or give up. */
+    static void awaitCollection(WeakReference<?> reference) throws InterruptedException {
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+    }
+}
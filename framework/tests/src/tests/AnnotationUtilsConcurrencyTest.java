@@ -0,0 +1,105 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.framework.util.AnnotationBuilder;
+import org.checkerframework.javacutil.AnnotationUtils;
+import org.checkerframework.javacutil.ErrorReporter;
+import org.junit.Test;
+
+import tests.util.AnnoWithStringArg;
+import tests.util.Encrypted;
+import tests.util.TestChecker;
+
+import com.sun.tools.javac.processing.JavacProcessingEnvironment;
+import com.sun.tools.javac.util.Context;
+
+/**
+ * Names and compares annotations from many threads at once, as compilations
+ * do that run in parallel in one JVM.
+ */
+public class AnnotationUtilsConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 20000;
+
+    private final ProcessingEnvironment env;
+
+    public AnnotationUtilsConcurrencyTest() {
+        env = JavacProcessingEnvironment.instance(new Context());
+        ErrorReporter.setHandler(new TestChecker());
+    }
+
+    @Test
+    public void nameAnnotationsInParallel() throws Exception {
+        // javac itself is not thread-safe, so the annotations are created
+        // here and only named and compared by the threads.
+        final AnnotationMirror encrypted = AnnotationUtils.fromClass(env.getElementUtils(), Encrypted.class);
+        final List<AnnotationMirror> withArgs = new ArrayList<AnnotationMirror>();
+        for (int i = 0; i < 16; i++) {
+            AnnotationBuilder builder = new AnnotationBuilder(env, AnnoWithStringArg.class);
+            builder.setValue("value", "v" + (i % 4));
+            withArgs.add(builder.build());
+        }
+        final String encryptedName = Encrypted.class.getCanonicalName();
+        final String withArgName = AnnoWithStringArg.class.getCanonicalName();
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            results.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        AnnotationMirror a = withArgs.get((i + thread) % withArgs.size());
+                        AnnotationMirror b = withArgs.get((i * 7 + thread) % withArgs.size());
+
+                        assertSame(encrypted, AnnotationUtils.fromClass(env.getElementUtils(), Encrypted.class));
+                        assertSame(encryptedName.intern(), AnnotationUtils.annotationName(encrypted));
+                        assertSame(withArgName.intern(), AnnotationUtils.annotationName(a));
+                        assertTrue(AnnotationUtils.areSameByClass(a, AnnoWithStringArg.class));
+                        assertFalse(AnnotationUtils.areSameByClass(encrypted, AnnoWithStringArg.class));
+                        assertTrue(AnnotationUtils.areSameIgnoringValues(a, b));
+                        assertEquals(withArgs.indexOf(a) % 4 == withArgs.indexOf(b) % 4,
+                                AnnotationUtils.areSame(a, b));
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<Void> result : results) {
+            // Rethrows the failure of an assertion in the thread.
+            result.get();
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void annotationsArePerCompilation() {
+        ProcessingEnvironment other = JavacProcessingEnvironment.instance(new Context());
+        AnnotationMirror first = AnnotationUtils.fromClass(env.getElementUtils(), Encrypted.class);
+        AnnotationMirror second = AnnotationUtils.fromClass(other.getElementUtils(), Encrypted.class);
+        assertNotSame(first, second);
+        assertSame(first, AnnotationUtils.fromClass(env.getElementUtils(), Encrypted.class));
+        assertSame(AnnotationUtils.annotationName(first), AnnotationUtils.annotationName(second));
+    }
+}
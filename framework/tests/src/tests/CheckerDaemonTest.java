@@ -0,0 +1,139 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.checkerframework.framework.util.CheckerDaemon;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Sends requests to a {@link CheckerDaemon} that runs in this JVM.
+ */
+public class CheckerDaemonTest {
+
+    private File directory;
+    private File secretFile;
+    private DaemonAccess.Server server;
+
+    @Before
+    public void startDaemon() throws Exception {
+        directory = Files.createTempDirectory("checker-daemon-test").toFile();
+        secretFile = new File(directory, "daemon.secret");
+        server = DaemonAccess.start(secretFile);
+    }
+
+    @After
+    public void stopDaemon() throws Exception {
+        DaemonAccess.stop(server, secretFile);
+        delete(directory);
+    }
+
+    @Test
+    public void rejectsRequestsWithoutTheSecret() throws Exception {
+        File otherSecret = new File(directory, "other.secret");
+        Files.write(otherSecret.toPath(), new byte[64]);
+        File source = writeSource("Hello");
+        File classes = new File(directory, "classes");
+        classes.mkdir();
+
+        int exitStatus = DaemonAccess.compile(server.port, otherSecret,
+                Arrays.asList("-d", classes.getPath(), source.getPath()));
+
+        assertEquals(DaemonAccess.unauthorized(), exitStatus);
+        assertEquals(0, classes.list().length);
+    }
+
+    @Test
+    public void compilesAgainWhenTheInputsAreUnchanged() throws Exception {
+        File source = writeSource("Hello");
+        File classes = new File(directory, "classes");
+        classes.mkdir();
+        List<String> args = Arrays.asList("-d", classes.getPath(), source.getPath());
+        File classFile = new File(classes, "Hello.class");
+
+        assertEquals(0, DaemonAccess.compile(server.port, secretFile, args));
+        assertTrue(classFile.isFile());
+
+        // The output must be written again even though the source is unchanged.
+        assertTrue(classFile.delete());
+        assertEquals(0, DaemonAccess.compile(server.port, secretFile, args));
+        assertTrue(classFile.isFile());
+    }
+
+    private File writeSource(String className) throws IOException {
+        File source = new File(directory, className + ".java");
+        String text = "class " + className + " { }\n";
+        Files.write(source.toPath(), text.getBytes(Charset.forName("UTF-8")));
+        return source;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** Gives access to the protected parts of {@link CheckerDaemon}. */
+    private static class DaemonAccess extends CheckerDaemon {
+
+        private DaemonAccess() {
+            super(null, null);
+        }
+
+        /** A daemon that serves requests on a separate thread. */
+        static class Server {
+            final int port;
+            final Thread thread;
+
+            Server(int port, Thread thread) {
+                this.port = port;
+                this.thread = thread;
+            }
+        }
+
+        static Server start(File secretFile) throws IOException {
+            final Daemon daemon = new Daemon(0, secretFile);
+            int port = daemon.start();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        daemon.serve();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            thread.start();
+            return new Server(port, thread);
+        }
+
+        static void stop(Server server, File secretFile) throws Exception {
+            sendRequest(server.port, secretFile, STOP_REQUEST, null, Collections.<String>emptyList());
+            server.thread.join();
+        }
+
+        static int compile(int port, File secretFile, List<String> args) throws IOException {
+            String workingDirectory = new File(".").getAbsoluteFile().getParent();
+            return sendRequest(port, secretFile, COMPILE_REQUEST, workingDirectory, args).exitStatus;
+        }
+
+        static int unauthorized() {
+            return EXIT_UNAUTHORIZED;
+        }
+    }
+}
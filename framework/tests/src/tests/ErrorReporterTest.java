@@ -0,0 +1,55 @@
+package tests;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.checkerframework.javacutil.ErrorHandler;
+import org.checkerframework.javacutil.ErrorReporter;
+import org.junit.Test;
+
+/**
+ * Reports errors with {@link ErrorReporter} on several threads, as
+ * compilations do that run in parallel in one JVM.
+ */
+public class ErrorReporterTest {
+
+    @Test
+    public void reportsErrorsToTheHandlerOfTheThread() throws InterruptedException {
+        final RecordingHandler first = new RecordingHandler();
+        final RecordingHandler second = new RecordingHandler();
+        final Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ErrorReporter.setHandler(second);
+                ErrorReporter.errorAbort("second");
+            }
+        });
+
+        ErrorReporter.setHandler(first);
+        other.start();
+        other.join();
+        ErrorReporter.errorAbort("first");
+
+        assertEquals(1, first.messages.size());
+        assertEquals("first", first.messages.get(0));
+        assertEquals(1, second.messages.size());
+        assertEquals("second", second.messages.get(0));
+    }
+
+    /** Records the messages instead of aborting. */
+    private static class RecordingHandler implements ErrorHandler {
+        final List<String> messages = new ArrayList<String>();
+
+        @Override
+        public void errorAbort(String msg) {
+            messages.add(msg);
+        }
+
+        @Override
+        public void errorAbort(String msg, Throwable cause) {
+            messages.add(msg);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package tests;
+
+import java.io.File;
+import java.util.Collection;
+
+import org.checkerframework.framework.test.ParameterizedCheckerTest;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Checks the all-systems tests with the {@link tests.util.FlowTestChecker}
+ * and fails, instead of hanging, if the dataflow analysis of a file does
+ * not reach a fixed point, e.g. because the least upper bound of two stores
+ * assumes that the least upper bound of two values is idempotent.
+ */
+public class FlowAllSystemsTest extends ParameterizedCheckerTest {
+
+    @Rule
+    public Timeout timeout = new Timeout(60 * 1000);
+
+    public FlowAllSystemsTest(File testFile) {
+        super(testFile,
+                tests.util.FlowTestChecker.class,
+                "flow",
+                "-Anomsgtext");
+    }
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        return testFiles("all-systems");
+    }
+}
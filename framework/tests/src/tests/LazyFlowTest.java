@@ -0,0 +1,26 @@
+package tests;
+
+import java.io.File;
+import java.util.Collection;
+
+import org.checkerframework.framework.test.ParameterizedCheckerTest;
+import org.junit.runners.Parameterized.Parameters;
+
+/**
+ * Runs the tests of {@link Flow2Test} with the "lazyFlow" option, which
+ * must not change the results of the analysis.
+ */
+public class LazyFlowTest extends ParameterizedCheckerTest {
+
+    public LazyFlowTest(File testFile) {
+        super(testFile,
+                tests.util.FlowTestChecker.class,
+                "flow",
+                "-Anomsgtext", "-AenablePurity", "-AlazyFlow");
+    }
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        return testFiles("flow2");
+    }
+}
@@ -0,0 +1,103 @@
+package tests.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.processing.Processor;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates sources in a temporary directory and compiles them with an
+ * annotation processor, for the benchmarks in this package.
+ */
+public final class BenchmarkUtil {
+
+    private BenchmarkUtil() {
+        throw new AssertionError("Class BenchmarkUtil cannot be instantiated.");
+    }
+
+    /**
+     * @return a new, empty temporary directory whose name starts with
+     *         {@code prefix}
+     */
+    public static File createTempDirectory(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        if (!dir.mkdir()) {
+            throw new IOException("Could not create directory: " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * @return a writer for the source of the class {@code className} in
+     *         {@code dir}, which the caller must close
+     */
+    public static PrintWriter newSource(File dir, String className) throws IOException {
+        return new PrintWriter(new FileWriter(new File(dir, className + ".java")));
+    }
+
+    /**
+     * @return the sources of the classes {@code classNames} in {@code dir}
+     */
+    public static List<File> sources(File dir, String... classNames) {
+        List<File> sources = new ArrayList<File>(classNames.length);
+        for (String className : classNames) {
+            sources.add(new File(dir, className + ".java"));
+        }
+        return sources;
+    }
+
+    /**
+     * Compile {@code sources} with {@code processor}, writing class files to
+     * {@code dir}.  The messages of the compiler are discarded.
+     *
+     * @param options further options of the compiler, e.g. of the processor
+     * @return whether the compilation succeeded
+     */
+    public static boolean compile(List<File> sources, File dir, List<String> options,
+            Processor processor) throws IOException {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        StandardJavaFileManager fileManager = javac.getStandardFileManager(null, null, null);
+        try {
+            Iterable<? extends JavaFileObject> files = fileManager.getJavaFileObjectsFromFiles(sources);
+            List<String> allOptions = new ArrayList<String>();
+            allOptions.add("-d");
+            allOptions.add(dir.getPath());
+            allOptions.addAll(options);
+            Writer ignored = new Writer() {
+                @Override public void write(char[] cbuf, int off, int len) { }
+                @Override public void flush() { }
+                @Override public void close() { }
+            };
+            JavaCompiler.CompilationTask task = javac.getTask(ignored, fileManager, null,
+                    allOptions, null, files);
+            task.setProcessors(Collections.singleton(processor));
+            return task.call();
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    /**
+     * Delete {@code file} and, if it is a directory, its contents.
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
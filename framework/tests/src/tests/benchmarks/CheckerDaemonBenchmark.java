@@ -0,0 +1,130 @@
+package tests.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.processing.Processor;
+
+import org.checkerframework.framework.util.CheckerDaemon;
+
+/**
+ * Measures what the {@link CheckerDaemon} saves: the time of a compilation
+ * in a fresh JVM, including JVM start-up, class loading and JIT warm-up,
+ * and the time of the same compilation in a JVM that has already run
+ * several.  The daemon runs a complete compilation for every request, so
+ * the second time is what a compilation costs with the daemon, apart from
+ * sending the arguments and messages over the socket.
+ *
+ * <p>
+ *
+ * Usage: {@code CheckerDaemonBenchmark [<checker> [<number of classes>]]}
+ *
+ * <p>
+ *
+ * The default is the Value Checker and 5 classes, a small change that is
+ * rechecked.
+ */
+public class CheckerDaemonBenchmark {
+
+    /** The number of measured compilations in each setting. */
+    private static final int RUNS = 5;
+
+    /** The number of compilations in the warm JVM before measuring. */
+    private static final int WARMUP_RUNS = 10;
+
+    /** The number of methods of each generated class. */
+    private static final int METHODS = 20;
+
+    /** Argument that makes this class run a single compilation and exit. */
+    private static final String COMPILE_ONCE = "--compile-once";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 4 && args[0].equals(COMPILE_ONCE)) {
+            File dir = new File(args[2]);
+            compile(args[1], dir, generate(dir, Integer.parseInt(args[3])));
+            return;
+        }
+
+        String checker = (args.length > 0) ? args[0] : "org.checkerframework.common.value.ValueChecker";
+        int classes = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+        File dir = BenchmarkUtil.createTempDirectory("daemon-benchmark");
+        List<File> sources = generate(dir, classes);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            compileInFreshJvm(checker, dir, classes);
+        }
+        long coldTime = (System.nanoTime() - start) / RUNS;
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            compile(checker, dir, sources);
+        }
+        start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            compile(checker, dir, sources);
+        }
+        long warmTime = (System.nanoTime() - start) / RUNS;
+
+        System.out.printf("fresh JVM: %8.1f ms%n", coldTime / 1e6);
+        System.out.printf("warm JVM:  %8.1f ms%n", warmTime / 1e6);
+
+        BenchmarkUtil.delete(dir);
+    }
+
+    /**
+     * Generate {@code classes} classes in {@code dir}, with locals that are
+     * assigned in branches and then combined.
+     */
+    private static List<File> generate(File dir, int classes) throws IOException {
+        String[] classNames = new String[classes];
+        for (int c = 0; c < classes; c++) {
+            classNames[c] = "D" + c;
+            PrintWriter out = BenchmarkUtil.newSource(dir, classNames[c]);
+            out.println("class D" + c + " {");
+            for (int m = 0; m < METHODS; m++) {
+                out.println("    int m" + m + "(int x, String s) {");
+                out.println("        int a = " + m + ";");
+                out.println("        if (x > " + m + ") { a = x - " + m + "; s = s + a; }");
+                out.println("        for (int i = 0; i < x; i++) { a += s.length(); }");
+                out.println("        return a * 3 + (s.isEmpty() ? 0 : s.charAt(0));");
+                out.println("    }");
+            }
+            out.println("}");
+            out.close();
+        }
+        return BenchmarkUtil.sources(dir, classNames);
+    }
+
+    /**
+     * Run this class with {@link #COMPILE_ONCE} in a new JVM, with the same
+     * JVM arguments and classpath as the current one, and wait for it.
+     */
+    private static void compileInFreshJvm(String checker, File dir, int classes) throws Exception {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CheckerDaemonBenchmark.class.getName());
+        command.add(COMPILE_ONCE);
+        command.add(checker);
+        command.add(dir.getPath());
+        command.add(String.valueOf(classes));
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0) {
+            throw new RuntimeException("Compilation in a fresh JVM failed: " + command);
+        }
+    }
+
+    /** Compile {@code sources} with a new instance of {@code checker}. */
+    private static void compile(String checker, File dir, List<File> sources) throws Exception {
+        Processor processor = (Processor) Class.forName(checker).newInstance();
+        BenchmarkUtil.compile(sources, dir, Collections.<String>emptyList(), processor);
+    }
+}
@@ -0,0 +1,141 @@
+package tests.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.lang.model.element.AnnotationMirror;
+
+import org.checkerframework.common.basetype.BaseTypeChecker;
+import org.checkerframework.common.basetype.BaseTypeVisitor;
+import org.checkerframework.framework.source.SourceChecker;
+import org.checkerframework.framework.type.GenericAnnotatedTypeFactory;
+import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.framework.util.MultiGraphQualifierHierarchy;
+
+/**
+ * Measures {@link QualifierHierarchy#isSubtype(AnnotationMirror, AnnotationMirror)}
+ * and {@link QualifierHierarchy#leastUpperBound(AnnotationMirror, AnnotationMirror)}
+ * of a checker's qualifier hierarchy, with and without the tables that
+ * {@link MultiGraphQualifierHierarchy} precomputes.  Each operation is
+ * applied to all pairs of qualifiers of the same hierarchy, in several
+ * warmup and measured iterations.
+ *
+ * <p>
+ *
+ * Usage: {@code QualifierHierarchyBenchmark [<checker> ...]}
+ *
+ * <p>
+ *
+ * The default checker is the IGJ Checker.
+ */
+public class QualifierHierarchyBenchmark {
+
+    /** The number of iterations before measuring. */
+    private static final int WARMUP_ITERATIONS = 5;
+
+    /** The number of measured iterations. */
+    private static final int ITERATIONS = 10;
+
+    /** The number of passes over all pairs of qualifiers in one iteration. */
+    private static final int PASSES = 10000;
+
+    public static void main(String[] args) throws Exception {
+        String[] checkers = (args.length == 0) ?
+                new String[] { "org.checkerframework.checker.igj.IGJChecker" } : args;
+        for (String checker : checkers) {
+            benchmark(checker, false);
+            benchmark(checker, true);
+        }
+    }
+
+    /**
+     * Initialize {@code checker} by compiling a trivial class and measure
+     * its qualifier hierarchy.
+     */
+    private static void benchmark(String checker, boolean tables) throws Exception {
+        BaseTypeChecker processor = (BaseTypeChecker) Class.forName(checker).newInstance();
+        compile(processor, tables);
+        QualifierHierarchy hierarchy = getTypeFactory(processor).getQualifierHierarchy();
+
+        List<AnnotationMirror[]> pairs = new ArrayList<AnnotationMirror[]>();
+        for (AnnotationMirror a1 : hierarchy.getTypeQualifiers()) {
+            for (AnnotationMirror a2 : hierarchy.getTypeQualifiers()) {
+                if (hierarchy.getTopAnnotation(a1) == hierarchy.getTopAnnotation(a2)) {
+                    pairs.add(new AnnotationMirror[] { a1, a2 });
+                }
+            }
+        }
+
+        int sink = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += isSubtype(hierarchy, pairs) + leastUpperBound(hierarchy, pairs);
+        }
+        long subtypeTime = 0;
+        long lubTime = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            sink += isSubtype(hierarchy, pairs);
+            long middle = System.nanoTime();
+            sink += leastUpperBound(hierarchy, pairs);
+            lubTime += System.nanoTime() - middle;
+            subtypeTime += middle - start;
+        }
+        long operations = (long) ITERATIONS * PASSES * pairs.size();
+        System.out.printf("%s, %s: %d pairs, isSubtype %6.1f ns/op, leastUpperBound %6.1f ns/op (%d)%n",
+                checker, tables ? "tables" : "no tables", pairs.size(),
+                (double) subtypeTime / operations, (double) lubTime / operations, sink);
+    }
+
+    /**
+     * @return the type factory of the visitor of {@code checker}, which
+     *         checkers do not expose
+     */
+    private static GenericAnnotatedTypeFactory<?, ?, ?, ?> getTypeFactory(SourceChecker checker) throws Exception {
+        Field visitor = SourceChecker.class.getDeclaredField("visitor");
+        visitor.setAccessible(true);
+        return ((BaseTypeVisitor<?>) visitor.get(checker)).getTypeFactory();
+    }
+
+    private static int isSubtype(QualifierHierarchy hierarchy, List<AnnotationMirror[]> pairs) {
+        int result = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (AnnotationMirror[] pair : pairs) {
+                if (hierarchy.isSubtype(pair[0], pair[1])) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int leastUpperBound(QualifierHierarchy hierarchy, List<AnnotationMirror[]> pairs) {
+        int result = 0;
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (AnnotationMirror[] pair : pairs) {
+                if (hierarchy.leastUpperBound(pair[0], pair[1]) == pair[0]) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Run {@code processor} on a trivial class. */
+    private static void compile(BaseTypeChecker processor, boolean tables) throws IOException {
+        File dir = BenchmarkUtil.createTempDirectory("qualifier-benchmark");
+        PrintWriter out = BenchmarkUtil.newSource(dir, "Test");
+        out.println("class Test { }");
+        out.close();
+
+        List<String> options = new ArrayList<String>();
+        if (!tables) {
+            options.add("-AnoQualifierTables");
+        }
+        BenchmarkUtil.compile(BenchmarkUtil.sources(dir, "Test"), dir, options, processor);
+        BenchmarkUtil.delete(dir);
+    }
+}
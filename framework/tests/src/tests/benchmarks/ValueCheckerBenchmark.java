@@ -0,0 +1,105 @@
+package tests.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.checkerframework.common.value.ValueChecker;
+
+/**
+ * Measures the cost of constant evaluation in the {@link ValueChecker}.  The
+ * benchmark generates classes with many constants, operators, and calls of
+ * pure methods whose operands have several possible values, and compiles
+ * them once for each bound of the "maxValues" option.
+ *
+ * <p>
+ *
+ * Usage: {@code ValueCheckerBenchmark [<number of classes> [<maxValues> ...]]}
+ *
+ * <p>
+ *
+ * The default is 16 classes and maxValues of 10, 20, and 40.
+ */
+public class ValueCheckerBenchmark {
+
+    /** The number of measured compilations for each bound. */
+    private static final int RUNS = 5;
+
+    /** The number of compilations before measuring. */
+    private static final int WARMUP_RUNS = 2;
+
+    /** The number of methods of each generated class. */
+    private static final int METHODS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int classes = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+        List<Integer> bounds = new ArrayList<Integer>();
+        for (int i = 1; i < args.length; i++) {
+            bounds.add(Integer.parseInt(args[i]));
+        }
+        if (bounds.isEmpty()) {
+            bounds.addAll(Arrays.asList(10, 20, 40));
+        }
+
+        File dir = BenchmarkUtil.createTempDirectory("value-benchmark");
+        List<File> sources = generate(dir, classes);
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            compile(sources, dir, bounds.get(0));
+        }
+        for (int bound : bounds) {
+            long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                compile(sources, dir, bound);
+            }
+            long time = (System.nanoTime() - start) / RUNS;
+            System.out.printf("maxValues %3d: %8.1f ms%n", bound, time / 1e6);
+        }
+
+        BenchmarkUtil.delete(dir);
+    }
+
+    /**
+     * Generate {@code classes} classes in {@code dir}.  Each method joins
+     * branches to give its locals several possible values, then combines
+     * them, so that each operator is evaluated on many combinations.
+     */
+    private static List<File> generate(File dir, int classes) throws IOException {
+        List<File> sources = new ArrayList<File>();
+        for (int c = 0; c < classes; c++) {
+            PrintWriter out = BenchmarkUtil.newSource(dir, "V" + c);
+            out.println("class V" + c + " {");
+            for (int m = 0; m < METHODS; m++) {
+                out.println("    int m" + m + "(int x) {");
+                out.println("        int a = " + m + ";");
+                out.println("        int b = " + (m + 1) + ";");
+                out.println("        String s = \"s" + m + "\";");
+                for (int k = 1; k <= 6; k++) {
+                    out.println("        if (x == " + k + ") { a = " + (m * k) + "; b = " + (m + k * 7)
+                            + "; s = \"v" + k + "\"; }");
+                }
+                out.println("        int c = a * b + (a - b) / 3;");
+                out.println("        int d = (c << 2) ^ (a % 5) + Math.max(a, b);");
+                out.println("        long e = (long) d * 1000L + s.length();");
+                out.println("        boolean f = c > d && s.startsWith(\"v\");");
+                out.println("        String g = s + a + \"-\" + b;");
+                out.println("        return (int) (e % 97) + g.length() + (f ? 1 : 0);");
+                out.println("    }");
+            }
+            out.println("}");
+            out.close();
+            sources.add(new File(dir, "V" + c + ".java"));
+        }
+        return sources;
+    }
+
+    /** Compile {@code sources} with the Value Checker and the given bound. */
+    private static void compile(List<File> sources, File dir, int maxValues)
+            throws IOException {
+        BenchmarkUtil.compile(sources, dir, Arrays.asList("-AmaxValues=" + maxValues),
+                new ValueChecker());
+    }
+}
@@ -0,0 +1,142 @@
+package tests.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Collections;
+
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.TypeElement;
+
+import org.checkerframework.dataflow.analysis.Analysis;
+import org.checkerframework.dataflow.cfg.CFGBuilder;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.dataflow.constantpropagation.Constant;
+import org.checkerframework.dataflow.constantpropagation.ConstantPropagationStore;
+import org.checkerframework.dataflow.constantpropagation.ConstantPropagationTransfer;
+import org.checkerframework.javacutil.AbstractTypeProcessor;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+
+/**
+ * Compares the running time of the worklist implementations of
+ * {@link Analysis} on the control flow graphs of large generated methods.
+ * Each generated method consists of a loop around a switch statement with
+ * the given number of cases, each of which contains a conditional.
+ *
+ * <p>
+ *
+ * Usage: {@code WorklistBenchmark [<number of cases> ...]}
+ */
+public class WorklistBenchmark {
+
+    /** The number of measured runs of each analysis. */
+    private static final int RUNS = 10;
+
+    /** The number of runs of each analysis before measuring. */
+    private static final int WARMUP_RUNS = 3;
+
+    public static void main(String[] args) throws IOException {
+        String[] sizes = (args.length == 0) ?
+                new String[] { "250", "500", "1000", "2000" } : args;
+        for (String size : sizes) {
+            benchmark(Integer.parseInt(size));
+        }
+    }
+
+    /**
+     * Generate a method with {@code cases} switch cases, compile it, and
+     * measure the analysis of its CFG with each worklist implementation.
+     */
+    private static void benchmark(int cases) throws IOException {
+        File dir = BenchmarkUtil.createTempDirectory("worklist-benchmark");
+        PrintWriter out = BenchmarkUtil.newSource(dir, "Test");
+        out.println("class Test {");
+        out.println("    int test(int x, int y) {");
+        out.println("        int a = 0;");
+        out.println("        int b = 1;");
+        out.println("        while (y > 0) {");
+        out.println("            switch (x) {");
+        for (int i = 0; i < cases; i++) {
+            out.println("            case " + i + ":");
+            out.println("                if (y == " + i + ") { a = " + i + "; } else { b = a; }");
+            out.println("                break;");
+        }
+        out.println("            }");
+        out.println("            y = y - 1;");
+        out.println("        }");
+        out.println("        return a + b;");
+        out.println("    }");
+        out.println("}");
+        out.close();
+
+        BenchmarkUtil.compile(BenchmarkUtil.sources(dir, "Test"), dir,
+                Collections.<String>emptyList(), new BenchmarkProcessor(cases));
+        BenchmarkUtil.delete(dir);
+    }
+
+    /** Runs the benchmark on the method "test" once it has been attributed. */
+    @SupportedAnnotationTypes("*")
+    private static class BenchmarkProcessor extends AbstractTypeProcessor {
+
+        private final int cases;
+
+        BenchmarkProcessor(int cases) {
+            this.cases = cases;
+        }
+
+        @Override
+        public SourceVersion getSupportedSourceVersion() {
+            return SourceVersion.latest();
+        }
+
+        @Override
+        public void typeProcess(TypeElement element, TreePath path) {
+            ClassTree classTree = (ClassTree) path.getLeaf();
+            for (Tree member : classTree.getMembers()) {
+                if (member.getKind() == Tree.Kind.METHOD
+                        && ((MethodTree) member).getName().contentEquals("test")) {
+                    ControlFlowGraph cfg = CFGBuilder.build(path.getCompilationUnit(),
+                            processingEnv, (MethodTree) member, classTree);
+                    int blocks = cfg.getAllBlocks().size();
+                    long priorityQueue = measure(cfg, true);
+                    long bitSet = measure(cfg, false);
+                    System.out.printf("%5d cases, %6d blocks: priority queue %8.2f ms, bit set %8.2f ms%n",
+                            cases, blocks, priorityQueue / 1e6, bitSet / 1e6);
+                }
+            }
+        }
+
+        /** @return the average time in nanoseconds to analyze {@code cfg} */
+        private long measure(ControlFlowGraph cfg, boolean priorityQueue) {
+            for (int i = 0; i < WARMUP_RUNS; i++) {
+                analyze(cfg, priorityQueue);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < RUNS; i++) {
+                analyze(cfg, priorityQueue);
+            }
+            return (System.nanoTime() - start) / RUNS;
+        }
+
+        private void analyze(ControlFlowGraph cfg, final boolean priorityQueue) {
+            Analysis<Constant, ConstantPropagationStore, ConstantPropagationTransfer> analysis =
+                    new Analysis<Constant, ConstantPropagationStore, ConstantPropagationTransfer>(
+                            processingEnv, new ConstantPropagationTransfer()) {
+                @Override
+                protected Worklist createWorklist(ControlFlowGraph cfg) {
+                    if (priorityQueue) {
+                        return new PriorityQueueWorklist(cfg);
+                    } else {
+                        return new BitSetWorklist(cfg);
+                    }
+                }
+            };
+            analysis.performAnalysis(cfg);
+        }
+    }
+}
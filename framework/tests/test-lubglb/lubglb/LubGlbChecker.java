@@ -6,7 +6,10 @@ import javax.lang.model.util.Elements;
 import org.checkerframework.common.basetype.BaseTypeChecker;
 import org.checkerframework.common.basetype.BaseTypeVisitor;
 import org.checkerframework.framework.qual.TypeQualifiers;
+import org.checkerframework.framework.type.AnnotatedTypeFactory;
 import org.checkerframework.framework.type.QualifierHierarchy;
+import org.checkerframework.framework.util.GraphQualifierHierarchy;
+import org.checkerframework.framework.util.MultiGraphQualifierHierarchy.MultiGraphFactory;
 import org.checkerframework.javacutil.AnnotationUtils;
 
 import lubglb.quals.A;
@@ -19,7 +22,7 @@ import lubglb.quals.F;
 @TypeQualifiers( {A.class, B.class, C.class, D.class, E.class, F.class} )
 public class LubGlbChecker extends BaseTypeChecker {
 
-    private AnnotationMirror B, C, D, E; // A and F not needed
+    private AnnotationMirror A, B, C, D, E, F;
 
     @Override
     public void initChecker() {
@@ -27,14 +30,15 @@ public class LubGlbChecker extends BaseTypeChecker {
 
         Elements elements = processingEnv.getElementUtils();
 
-        // A = AnnotationUtils.fromClass(elements, A.class);
+        A = AnnotationUtils.fromClass(elements, A.class);
         B = AnnotationUtils.fromClass(elements, B.class);
         C = AnnotationUtils.fromClass(elements, C.class);
         D = AnnotationUtils.fromClass(elements, D.class);
         E = AnnotationUtils.fromClass(elements, E.class);
-        // F = AnnotationUtils.fromClass(elements, F.class);
+        F = AnnotationUtils.fromClass(elements, F.class);
 
-        QualifierHierarchy qh = ((BaseTypeVisitor<?>)visitor).getTypeFactory().getQualifierHierarchy();
+        AnnotatedTypeFactory atypeFactory = ((BaseTypeVisitor<?>)visitor).getTypeFactory();
+        QualifierHierarchy qh = atypeFactory.getQualifierHierarchy();
 
         // System.out.println("LUB of D and E: " + qh.leastUpperBound(D, E));
         assert qh.leastUpperBound(D, E).equals(C) :
@@ -51,5 +55,36 @@ public class LubGlbChecker extends BaseTypeChecker {
         // System.out.println("GLB of C and B: " + qh.greatestLowerBound(C, B));
         assert qh.greatestLowerBound(C, B).equals(D) :
             "GLB of C and B is not D!";
+
+        // The same hierarchy without the precomputed tables must give the
+        // same results.
+        MultiGraphFactory factory = new MultiGraphFactory(atypeFactory);
+        factory.addSubtype(B, A);
+        factory.addSubtype(C, A);
+        factory.addSubtype(D, B);
+        factory.addSubtype(D, C);
+        factory.addSubtype(E, C);
+        factory.addSubtype(F, D);
+        factory.addSubtype(F, E);
+        QualifierHierarchy untabled = new GraphQualifierHierarchy(factory, null) {
+            @Override
+            protected boolean shouldBuildTables(MultiGraphFactory f) {
+                return false;
+            }
+        };
+        AnnotationMirror[] all = { A, B, C, D, E, F };
+        // Twice, to also compare the memoized lubs and glbs.
+        for (int pass = 0; pass < 2; pass++) {
+            for (AnnotationMirror a1 : all) {
+                for (AnnotationMirror a2 : all) {
+                    assert qh.isSubtype(a1, a2) == untabled.isSubtype(a1, a2) :
+                        "isSubtype of " + a1 + " and " + a2 + " differs without tables!";
+                    assert AnnotationUtils.areSame(qh.leastUpperBound(a1, a2), untabled.leastUpperBound(a1, a2)) :
+                        "LUB of " + a1 + " and " + a2 + " differs without tables!";
+                    assert AnnotationUtils.areSame(qh.greatestLowerBound(a1, a2), untabled.greatestLowerBound(a1, a2)) :
+                        "GLB of " + a1 + " and " + a2 + " differs without tables!";
+                }
+            }
+        }
     }
 }
@@ -10,6 +10,7 @@ import org.checkerframework.checker.interning.qual.*;
 
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Inherited;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -21,9 +22,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
 import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Name;
@@ -48,24 +53,196 @@ public class AnnotationUtils {
     // Factory Methods to create instances of AnnotationMirror
     // **********************************************************************
 
-    /** Caching for annotation creation. */
-    private static final Map<CharSequence, AnnotationMirror> annotationsFromNames
-        = new HashMap<CharSequence, AnnotationMirror>();
+    // The caches are concurrent, because several compilations may run in
+    // parallel in one JVM, e.g. in tests, and they do not keep the data of
+    // a compilation alive after it, because a JVM may run many
+    // compilations, e.g. in an IDE.
 
     /**
-     * Cache names of AnnotationMirrors for faster access.  Values in
-     * the map are interned Strings, so they can be compared with ==.
+     * Caching for annotation creation, per compilation: the annotations
+     * created by {@link #fromName} for each {@link Elements} instance.  The
+     * keys are weak, so the annotations of a compilation are dropped with
+     * it.  Guarded by itself.
      */
-    private static final Map<AnnotationMirror, /*@Interned*/ String> annotationMirrorNames
-        = new HashMap<AnnotationMirror, /*@Interned*/ String>();
+    private static final Map<Elements, ConcurrentMap<CharSequence, AnnotationMirror>> annotationsFromNames
+        = new WeakHashMap<Elements, ConcurrentMap<CharSequence, AnnotationMirror>>();
+
+    /**
+     * The {@link Elements} instance and the annotations of the last
+     * compilation that used {@link #fromName}, which avoids locking
+     * {@link #annotationsFromNames} in the common case of one compilation at
+     * a time.
+     */
+    private static volatile Pair<Elements, ConcurrentMap<CharSequence, AnnotationMirror>> lastAnnotationsFromNames;
+
+    /**
+     * Cache names of AnnotationMirrors for faster access, by the element of
+     * the annotation type, since every instance of an annotation type has
+     * the same name.  Values in the map are interned Strings, so they can
+     * be compared with ==.  The cache is bounded by
+     * {@link #MAX_ANNOTATION_NAMES}.
+     */
+    private static final ConcurrentMap<Element, /*@Interned*/ String> annotationMirrorNames
+        = new ConcurrentHashMap<Element, /*@Interned*/ String>();
+
+    /**
+     * The maximal number of entries of {@link #annotationMirrorNames}; the
+     * cache is emptied when it is full.  Every compilation has its own
+     * elements, so without a bound the cache would grow with every
+     * compilation in the JVM.
+     */
+    private static final int MAX_ANNOTATION_NAMES = 10000;
 
     /**
      * Cache names of classes representing AnnotationMirrors for
-     * faster access.  Values in the map are interned Strings, so they
-     * can be compared with ==.
+     * faster access.  Values are interned Strings, so they
+     * can be compared with ==.  A ClassValue does not keep its classes
+     * from being unloaded.
+     */
+    private static final ClassValue</*@Interned*/ String> annotationClassNames
+        = new ClassValue</*@Interned*/ String>() {
+        @Override
+        protected /*@Interned*/ String computeValue(Class<?> anno) {
+            return anno.getCanonicalName().intern();
+        }
+    };
+
+    /**
+     * Clear the caches of annotations and their names.  The cached
+     * {@link AnnotationMirror}s belong to one compilation, so this method must
+     * be called before a later compilation runs in the same JVM.
+     */
+    public static void clear() {
+        synchronized (annotationsFromNames) {
+            annotationsFromNames.clear();
+            lastAnnotationsFromNames = null;
+        }
+        annotationMirrorNames.clear();
+        clearInternedAnnotations();
+    }
+
+    // **********************************************************************
+    // Canonical annotations
+    // **********************************************************************
+
+    /**
+     * The canonical form of an annotation: one per annotation type and
+     * element values, including defaults, in an {@link InternTable}.
+     */
+    private static final class CanonicalAnnotation {
+        /**
+         * The id of the annotation, unique within its table.  Two
+         * annotations have the same id iff they are the same according to
+         * {@link #areSame}.
+         */
+        final int id;
+
+        /** The result of {@link AnnotationMirror#toString()}. */
+        final String string;
+
+        /**
+         * The canonical instance, which is replaced by the next interned
+         * instance once it has been collected.
+         */
+        WeakReference<AnnotationMirror> annotation;
+
+        CanonicalAnnotation(int id, String string, AnnotationMirror annotation) {
+            this.id = id;
+            this.string = string;
+            this.annotation = new WeakReference<AnnotationMirror>(annotation);
+        }
+    }
+
+    /**
+     * The canonical annotations of one compilation.  A compilation runs on
+     * one thread, so each thread has its own table, which needs no locking.
      */
-    private static final Map<Class<? extends Annotation>, /*@Interned*/ String> annotationClassNames
-        = new HashMap<Class<? extends Annotation>, /*@Interned*/ String>();
+    private static final class InternTable {
+        /**
+         * Maps each annotation instance seen so far to its canonical
+         * annotation.  AnnotationMirror implementations use reference
+         * equality, so the weak map does, too.  The keys are weak, so the
+         * table does not keep the annotations of a compilation alive.
+         */
+        final Map<AnnotationMirror, CanonicalAnnotation> instances
+            = new WeakHashMap<AnnotationMirror, CanonicalAnnotation>();
+
+        /**
+         * Maps the name and element values of each canonical annotation to
+         * it.  The ids are the indexes in the order of insertion.
+         */
+        final Map<String, CanonicalAnnotation> canonical
+            = new HashMap<String, CanonicalAnnotation>();
+
+        /** @return the canonical annotation of {@code annotation} */
+        CanonicalAnnotation canonical(AnnotationMirror annotation) {
+            CanonicalAnnotation result = instances.get(annotation);
+            if (result == null) {
+                String key = annotationName(annotation) + getElementValuesWithDefaults(annotation);
+                result = canonical.get(key);
+                if (result == null) {
+                    result = new CanonicalAnnotation(canonical.size(), annotation.toString(), annotation);
+                    canonical.put(key, result);
+                }
+                instances.put(annotation, result);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * The maximal number of canonical annotations in an
+     * {@link InternTable}; a new table is started when it is full.
+     */
+    private static final int MAX_CANONICAL_ANNOTATIONS = 10000;
+
+    /** The table of canonical annotations of the current thread. */
+    private static final ThreadLocal<InternTable> internTable = new ThreadLocal<InternTable>() {
+        @Override
+        protected InternTable initialValue() {
+            return new InternTable();
+        }
+    };
+
+    /**
+     * @return the table of canonical annotations of the current thread,
+     *         which is replaced by an empty table when it is full.  The
+     *         canonical annotations compared by one operation must come
+     *         from the same table, so the table is only replaced here.
+     */
+    private static InternTable internTable() {
+        InternTable table = internTable.get();
+        if (table.canonical.size() >= MAX_CANONICAL_ANNOTATIONS) {
+            table = new InternTable();
+            internTable.set(table);
+        }
+        return table;
+    }
+
+    /**
+     * Returns the canonical instance of an annotation: an instance that is
+     * the same as {@code annotation} according to
+     * {@link #areSame(AnnotationMirror, AnnotationMirror)}, and that is
+     * returned for every such annotation as long as it is in use in the
+     * current compilation.
+     */
+    public static AnnotationMirror intern(AnnotationMirror annotation) {
+        CanonicalAnnotation canonical = internTable().canonical(annotation);
+        AnnotationMirror result = canonical.annotation.get();
+        if (result == null) {
+            canonical.annotation = new WeakReference<AnnotationMirror>(annotation);
+            result = annotation;
+        }
+        return result;
+    }
+
+    /**
+     * Forget the canonical annotations of the current thread.  Called at
+     * the start and at the end of each compilation.
+     */
+    public static void clearInternedAnnotations() {
+        internTable.remove();
+    }
 
     /**
      * Creates an {@link AnnotationMirror} given by a particular
@@ -77,8 +254,10 @@ public class AnnotationUtils {
      * @return an {@link AnnotationMirror} of type {@code} name
      */
     public static AnnotationMirror fromName(Elements elements, CharSequence name) {
-        if (annotationsFromNames.containsKey(name))
-            return annotationsFromNames.get(name);
+        ConcurrentMap<CharSequence, AnnotationMirror> cache = annotationsFromNames(elements);
+        AnnotationMirror cached = cache.get(name);
+        if (cached != null)
+            return cached;
         final DeclaredType annoType = typeFromName(elements, name);
         if (annoType == null)
             return null;
@@ -104,8 +283,30 @@ public class AnnotationUtils {
                 return toString;
             }
         };
-        annotationsFromNames.put(name, result);
-        return result;
+        // If another thread created the annotation meanwhile, use its
+        // instance, such that there is only one per name.
+        cached = cache.putIfAbsent(name, result);
+        return (cached != null) ? cached : result;
+    }
+
+    /**
+     * @return the cache of the annotations created by {@link #fromName}
+     *         for {@code elements}
+     */
+    private static ConcurrentMap<CharSequence, AnnotationMirror> annotationsFromNames(Elements elements) {
+        Pair<Elements, ConcurrentMap<CharSequence, AnnotationMirror>> last = lastAnnotationsFromNames;
+        if (last != null && last.first == elements) {
+            return last.second;
+        }
+        synchronized (annotationsFromNames) {
+            ConcurrentMap<CharSequence, AnnotationMirror> cache = annotationsFromNames.get(elements);
+            if (cache == null) {
+                cache = new ConcurrentHashMap<CharSequence, AnnotationMirror>();
+                annotationsFromNames.put(elements, cache);
+            }
+            lastAnnotationsFromNames = Pair.of(elements, cache);
+            return cache;
+        }
     }
 
     /**
@@ -147,13 +348,17 @@ public class AnnotationUtils {
      * @return the fully-qualified name of an annotation as a Name
      */
     public static final /*@Interned*/ String annotationName(AnnotationMirror annotation) {
-        if (annotationMirrorNames.containsKey(annotation))
-            return annotationMirrorNames.get(annotation);
-
         final DeclaredType annoType = annotation.getAnnotationType();
         final TypeElement elm = (TypeElement) annoType.asElement();
-        /*@Interned*/ String name = elm.getQualifiedName().toString().intern();
-        annotationMirrorNames.put(annotation, name);
+        /*@Interned*/ String name = annotationMirrorNames.get(elm);
+        if (name != null)
+            return name;
+
+        name = elm.getQualifiedName().toString().intern();
+        if (annotationMirrorNames.size() >= MAX_ANNOTATION_NAMES) {
+            annotationMirrorNames.clear();
+        }
+        annotationMirrorNames.put(elm, name);
         return name;
     }
 
@@ -169,19 +374,18 @@ public class AnnotationUtils {
      * @return true iff a1 and a2 are the same annotation
      */
     public static boolean areSame(/*@Nullable*/ AnnotationMirror a1, /*@Nullable*/ AnnotationMirror a2) {
+        if (a1 == a2) {
+            // also true if both are null
+            return true;
+        }
         if (a1 != null && a2 != null) {
             if (annotationName(a1) != annotationName(a2)) {
                 return false;
             }
-
-            Map<? extends ExecutableElement, ? extends AnnotationValue> elval1 = getElementValuesWithDefaults(a1);
-            Map<? extends ExecutableElement, ? extends AnnotationValue> elval2 = getElementValuesWithDefaults(a2);
-
-            return elval1.toString().equals(elval2.toString());
+            InternTable table = internTable();
+            return table.canonical(a1).id == table.canonical(a2).id;
         }
-
-        // only true, iff both are null
-        return a1 == a2;
+        return false;
     }
 
     /**
@@ -209,13 +413,7 @@ public class AnnotationUtils {
      */
     public static boolean areSameByClass(AnnotationMirror am,
             Class<? extends Annotation> anno) {
-        /*@Interned*/ String canonicalName;
-        if (annotationClassNames.containsKey(anno)) {
-            canonicalName = annotationClassNames.get(anno).intern();
-        } else {
-            canonicalName = anno.getCanonicalName().intern();
-            annotationClassNames.put(anno, canonicalName);
-        }
+        /*@Interned*/ String canonicalName = annotationClassNames.get(anno);
         return areSameByName(am, canonicalName);
     }
 
@@ -300,10 +498,17 @@ public class AnnotationUtils {
     = new Comparator<AnnotationMirror>() {
         @Override
         public int compare(AnnotationMirror a1, AnnotationMirror a2) {
-            String n1 = a1.toString();
-            String n2 = a2.toString();
-
-            return n1.compareTo(n2);
+            if (a1 == a2) {
+                return 0;
+            }
+            InternTable table = internTable();
+            CanonicalAnnotation c1 = table.canonical(a1);
+            CanonicalAnnotation c2 = table.canonical(a2);
+            if (c1.id == c2.id) {
+                return 0;
+            }
+            // The string of each canonical annotation is only computed once.
+            return c1.string.compareTo(c2.string);
         }
     };
 
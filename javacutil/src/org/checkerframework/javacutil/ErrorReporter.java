@@ -11,10 +11,28 @@ public class ErrorReporter {
     protected static ErrorHandler handler = null;
 
     /**
-     * Register a handler to customize error reporting.
+     * The handler registered by the current thread.  Compilations that run
+     * in parallel in one JVM, e.g. in tests, each report errors to their
+     * own checker.
+     */
+    private static final ThreadLocal<ErrorHandler> threadHandler = new ThreadLocal<ErrorHandler>();
+
+    /**
+     * Register a handler to customize error reporting.  Errors detected on
+     * the current thread go to this handler; errors detected on threads
+     * that did not register a handler go to the last registered handler.
      */
     public static void setHandler(ErrorHandler h) {
         handler = h;
+        threadHandler.set(h);
+    }
+
+    /**
+     * @return the handler for errors detected on the current thread, or null
+     */
+    private static ErrorHandler getHandler() {
+        ErrorHandler h = threadHandler.get();
+        return (h != null) ? h : handler;
     }
 
     /**
@@ -24,16 +42,18 @@ public class ErrorReporter {
      * @param msg The error message to log.
      */
     public static void errorAbort(String msg) {
-        if (handler != null) {
-            handler.errorAbort(msg);
+        ErrorHandler h = getHandler();
+        if (h != null) {
+            h.errorAbort(msg);
         } else {
             throw new RuntimeException(msg, new Throwable());
         }
     }
 
     public static void errorAbort(String msg, Throwable cause) {
-        if (handler != null) {
-            handler.errorAbort(msg, cause);
+        ErrorHandler h = getHandler();
+        if (h != null) {
+            h.errorAbort(msg, cause);
         } else {
             throw new RuntimeException(msg, cause);
         }
@@ -0,0 +1,115 @@
+package org.checkerframework.javacutil;
+
+/*>>>
+import org.checkerframework.checker.nullness.qual.*;
+*/
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.lang.model.element.Element;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * An index of the paths of all trees of one compilation unit.
+ *
+ * <p>
+ *
+ * {@link TreePath#getPath(CompilationUnitTree, Tree)} scans the compilation
+ * unit for every query.  This index scans it once, on the first query, and
+ * records the path of every tree; the path of a tree is then found without
+ * any search, and its enclosing trees, e.g. by
+ * {@link TreeUtils#enclosingClass(TreePath)}, by walking up the path.
+ *
+ * <p>
+ *
+ * The index also records the enclosing method or class of trees that were
+ * created by a checker and therefore are not part of the compilation unit.
+ */
+public class TreePathIndex {
+
+    private final CompilationUnitTree root;
+
+    /** The path of every tree of the root; null until the first query. */
+    private /*@Nullable*/ Map<Tree, TreePath> paths;
+
+    /** The trees created by a checker, with the method or class that encloses each of them. */
+    private final Map<Tree, Element> artificialTrees = new IdentityHashMap<>();
+
+    public TreePathIndex(CompilationUnitTree root) {
+        this.root = root;
+    }
+
+    /**
+     * @return the compilation unit of this index
+     */
+    public CompilationUnitTree getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the path of a tree of the compilation unit.  If a tree occurs
+     * more than once, the path of the first occurrence in a preorder
+     * traversal is returned, like {@link TreePath#getPath(CompilationUnitTree, Tree)}.
+     *
+     * @param node a tree
+     * @return the path of {@code node}, or null if it is not in the compilation unit
+     */
+    public /*@Nullable*/ TreePath getPath(Tree node) {
+        if (paths == null) {
+            paths = buildIndex(root);
+        }
+        return paths.get(node);
+    }
+
+    /**
+     * Records the method or class that encloses a tree created by a checker.
+     */
+    public void addArtificialTree(Tree node, Element enclosing) {
+        artificialTrees.put(node, enclosing);
+    }
+
+    /**
+     * @return the method or class that encloses {@code node}, which was
+     *         created by a checker, or null if none has been recorded
+     */
+    public /*@Nullable*/ Element getArtificialTreeEnclosing(Tree node) {
+        return artificialTrees.get(node);
+    }
+
+    /**
+     * @return the number of trees of the compilation unit, or 0 if the index
+     *         has not been built yet
+     */
+    public int size() {
+        return paths == null ? 0 : paths.size();
+    }
+
+    private static Map<Tree, TreePath> buildIndex(CompilationUnitTree root) {
+        final Map<Tree, TreePath> paths = new IdentityHashMap<>();
+        TreePath rootPath = new TreePath(root);
+        paths.put(root, rootPath);
+        // The parameter of the scanner is the path of the parent of the
+        // visited tree.
+        root.accept(new TreeScanner<Void, TreePath>() {
+            @Override
+            public Void scan(Tree tree, TreePath parent) {
+                if (tree == null) {
+                    return null;
+                }
+                if (paths.containsKey(tree)) {
+                    // A shared tree, whose subtrees are indexed already.
+                    return null;
+                }
+                TreePath path = new TreePath(parent, tree);
+                paths.put(tree, path);
+                return tree.accept(this, path);
+            }
+        }, rootPath);
+        return paths;
+    }
+}
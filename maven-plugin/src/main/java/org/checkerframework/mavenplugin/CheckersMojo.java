@@ -11,11 +11,17 @@ import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.toolchain.ToolchainManager;
 
+import org.codehaus.plexus.compiler.CompilerError;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * A Mojo is the main goal or task for a maven project.  CheckersMojo runs the Checker Framework with the
@@ -109,6 +115,20 @@ public class CheckersMojo extends AbstractMojo {
      */
     private boolean useJavacOutput;
 
+    /**
+     * If true, only the sources that changed since the last run, and the sources that depend on them, are checked.
+     * Sources for which the checkers reported errors or warnings are checked again by the next run.  The state
+     * of the last run is kept in ${project.build.directory}/checker-framework.
+     * @parameter expression="${checkers.incremental}" default-value="false"
+     */
+    private boolean incremental;
+
+    /**
+     * The number of compiler processes that check the sources in parallel, each checking a part of the sources
+     * @parameter expression="${checkers.shards}" default-value="1"
+     */
+    private int shards;
+
     /**
      * DEPENDENCIES
      */
@@ -120,6 +140,13 @@ public class CheckersMojo extends AbstractMojo {
       */
      private String outputDirectory;
 
+    /**
+      * @parameter expression="${project.build.directory}"
+      * @required
+      * @readonly
+      */
+     private String buildDirectory;
+
     /**
      * The source directories containing the sources to be compiled.
      *
@@ -204,6 +231,11 @@ public class CheckersMojo extends AbstractMojo {
      */
     private File jdkJar;
 
+    /**
+     * The file in which the state of incremental checking is kept, relative to the build directory
+     */
+    private static final String INCREMENTAL_STATE_FILE = "checker-framework" + File.separator + "sources.state";
+
     /**
      * Main control method for the Checker Maven Plugin.  Scans for sources, resolves classpath, and passes these
      * arguments to the the checker compiler which is run on the command line.
@@ -231,50 +263,108 @@ public class CheckersMojo extends AbstractMojo {
             log.info("Running processor(s): " + processor);
         }
 
-        final List<String> sources = PathUtils.scanForSources(compileSourceRoots, includes, excludes);
+        final List<String> allSources = PathUtils.scanForSources(compileSourceRoots, includes, excludes);
 
-        if (sources.size() == 0) {
+        if (allSources.size() == 0) {
             log.info("No source files found.");
             return;
         }
 
         locateArtifacts();
 
-        final Commandline cl = new Commandline();
-
         if (StringUtils.isEmpty(executable)) {
             executable = "java";
         }
 
         final String executablePath = PathUtils.getExecutablePath(executable, toolchainManager, session);
-        cl.setExecutable(executablePath);
 
         //TODO: SEEMS THAT WHEN WE ARE USING @ ARGS THE CLASSPATH FROM THE JAR IS OVERRIDDEN - FIX THIS
         final String classpath =
                 checkerJar.getAbsolutePath() + File.pathSeparator
                 + StringUtils.join(classpathElements.iterator(), File.pathSeparator);
 
-        File srcFofn = null;
+        StaleSourceScanner scanner = null;
+        List<String> sources = allSources;
+        if (incremental) {
+            try {
+                scanner = new StaleSourceScanner(new File(buildDirectory, INCREMENTAL_STATE_FILE));
+                sources = scanner.getStaleSources(allSources, makeConfiguration(processor, classpath));
+            } catch (IOException e) {
+                throw new MojoExecutionException("Exception trying to read the state of incremental checking!", e);
+            }
+
+            if (sources.size() == 0) {
+                log.info("All " + allSources.size() + " source files are up to date.");
+                return;
+            }
+            log.info("Checking " + sources.size() + " of " + allSources.size() + " source files.");
+        }
+
+        final List<List<String>> shardSources = makeShards(sources);
+
+        final List<File> srcFofns = new ArrayList<File>();
         File cpFofn = null;
         try {
-            srcFofn = PluginUtil.writeTmpSrcFofn("CFPlugin-maven-src", true, PluginUtil.toFiles(sources));
-            cpFofn = PluginUtil.writeTmpCpFile("CFPlugin-maven-cp", true, classpath);
-        } catch (IOException e) {
-            if (srcFofn != null && srcFofn.exists()) {
+            try {
+                for (final List<String> shard : shardSources) {
+                    srcFofns.add(PluginUtil.writeTmpSrcFofn("CFPlugin-maven-src", true, PluginUtil.toFiles(shard)));
+                }
+                cpFofn = PluginUtil.writeTmpCpFile("CFPlugin-maven-cp", true, classpath);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Exception trying to write command file fofn!", e);
+            }
+
+            final File outputDirFile = new File(outputDirectory);
+            if (!procOnly && !outputDirFile.exists()) {
+                if (!outputDirFile.mkdirs()) {
+                    throw new MojoExecutionException("Could not create output directory: " + outputDirFile.getAbsolutePath());
+                }
+            }
+
+            final List<Commandline> commandLines = new ArrayList<Commandline>();
+            for (final File srcFofn : srcFofns) {
+                commandLines.add(makeCommandLine(executablePath, srcFofn, cpFofn, processor));
+            }
+
+            if (scanner == null && commandLines.size() == 1) {
+                createCommandLineExecutor().executeCommandLine(commandLines.get(0), log, failOnError);
+                return;
+            }
+
+            // The messages of incremental or sharded runs are collected, so they are always
+            // reported in the style of the maven-compiler-plugin
+            if (useJavacOutput) {
+                log.warn("useJavacOutput is ignored when checking incrementally or with several shards");
+            }
+            final MavenIOExecutor executor = new MavenIOExecutor(executable);
+            final List<CompilerError> messages = executeShards(executor, commandLines, log);
+
+            if (scanner != null) {
+                try {
+                    scanner.update(allSources, sources, sourcesWithMessages(sources, messages));
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Exception trying to write the state of incremental checking!", e);
+                }
+            }
+
+            executor.reportMessages(messages, log, failOnError);
+        } finally {
+            for (final File srcFofn : srcFofns) {
                 srcFofn.delete();
             }
-            if (cpFofn != null && cpFofn.exists()) {
+            if (cpFofn != null) {
                 cpFofn.delete();
             }
-            throw new MojoExecutionException("Exception trying to write command file fofn!", e);
         }
+    }
 
-        final File outputDirFile = new File(outputDirectory);
-        if (!procOnly && !outputDirFile.exists()) {
-            if (!outputDirFile.mkdirs()) {
-                throw new MojoExecutionException("Could not create output directory: " + outputDirFile.getAbsolutePath());
-            }
-        }
+    /**
+     * @return The command line that checks the sources listed in srcFofn
+     */
+    private Commandline makeCommandLine(final String executablePath, final File srcFofn, final File cpFofn,
+                                        final String processor) {
+        final Commandline cl = new Commandline();
+        cl.setExecutable(executablePath);
 
         final Map<PluginUtil.CheckerProp, Object> props = makeProps();
 
@@ -284,12 +374,110 @@ public class CheckersMojo extends AbstractMojo {
                 null, cpFofn, null, props, null,
                 procOnly, outputDirectory);
 
-        // And executing
         cl.addArguments(arguments.toArray(new String[arguments.size()]));
+        return cl;
+    }
+
+    /**
+     * Divides the sources into at most "shards" contiguous parts of about equal size.  Contiguous parts keep
+     * the sources of a package together, so that fewer sources are read by several compiler processes.
+     * @return The parts, none of which is empty
+     */
+    private List<List<String>> makeShards(final List<String> sources) {
+        final int count = Math.max(1, Math.min(shards, sources.size()));
+        final List<List<String>> result = new ArrayList<List<String>>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(sources.subList(i * sources.size() / count, (i + 1) * sources.size() / count));
+        }
+        return result;
+    }
+
+    /**
+     * Executes the command lines in parallel and merges their messages, in the order of the command lines.
+     * @throws MojoExecutionException Thrown if there is any exception in the attempt to run a command
+     */
+    private static List<CompilerError> executeShards(final MavenIOExecutor executor,
+                                                     final List<Commandline> commandLines, final Log log)
+            throws MojoExecutionException {
+        if (commandLines.size() == 1) {
+            return executor.runCommandLine(commandLines.get(0), log);
+        }
+
+        log.info("Running " + commandLines.size() + " compiler processes in parallel.");
+        final ExecutorService pool = Executors.newFixedThreadPool(commandLines.size());
+        try {
+            final List<Future<List<CompilerError>>> futures = new ArrayList<Future<List<CompilerError>>>();
+            for (final Commandline cl : commandLines) {
+                futures.add(pool.submit(new Callable<List<CompilerError>>() {
+                    public List<CompilerError> call() throws MojoExecutionException {
+                        return executor.runCommandLine(cl, log);
+                    }
+                }));
+            }
+
+            final List<CompilerError> messages = new ArrayList<CompilerError>();
+            for (final Future<List<CompilerError>> future : futures) {
+                try {
+                    messages.addAll(future.get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof MojoExecutionException) {
+                        throw (MojoExecutionException) e.getCause();
+                    }
+                    throw new MojoExecutionException("Unable to execute the Checker Framework.", e.getCause());
+                } catch (InterruptedException e) {
+                    throw new MojoExecutionException("Interrupted while executing the Checker Framework.", e);
+                }
+            }
+            return messages;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @return The checked sources for which there are messages; all of them if a message does not name one
+     */
+    private static Set<String> sourcesWithMessages(final List<String> checked, final List<CompilerError> messages) {
+        final Set<String> checkedSet = new HashSet<String>(checked);
+        final Set<String> result = new HashSet<String>();
+        for (final CompilerError message : messages) {
+            final String file = message.getFile();
+            final String path = (file == null) ? null : new File(file.trim()).getAbsolutePath();
+            if (path == null || !checkedSet.contains(path)) {
+                return checkedSet;
+            }
+            result.add(path);
+        }
+        return result;
+    }
 
-        createCommandLineExecutor().executeCommandLine(cl, log, failOnError);
-        srcFofn.delete();
-        cpFofn.delete();
+    /**
+     * @return A description of everything besides the sources that affects the result of checking.  The
+     *         classpath and the stub files are described by the sizes and modification times of their files,
+     *         so that e.g. a changed SNAPSHOT dependency changes the configuration.  The output directory
+     *         holds the classes of the sources themselves and is left out.
+     */
+    private String makeConfiguration(final String processor, final String classpath) {
+        final String inputs = StaleSourceScanner.fingerprint(Arrays.asList(classpath.split(File.pathSeparator)),
+                new File(outputDirectory));
+        final String stubs = StaleSourceScanner.fingerprint(stubFiles(), null);
+        return StringUtils.join(Arrays.asList(checkerFrameworkVersion, processor, javaParams, javacParams,
+                procOnly, outputDirectory, classpath, inputs, stubs).iterator(), " ");
+    }
+
+    /**
+     * @return The stub files given by -Astubs options in javacParams
+     */
+    private List<String> stubFiles() {
+        final List<String> result = new ArrayList<String>();
+        if (!StringUtils.isEmpty(javacParams)) {
+            for (final String param : javacParams.split(" ")) {
+                if (param.startsWith("-Astubs=")) {
+                    result.addAll(Arrays.asList(param.substring("-Astubs=".length()).split(File.pathSeparator)));
+                }
+            }
+        }
+        return result;
     }
 
     /**
@@ -28,6 +28,17 @@ public class MavenIOExecutor implements CommandLineExceutor {
      * @inheritDoc
      */
     public void executeCommandLine(final Commandline cl, final Log log, final boolean failOnError) throws MojoExecutionException, MojoFailureException {
+        reportMessages(runCommandLine(cl, log), log, failOnError);
+    }
+
+    /**
+     * Executes the given command line and parses the messages of the compiler, without reporting them.
+     * @param cl CommandLine object to execute.
+     * @param log Log to report the command line to
+     * @return The messages of the compiler
+     * @throws MojoExecutionException Thrown if there is any exception in the attempt to run the command
+     */
+    public List<CompilerError> runCommandLine(final Commandline cl, final Log log) throws MojoExecutionException {
         CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
         CommandLineUtils.StringStreamConsumer err = new CommandLineUtils.StringStreamConsumer();
 
@@ -57,6 +68,18 @@ public class MavenIOExecutor implements CommandLineExceutor {
                     " command line: " + Arrays.toString(cl.getCommandline()));
         }
 
+        return messages;
+    }
+
+    /**
+     * Writes the given messages of the compiler to log.
+     * @param messages The messages, possibly of several runs of the compiler
+     * @param log Log to report to
+     * @param failOnError If true, any errors will cause the Maven process to halt
+     * @throws MojoFailureException Thrown if there are errors and failOnError = true
+     */
+    public void reportMessages(final List<CompilerError> messages, final Log log, final boolean failOnError)
+            throws MojoFailureException {
         if (messages.isEmpty()) {
             log.info("No errors found by the processor(s).");
         } else {
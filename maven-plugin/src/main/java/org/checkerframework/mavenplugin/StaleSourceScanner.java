@@ -0,0 +1,375 @@
+package org.checkerframework.mavenplugin;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Determines which sources must be checked again since the last run of the plugin.  For every source, the
+ * state file records a hash of its contents, the names of the types it declares, and the other sources
+ * that it depends on.  A source is stale if it had messages, if its contents changed, or if it depends,
+ * directly or transitively, on a stale source.  All sources are stale if the configuration, e.g. the
+ * checkers, the classpath or the stub files, changed.
+ *
+ * A source depends on another source if it mentions the simple name of a type declared by the other
+ * source.  A name that a source mentions may refer to a type on the classpath, or in another package,
+ * until a new type of that name shadows it.  Therefore all sources are stale if a source is added or
+ * removed, or if a changed source declares other types than before.
+ */
+public class StaleSourceScanner {
+
+    /** The state of a source after it was checked. */
+    private static class Entry {
+        /** The hash of the contents, or "" if there were messages for the source. */
+        final String hash;
+        final Set<String> types;
+        final Set<String> dependencies;
+
+        Entry(final String hash, final Set<String> types, final Set<String> dependencies) {
+            this.hash = hash;
+            this.types = types;
+            this.dependencies = dependencies;
+        }
+    }
+
+    /** A hash that is never equal to the hash of a source. */
+    private static final String WITH_MESSAGES = "";
+
+    /** Separates the fields of a line of the state file. */
+    private static final String SEPARATOR = "\t";
+
+    private final File stateFile;
+
+    /** The configuration of the last run, or null if there is no state. */
+    private String lastConfiguration;
+
+    /** The state of the sources of the last run, keyed by absolute path. */
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+    /** The hashes of the current sources, computed by getStaleSources. */
+    private final Map<String, String> hashes = new HashMap<String, String>();
+
+    /**
+     * Reads the state file, if it exists.
+     * @param stateFile The file in which the state is kept between runs
+     * @throws IOException
+     */
+    public StaleSourceScanner(final File stateFile) throws IOException {
+        this.stateFile = stateFile;
+        if (!stateFile.exists()) {
+            return;
+        }
+
+        final BufferedReader reader = new BufferedReader(new FileReader(stateFile));
+        try {
+            lastConfiguration = reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(SEPARATOR, -1);
+                if (fields.length != 4) {
+                    // A corrupt state file: check everything
+                    entries.clear();
+                    lastConfiguration = null;
+                    return;
+                }
+                entries.put(fields[1], new Entry(fields[0], split(fields[2]), split(fields[3])));
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Determines the sources that must be checked.
+     * @param sources The absolute paths of all sources
+     * @param configuration A description of everything besides the sources that affects the result of checking
+     * @return The stale sources, in the order of sources
+     * @throws IOException
+     */
+    public List<String> getStaleSources(final List<String> sources, final String configuration) throws IOException {
+        boolean all = !configuration.equals(lastConfiguration)
+                || !entries.keySet().equals(new HashSet<String>(sources));
+
+        final Set<String> changed = new HashSet<String>();
+        for (final String source : sources) {
+            final String hash = hash(new File(source));
+            hashes.put(source, hash);
+            final Entry entry = entries.get(source);
+            if (!all && !entry.hash.equals(hash)) {
+                changed.add(source);
+                if (!entry.types.equals(declaredTypes(new File(source)))) {
+                    all = true;
+                }
+            }
+        }
+        lastConfiguration = configuration;
+        if (all) {
+            return new ArrayList<String>(sources);
+        }
+
+        // Fan out to the dependents of changed sources
+        final Map<String, List<String>> dependents = new HashMap<String, List<String>>();
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            for (final String dependency : entry.getValue().dependencies) {
+                List<String> list = dependents.get(dependency);
+                if (list == null) {
+                    list = new ArrayList<String>();
+                    dependents.put(dependency, list);
+                }
+                list.add(entry.getKey());
+            }
+        }
+        final Set<String> stale = new HashSet<String>(changed);
+        final LinkedList<String> worklist = new LinkedList<String>(changed);
+        while (!worklist.isEmpty()) {
+            final List<String> list = dependents.get(worklist.removeFirst());
+            if (list != null) {
+                for (final String dependent : list) {
+                    if (stale.add(dependent)) {
+                        worklist.add(dependent);
+                    }
+                }
+            }
+        }
+
+        final List<String> result = new ArrayList<String>();
+        for (final String source : sources) {
+            if (stale.contains(source)) {
+                result.add(source);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the result of checking and writes the state file.  Must be called after getStaleSources.
+     * @param sources The absolute paths of all sources
+     * @param checked The sources that were checked
+     * @param withMessages The sources for which the checkers reported errors or warnings; these are
+     *                     checked again by the next run
+     * @throws IOException
+     */
+    public void update(final List<String> sources, final Collection<String> checked,
+                       final Set<String> withMessages) throws IOException {
+        entries.keySet().retainAll(hashes.keySet());
+        final Map<String, Set<String>> checkedTypes = new HashMap<String, Set<String>>();
+        for (final String source : checked) {
+            checkedTypes.put(source, declaredTypes(new File(source)));
+        }
+
+        final Map<String, List<String>> sourcesByName = new HashMap<String, List<String>>();
+        for (final String source : sources) {
+            final Set<String> types = checkedTypes.containsKey(source)
+                    ? checkedTypes.get(source) : entries.get(source).types;
+            for (final String name : types) {
+                List<String> list = sourcesByName.get(name);
+                if (list == null) {
+                    list = new ArrayList<String>(1);
+                    sourcesByName.put(name, list);
+                }
+                list.add(source);
+            }
+        }
+
+        for (final String source : checked) {
+            final Set<String> dependencies = new LinkedHashSet<String>();
+            for (final String identifier : identifiers(new File(source))) {
+                final List<String> list = sourcesByName.get(identifier);
+                if (list != null) {
+                    dependencies.addAll(list);
+                }
+            }
+            dependencies.remove(source);
+            final String hash = withMessages.contains(source) ? WITH_MESSAGES : hashes.get(source);
+            entries.put(source, new Entry(hash, checkedTypes.get(source), dependencies));
+        }
+
+        final File dir = stateFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory: " + dir.getAbsolutePath());
+        }
+        final BufferedWriter writer = new BufferedWriter(new FileWriter(stateFile));
+        try {
+            writer.write(lastConfiguration);
+            writer.newLine();
+            for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writer.write(entry.getValue().hash + SEPARATOR + entry.getKey() + SEPARATOR
+                        + StringUtils.join(entry.getValue().types.iterator(), File.pathSeparator) + SEPARATOR
+                        + StringUtils.join(entry.getValue().dependencies.iterator(), File.pathSeparator));
+                writer.newLine();
+            }
+            writer.flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Computes a description of files that changes whenever one of them changes, including the files in
+     * directories.  Files are compared by size and modification time, which does not require reading jars.
+     * @param paths The files and directories, e.g. the classpath; paths that do not exist are described by name
+     * @param excluded A directory whose contents are ignored, e.g. the output directory, or null
+     * @return The hex encoded SHA-1 hash of the description
+     */
+    public static String fingerprint(final List<String> paths, final File excluded) {
+        final MessageDigest digest = newDigest();
+        for (final String path : paths) {
+            fingerprint(new File(path).getAbsoluteFile(), excluded == null ? null : excluded.getAbsoluteFile(),
+                    digest);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void fingerprint(final File file, final File excluded, final MessageDigest digest) {
+        update(digest, file.getPath());
+        if (file.equals(excluded)) {
+            return;
+        }
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (final File child : children) {
+                    fingerprint(child, excluded, digest);
+                }
+            }
+        } else if (file.exists()) {
+            update(digest, file.length() + SEPARATOR + file.lastModified());
+        }
+    }
+
+    private static void update(final MessageDigest digest, final String text) {
+        try {
+            digest.update((text + "\n").getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            // Every Java platform supports UTF-8
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The set of names separated by File.pathSeparator
+     */
+    private static Set<String> split(final String names) {
+        final Set<String> result = new LinkedHashSet<String>();
+        for (final String name : names.split(File.pathSeparator)) {
+            if (name.length() > 0) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The Java identifiers that occur in the given file, including those in comments and strings
+     */
+    private static Set<String> identifiers(final File file) throws IOException {
+        return scan(file, false);
+    }
+
+    /**
+     * @return The names of the types that the given file declares, including nested types, and its file name
+     *         without ".java"; also some names from comments and strings, which is harmless
+     */
+    private static Set<String> declaredTypes(final File file) throws IOException {
+        final Set<String> types = scan(file, true);
+        final String name = file.getName();
+        types.add(name.endsWith(".java") ? name.substring(0, name.length() - ".java".length()) : name);
+        return types;
+    }
+
+    /**
+     * @param declared Whether to return only the identifiers that follow "class", "interface" or "enum"
+     * @return The Java identifiers that occur in the given file
+     */
+    private static Set<String> scan(final File file, final boolean declared) throws IOException {
+        final Set<String> identifiers = new LinkedHashSet<String>();
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String previous = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int i = 0;
+                while (i < line.length()) {
+                    if (Character.isJavaIdentifierStart(line.charAt(i))) {
+                        int end = i + 1;
+                        while (end < line.length() && Character.isJavaIdentifierPart(line.charAt(end))) {
+                            end++;
+                        }
+                        final String identifier = line.substring(i, end);
+                        if (!declared || "class".equals(previous) || "interface".equals(previous)
+                                || "enum".equals(previous)) {
+                            identifiers.add(identifier);
+                        }
+                        previous = identifier;
+                        i = end;
+                    } else {
+                        if (!Character.isWhitespace(line.charAt(i))) {
+                            previous = null;
+                        }
+                        i++;
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return identifiers;
+    }
+
+    /**
+     * @return The hex encoded SHA-1 hash of the contents of the given file
+     */
+    private static String hash(final File file) throws IOException {
+        final MessageDigest digest = newDigest();
+        final InputStream in = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-1
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder();
+        for (final byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,158 @@
+package org.checkerframework.mavenplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs a StaleSourceScanner repeatedly over sources in a temporary directory.
+ */
+public class StaleSourceScannerTest {
+
+    private static final String CONFIGURATION = "configuration";
+
+    private File directory;
+    private File stateFile;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("stale-source-scanner-test", "");
+        directory.delete();
+        directory.mkdir();
+        stateFile = new File(directory, "sources.state");
+    }
+
+    @After
+    public void deleteDirectory() {
+        delete(directory);
+    }
+
+    @Test
+    public void checksOnlyChangedSourcesAndTheirDependents() throws IOException {
+        final String a = write("A", "class A { }");
+        final String b = write("B", "class B { A a; }");
+        final String c = write("C", "class C { }");
+        final List<String> sources = Arrays.asList(a, b, c);
+        assertEquals(sources, check(sources, CONFIGURATION));
+        assertEquals(Collections.emptyList(), check(sources, CONFIGURATION));
+
+        write("A", "class A { int i; }");
+        assertEquals(Arrays.asList(a, b), check(sources, CONFIGURATION));
+        assertEquals(Collections.emptyList(), check(sources, CONFIGURATION));
+    }
+
+    @Test
+    public void checksAllSourcesWhenTheConfigurationChanges() throws IOException {
+        final List<String> sources = Arrays.asList(write("A", "class A { }"), write("B", "class B { }"));
+        check(sources, CONFIGURATION);
+        assertEquals(sources, check(sources, "other configuration"));
+    }
+
+    @Test
+    public void checksAllSourcesWhenASourceIsAdded() throws IOException {
+        // The new List shadows java.util.List, which B imports on demand.
+        final String a = write("A", "class A { }");
+        final String b = write("B", "import java.util.*; class B { List<String> l; }");
+        check(Arrays.asList(a, b), CONFIGURATION);
+
+        final List<String> sources = Arrays.asList(a, b, write("List", "class List { }"));
+        assertEquals(sources, check(sources, CONFIGURATION));
+    }
+
+    @Test
+    public void checksAllSourcesWhenASourceIsRemoved() throws IOException {
+        final String a = write("A", "class A { }");
+        final String b = write("B", "class B { }");
+        check(Arrays.asList(a, b), CONFIGURATION);
+
+        assertEquals(Arrays.asList(a), check(Arrays.asList(a), CONFIGURATION));
+    }
+
+    @Test
+    public void checksAllSourcesWhenASourceDeclaresANewType() throws IOException {
+        final String a = write("A", "class A { }");
+        final String b = write("B", "import java.util.*; class B { List<String> l; }");
+        final List<String> sources = Arrays.asList(a, b);
+        check(sources, CONFIGURATION);
+
+        write("A", "class A { } class List { }");
+        assertEquals(sources, check(sources, CONFIGURATION));
+    }
+
+    @Test
+    public void checksSourcesWithMessagesAgain() throws IOException {
+        final String a = write("A", "class A { }");
+        final String b = write("B", "class B { }");
+        final List<String> sources = Arrays.asList(a, b);
+        final StaleSourceScanner scanner = new StaleSourceScanner(stateFile);
+        scanner.update(sources, scanner.getStaleSources(sources, CONFIGURATION), Collections.singleton(b));
+
+        assertEquals(Arrays.asList(b), check(sources, CONFIGURATION));
+    }
+
+    @Test
+    public void fingerprintChangesWithTheFiles() throws IOException {
+        final File output = new File(directory, "classes");
+        output.mkdir();
+        final String jar = write("Lib", "contents");
+        final List<String> paths = Arrays.asList(jar, output.getPath(), directory.getPath());
+        final String fingerprint = StaleSourceScanner.fingerprint(paths, output);
+
+        write("Output", "class Output { }", output);
+        assertEquals(fingerprint, StaleSourceScanner.fingerprint(paths, output));
+
+        write("Lib", "changed contents");
+        assertFalse(fingerprint.equals(StaleSourceScanner.fingerprint(paths, output)));
+    }
+
+    /**
+     * Checks the stale sources, as if there were no messages.
+     * @return The stale sources
+     */
+    private List<String> check(final List<String> sources, final String configuration) throws IOException {
+        final StaleSourceScanner scanner = new StaleSourceScanner(stateFile);
+        final List<String> stale = scanner.getStaleSources(sources, configuration);
+        scanner.update(sources, stale, Collections.<String>emptySet());
+        return new ArrayList<String>(stale);
+    }
+
+    private String write(final String name, final String text) throws IOException {
+        return write(name, text, directory);
+    }
+
+    /**
+     * Writes the source name.java in dir.
+     * @return The absolute path of the source
+     */
+    private static String write(final String name, final String text, final File dir) throws IOException {
+        final File file = new File(dir, name + ".java");
+        final FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(text);
+        } finally {
+            writer.close();
+        }
+        return file.getAbsolutePath();
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}